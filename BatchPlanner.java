@@ -0,0 +1,210 @@
+package org.example.core;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * BatchPlanner — a pre-flight pass over a batch. Each file is opened just far enough for its
+ * page count, a sampled text layer and its size; from those come estimates of OCR pages,
+ * tokens, credits and time. The plan orders documents shortest first, which finishes the
+ * most documents per minute and keeps large scans from holding up quick ones.
+ * Estimates are deliberately rough; the rates below can be tuned with system properties.
+ */
+public class BatchPlanner {
+    // pages sampled for the text layer check; a page with fewer chars than this counts as a scan
+    private static final int SAMPLE_PAGES = 3;
+    private static final int MIN_TEXT_CHARS_PER_PAGE = 50;
+    // chars OCR typically recovers from a scanned page
+    private static final int OCR_CHARS_PER_PAGE = Integer.getInteger("planner.ocrCharsPerPage", 2500);
+    private static final long TEXT_PAGE_MS = Long.getLong("planner.textPageMs", 40);
+    private static final long OCR_PAGE_MS = Long.getLong("planner.ocrPageMs", 1500);
+    private static final long MODEL_CALL_MS = Long.getLong("planner.modelCallMs", 1500);
+    private static final int OUTPUT_TOKENS_PER_SEC = Integer.getInteger("planner.outputTokensPerSec", 150);
+    // models rarely use their whole output budget
+    private static final double OUTPUT_BUDGET_USED = 0.5;
+    // classification prompt and answer, on top of the summary
+    private static final int CLASSIFY_OUTPUT_TOKENS = 20;
+
+    /** Credits for a document, given pages and tokens (CreditService.calculateUsageCredits). */
+    @FunctionalInterface
+    public interface CreditEstimator {
+        int credits(int pages, int promptTokens, int outputTokens);
+    }
+
+    /** Estimates for one file. {@code error} is set when the file couldn't be opened. */
+    public static final class Item {
+        public final File file;
+        public final int position;          // index in the list as given
+        public final long bytes;
+        public final int pages;
+        public final boolean textLayer;
+        public final int ocrPages;
+        public final int promptTokens;
+        public final int outputTokens;
+        public final int credits;
+        public final long extractMs;
+        public final long modelMs;
+        public final String error;
+
+        Item(File file, int position, long bytes, int pages, boolean textLayer, int ocrPages, int promptTokens,
+             int outputTokens, int credits, long extractMs, long modelMs, String error) {
+            this.file = file;
+            this.position = position;
+            this.bytes = bytes;
+            this.pages = pages;
+            this.textLayer = textLayer;
+            this.ocrPages = ocrPages;
+            this.promptTokens = promptTokens;
+            this.outputTokens = outputTokens;
+            this.credits = credits;
+            this.extractMs = extractMs;
+            this.modelMs = modelMs;
+            this.error = error;
+        }
+
+        public long estimatedMs() {
+            return extractMs + modelMs;
+        }
+    }
+
+    /** The batch in execution order, with totals. */
+    public static final class Plan {
+        public final List<Item> items;
+        public final int pages;
+        public final int ocrPages;
+        public final long tokens;
+        public final int credits;
+        public final long etaMs;
+        public final int unreadable;
+
+        Plan(List<Item> items, long etaMs) {
+            this.items = items;
+            int p = 0, o = 0, c = 0, u = 0;
+            long t = 0;
+            for (Item it : items) {
+                p += it.pages;
+                o += it.ocrPages;
+                t += it.promptTokens + it.outputTokens;
+                c += it.credits;
+                if (it.error != null) u++;
+            }
+            this.pages = p;
+            this.ocrPages = o;
+            this.tokens = t;
+            this.credits = c;
+            this.etaMs = etaMs;
+            this.unreadable = u;
+        }
+
+        public List<File> files() {
+            List<File> out = new ArrayList<>(items.size());
+            for (Item it : items) out.add(it.file);
+            return out;
+        }
+
+        /** Multi-line summary for a confirmation dialog. */
+        public String describe() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(items.size()).append(" documents, ").append(pages).append(" pages");
+            if (ocrPages > 0) sb.append(" (").append(ocrPages).append(" need OCR)");
+            sb.append("\nEstimated tokens: ~").append(String.format("%,d", tokens));
+            sb.append("\nEstimated credits: ~").append(credits);
+            sb.append("\nEstimated time: ~").append(formatDuration(etaMs));
+            if (unreadable > 0) sb.append("\n").append(unreadable).append(" file(s) could not be opened and will likely fail");
+            return sb.toString();
+        }
+
+        @Override
+        public String toString() {
+            return describe().replace('\n', ';');
+        }
+    }
+
+    private final SummarizationPlanner planner;
+    private final CreditEstimator credits;
+
+    public BatchPlanner(SummarizationPlanner planner, CreditEstimator credits) {
+        this.planner = planner;
+        this.credits = credits;
+    }
+
+    /**
+     * @param extractWorkers  documents extracted at once
+     * @param modelWorkers    documents with model calls in flight at once
+     * @param shortestFirst   false keeps the given order
+     */
+    public Plan plan(List<File> files, int extractWorkers, int modelWorkers, boolean shortestFirst) {
+        List<Item> items = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) items.add(inspect(files.get(i), i));
+        if (shortestFirst) {
+            // unreadable files last; they fail fast but shouldn't be reported first
+            items.sort(Comparator.comparing((Item it) -> it.error != null)
+                    .thenComparingLong(Item::estimatedMs)
+                    .thenComparingInt(it -> it.position));
+        }
+        return new Plan(items, eta(items, Math.max(1, extractWorkers), Math.max(1, modelWorkers)));
+    }
+
+    Item inspect(File file, int position) {
+        long bytes = file.length();
+        try (DocumentSession session = DocumentSession.open(file)) {
+            int pages = Math.max(1, session.getPageCount());
+            int charsPerPage = session.sampleCharsPerPage(SAMPLE_PAGES);
+            boolean textLayer = charsPerPage >= MIN_TEXT_CHARS_PER_PAGE;
+            int ocrPages = textLayer ? 0 : pages;
+            long chars = (long) pages * (textLayer ? charsPerPage : OCR_CHARS_PER_PAGE);
+
+            SummarizationPlanner.Plan summary = planner.plan((int) Math.min(Integer.MAX_VALUE, chars));
+            int outputBudget = summary.chunkCount > 1
+                    ? summary.chunkCount * summary.chunkOutputTokens + summary.finalOutputTokens
+                    : summary.finalOutputTokens;
+            int outputTokens = (int) (outputBudget * OUTPUT_BUDGET_USED) + CLASSIFY_OUTPUT_TOKENS;
+            int promptTokens = summary.estimatedInputTokens
+                    + (summary.chunkCount > 1 ? summary.chunkCount * summary.chunkOutputTokens / 2 : 0);
+
+            long extractMs = ocrPages * OCR_PAGE_MS + (pages - ocrPages) * TEXT_PAGE_MS;
+            long modelMs = Math.max(1, summary.mergeDepth + 1) * MODEL_CALL_MS
+                    + outputTokens * 1000L / Math.max(1, OUTPUT_TOKENS_PER_SEC);
+            return new Item(file, position, bytes, pages, textLayer, ocrPages, promptTokens, outputTokens,
+                    credits.credits(pages, promptTokens, outputTokens), extractMs, modelMs, null);
+        } catch (Exception e) {
+            return new Item(file, position, bytes, 1, false, 0, 0, 0, 0, 0, 0, String.valueOf(e.getMessage()));
+        }
+    }
+
+    /**
+     * Simulated wall time: extraction slots feed model slots, each document taking the next
+     * free slot in plan order, as the staged pipeline does.
+     */
+    static long eta(List<Item> items, int extractWorkers, int modelWorkers) {
+        long[] extractFree = new long[extractWorkers];
+        long[] modelFree = new long[modelWorkers];
+        long end = 0;
+        for (Item it : items) {
+            int e = earliest(extractFree);
+            long extracted = extractFree[e] + it.extractMs;
+            extractFree[e] = extracted;
+            int m = earliest(modelFree);
+            long done = Math.max(modelFree[m], extracted) + it.modelMs;
+            modelFree[m] = done;
+            end = Math.max(end, done);
+        }
+        return end;
+    }
+
+    private static int earliest(long[] free) {
+        int best = 0;
+        for (int i = 1; i < free.length; i++) if (free[i] < free[best]) best = i;
+        return best;
+    }
+
+    static String formatDuration(long ms) {
+        long s = Math.max(1, ms / 1000);
+        if (s < 60) return s + " s";
+        long m = s / 60;
+        if (m < 60) return m + " min";
+        return (m / 60) + " h " + (m % 60) + " min";
+    }
+}
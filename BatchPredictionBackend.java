@@ -0,0 +1,49 @@
+package org.example.core;
+
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * BatchPredictionBackend — where a JSONL file of generateContent requests is run as one
+ * asynchronous job. {@link VertexBatchBackend} talks to Vertex AI batch prediction;
+ * {@link LocalBatchBackend} is an in-process stand-in for development and tests.
+ */
+public interface BatchPredictionBackend {
+
+    enum JobState { PENDING, RUNNING, SUCCEEDED, FAILED, CANCELLED;
+        public boolean isTerminal() { return this == SUCCEEDED || this == FAILED || this == CANCELLED; }
+    }
+
+    final class JobStatus {
+        public final String jobId;
+        public final JobState state;
+        public final String message;      // error or progress detail, may be null
+        public final long completed;      // requests finished so far, -1 if unknown
+        public final long failed;
+
+        public JobStatus(String jobId, JobState state, String message, long completed, long failed) {
+            this.jobId = jobId;
+            this.state = state;
+            this.message = message;
+            this.completed = completed;
+            this.failed = failed;
+        }
+
+        @Override
+        public String toString() {
+            return state + (completed >= 0 ? " (" + completed + " done, " + failed + " failed)" : "")
+                    + (message != null ? ": " + message : "");
+        }
+    }
+
+    /** Submit the requests in {@code inputJsonl}; returns the backend's job id. */
+    String submit(Path inputJsonl, String displayName, String modelId) throws Exception;
+
+    JobStatus poll(String jobId) throws Exception;
+
+    /** Stream every output line ({request, response, status}) of a finished job to {@code sink}. */
+    void readResults(String jobId, Consumer<String> sink) throws Exception;
+
+    /** Suggested wait between polls. */
+    default long pollIntervalMillis() { return 30_000; }
+}
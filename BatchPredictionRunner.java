@@ -0,0 +1,176 @@
+package org.example.core;
+
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * BatchPredictionRunner — turns a list of prompts into a batch job and back. Requests are
+ * written as JSONL ({"request": generateContent body}) with an "item" label holding the
+ * request's index, which Vertex echoes back in each output line, so results can be
+ * matched to documents regardless of output order. Each backend request holds an I/O slot
+ * only while it runs ({@link ExecutionService#callIo}); waits between polls hold none, so a
+ * job that takes all night belongs on a background task.
+ */
+public class BatchPredictionRunner {
+
+    /** One generateContent request; {@code task} travels as a label for bookkeeping. */
+    public static final class Item {
+        public final String task;
+        public final CharSequence prompt;
+        public final JsonObject generationConfig;
+
+        public Item(String task, CharSequence prompt, JsonObject generationConfig) {
+            this.task = task;
+            this.prompt = prompt;
+            this.generationConfig = generationConfig == null ? new JsonObject() : generationConfig;
+        }
+    }
+
+    /** Result for the item at {@code index}; {@code error} is set when there's no usable text. */
+    public static final class ItemResult {
+        public final int index;
+        public final String task;
+        public final String text;
+        public final GenerateContentJson.Usage usage;
+        public final String error;
+
+        ItemResult(int index, String task, String text, GenerateContentJson.Usage usage, String error) {
+            this.index = index;
+            this.task = task;
+            this.text = text;
+            this.usage = usage;
+            this.error = error;
+        }
+
+        public boolean ok() { return error == null; }
+    }
+
+    private final BatchPredictionBackend backend;
+    private final String modelId;
+    private final Path workDir;
+
+    public BatchPredictionRunner(BatchPredictionBackend backend, String modelId, Path workDir) {
+        this.backend = backend;
+        this.modelId = modelId;
+        this.workDir = workDir;
+    }
+
+    /** Write the JSONL and submit it; returns the job id. */
+    public String submit(List<Item> items, String displayName) throws Exception {
+        Files.createDirectories(workDir);
+        Path jsonl = workDir.resolve(displayName + ".jsonl");
+        try (BufferedWriter w = Files.newBufferedWriter(jsonl, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < items.size(); i++) {
+                Item it = items.get(i);
+                Map<String, String> labels = new LinkedHashMap<>();
+                labels.put("item", String.valueOf(i));
+                labels.put("task", it.task);
+                JsonWriter json = new JsonWriter(w);
+                json.beginObject().name("request");
+                GenerateContentJson.writeRequest(json, w, it.prompt, it.generationConfig, labels);
+                json.endObject().flush();
+                w.newLine();
+            }
+        }
+        System.out.println("📦 Batch input written: " + items.size() + " request(s), " + Files.size(jsonl) + " bytes -> " + jsonl);
+        return ExecutionService.shared().callIo(() -> backend.submit(jsonl, displayName, modelId));
+    }
+
+    /** Poll until the job reaches a terminal state or {@code timeoutMs} passes (then the last status is returned). */
+    public BatchPredictionBackend.JobStatus await(String jobId, Consumer<BatchPredictionBackend.JobStatus> onPoll,
+                                                  long timeoutMs) throws Exception {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (true) {
+            BatchPredictionBackend.JobStatus st = ExecutionService.shared().callIo(() -> backend.poll(jobId));
+            if (onPoll != null) onPoll.accept(st);
+            if (st.state.isTerminal() || System.currentTimeMillis() >= deadline) return st;
+            Thread.sleep(Math.min(backend.pollIntervalMillis(), Math.max(1, deadline - System.currentTimeMillis())));
+        }
+    }
+
+    /** Stream results to {@code sink}; returns the number of output lines seen. */
+    public int collect(String jobId, Consumer<ItemResult> sink) throws Exception {
+        int[] count = {0};
+        ExecutionService.shared().callIo(() -> {
+            backend.readResults(jobId, line -> {
+                count[0]++;
+                ItemResult r = parse(line);
+                if (r != null) sink.accept(r);
+            });
+            return null;
+        });
+        return count[0];
+    }
+
+    /** One output line; only the request's labels and the response's text/usage are read. */
+    static ItemResult parse(String line) {
+        int index = -1;
+        String task = "";
+        String status = "";
+        GenerateContentJson.Reply reply = null;
+        try (JsonReader in = new JsonReader(new StringReader(line))) {
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                } else if ("request".equals(name)) {
+                    Map<String, String> labels = readLabels(in);
+                    if (labels.containsKey("item")) index = Integer.parseInt(labels.get("item"));
+                    task = labels.getOrDefault("task", "");
+                } else if ("response".equals(name)) {
+                    reply = GenerateContentJson.read(in);
+                } else if ("status".equals(name)) {
+                    status = in.nextString();
+                } else {
+                    in.skipValue();
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("⚠️ Unparsable batch output line skipped");
+            return null;
+        }
+        if (index < 0) return null;
+
+        if (!status.isEmpty() || reply == null) {
+            return new ItemResult(index, task, null, GenerateContentJson.Usage.NONE, status.isEmpty() ? "no response" : status);
+        }
+        if (reply.blockReason != null) {
+            return new ItemResult(index, task, null, reply.usage, "blocked: " + reply.blockReason);
+        }
+        String text = reply.text.trim();
+        return text.isEmpty()
+                ? new ItemResult(index, task, null, reply.usage, "empty response")
+                : new ItemResult(index, task, text, reply.usage, null);
+    }
+
+    /** request.labels as a map; the echoed request body (prompt included) is skipped unread. */
+    private static Map<String, String> readLabels(JsonReader in) throws IOException {
+        Map<String, String> labels = new LinkedHashMap<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            if ("labels".equals(in.nextName()) && in.peek() == JsonToken.BEGIN_OBJECT) {
+                in.beginObject();
+                while (in.hasNext()) labels.put(in.nextName(), in.nextString());
+                in.endObject();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return labels;
+    }
+}
@@ -0,0 +1,195 @@
+package org.example.core;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * BoilerplateStripper — removes running headers, footers and page numbers before text
+ * goes to the classifier or the LLM. A line is boilerplate when its fingerprint (trimmed,
+ * lower-cased, whitespace collapsed, digits folded) shows up on a large share of the pages.
+ * Marked page numbers ("Page 3 of 12", "- 3 -") are dropped everywhere; a bare number ("3")
+ * only at the top or bottom of a page, when it equals the page's index or bare numbers sit
+ * at that edge on most pages, so figures and list numbers in the body survive.
+ * With keepOneCopy the first occurrence of each repeated line is kept, so the caption and
+ * case number are still seen once.
+ */
+public class BoilerplateStripper {
+    private static final int MIN_PAGES = 3;
+    private static final double MIN_PAGE_SHARE = 0.5;
+    private static final int MAX_LINE_CHARS = 200;   // headers/footers are short; body paragraphs never qualify
+
+    private static final int EDGE_LINES = 3;         // non-blank lines at each end of a page where numbers sit
+
+    private static final Pattern MARKED_PAGE_NUMBER = Pattern.compile(
+            "(?i)^(page|pg\\.?|p\\.)\\s*\\d{1,4}(\\s*(of|/)\\s*\\d{1,4})?$|^\\d{1,4}\\s*(of|/)\\s*\\d{1,4}$|^[-–—]\\s*\\d{1,4}\\s*[-–—]$");
+    private static final Pattern BARE_NUMBER = Pattern.compile("^\\d{1,4}$");
+
+    private final boolean keepOneCopy;
+
+    public BoilerplateStripper(boolean keepOneCopy) {
+        this.keepOneCopy = keepOneCopy;
+    }
+
+    public static class Result {
+        public final String text;
+        public final int originalChars;
+        public final int removedChars;
+        public final int removedLines;
+        public final int pages;
+
+        Result(String text, int originalChars, int removedChars, int removedLines, int pages) {
+            this.text = text;
+            this.originalChars = originalChars;
+            this.removedChars = removedChars;
+            this.removedLines = removedLines;
+            this.pages = pages;
+        }
+
+        @Override
+        public String toString() {
+            return "removed " + removedChars + " of " + originalChars + " chars (" + removedLines + " lines, "
+                    + pages + " page(s))";
+        }
+    }
+
+    /**
+     * Strip using the session's real pages when the extracted text came from the PDF text
+     * layer; otherwise fall back to form-feed page breaks in {@code extracted}.
+     */
+    public Result strip(DocumentSession session, String extracted) throws IOException {
+        if (session.getKind() == DocumentSession.Kind.PDF && session.hasTextLayer()
+                && session.getFullText().equals(extracted)) {
+            return strip(session.getPageTexts());
+        }
+        return strip(extracted);
+    }
+
+    /** Pages separated by form feeds (OCR output, some converters); a single page otherwise. */
+    public Result strip(String text) {
+        if (text == null) text = "";
+        return strip(Arrays.asList(text.split("\f", -1)));
+    }
+
+    public Result strip(List<String> pages) {
+        int pageCount = pages.size();
+        int originalChars = 0;
+        List<String[]> lines = new ArrayList<>(pageCount);
+        for (String p : pages) {
+            String page = p == null ? "" : p;
+            originalChars += page.length();
+            lines.add(page.split("\r?\n", -1));
+        }
+
+        // how many distinct pages each fingerprint appears on
+        Map<Long, Integer> pageHits = new HashMap<>();
+        if (pageCount >= MIN_PAGES) {
+            Set<Long> seenOnPage = new HashSet<>();
+            for (String[] pageLines : lines) {
+                seenOnPage.clear();
+                for (String line : pageLines) {
+                    long fp = fingerprint(line);
+                    if (fp != 0 && seenOnPage.add(fp)) pageHits.merge(fp, 1, Integer::sum);
+                }
+            }
+        }
+        int threshold = Math.max(MIN_PAGES, (int) Math.ceil(pageCount * MIN_PAGE_SHARE));
+
+        // where each page's edges end, and on how many pages a bare number sits at the top / bottom
+        int[] topEdge = new int[pageCount];
+        int[] bottomEdge = new int[pageCount];
+        int topNumbers = 0, bottomNumbers = 0;
+        for (int p = 0; p < pageCount; p++) {
+            String[] pageLines = lines.get(p);
+            topEdge[p] = edgeEnd(pageLines, true);
+            bottomEdge[p] = edgeEnd(pageLines, false);
+            boolean top = false, bottom = false;
+            for (int i = 0; i < pageLines.length; i++) {
+                if (!BARE_NUMBER.matcher(pageLines[i].trim()).matches()) continue;
+                top |= i <= topEdge[p];
+                bottom |= i >= bottomEdge[p];
+            }
+            if (top) topNumbers++;
+            if (bottom) bottomNumbers++;
+        }
+
+        StringBuilder out = new StringBuilder(originalChars);
+        Set<Long> kept = new HashSet<>();
+        int removedLines = 0;
+        int removedChars = 0;
+        for (int p = 0; p < pageCount; p++) {
+            String[] pageLines = lines.get(p);
+            for (int i = 0; i < pageLines.length; i++) {
+                String line = pageLines[i];
+                String trimmed = line.trim();
+                boolean drop = false;
+                if (!trimmed.isEmpty() && MARKED_PAGE_NUMBER.matcher(trimmed).matches()) {
+                    drop = true;
+                } else if (BARE_NUMBER.matcher(trimmed).matches()) {
+                    boolean top = i <= topEdge[p], bottom = i >= bottomEdge[p];
+                    drop = (top || bottom) && (Integer.parseInt(trimmed) == p + 1
+                            || (top && topNumbers >= threshold) || (bottom && bottomNumbers >= threshold));
+                } else {
+                    long fp = fingerprint(line);
+                    if (fp != 0 && pageHits.getOrDefault(fp, 0) >= threshold) {
+                        drop = !(keepOneCopy && kept.add(fp));
+                    }
+                }
+                if (drop) {
+                    removedLines++;
+                    removedChars += line.length() + 1;
+                    continue;
+                }
+                // don't let removed lines leave runs of blank lines behind
+                if (trimmed.isEmpty() && endsWithBlankLine(out)) continue;
+                out.append(line).append('\n');
+            }
+        }
+
+        while (out.length() > 0 && out.charAt(out.length() - 1) == '\n') out.setLength(out.length() - 1);
+        return new Result(out.toString(), originalChars, removedChars, removedLines, pageCount);
+    }
+
+    /**
+     * Index of the {@code EDGE_LINES}-th non-blank line from the top (or bottom) of a page;
+     * lines up to (or from) it are at the page's edge.
+     */
+    private static int edgeEnd(String[] pageLines, boolean fromTop) {
+        int seen = 0;
+        for (int k = 0; k < pageLines.length; k++) {
+            int i = fromTop ? k : pageLines.length - 1 - k;
+            if (!pageLines[i].trim().isEmpty() && ++seen == EDGE_LINES) return i;
+        }
+        return fromTop ? pageLines.length - 1 : 0;
+    }
+
+    private static boolean endsWithBlankLine(StringBuilder sb) {
+        int n = sb.length();
+        return n == 0 || (n >= 2 && sb.charAt(n - 1) == '\n' && sb.charAt(n - 2) == '\n');
+    }
+
+    /** 64-bit FNV-1a over the normalized line; 0 for blank or over-long lines. */
+    static long fingerprint(String line) {
+        int from = 0, to = line.length();
+        while (from < to && Character.isWhitespace(line.charAt(from))) from++;
+        while (to > from && Character.isWhitespace(line.charAt(to - 1))) to--;
+        if (from == to || to - from > MAX_LINE_CHARS) return 0;
+
+        long h = 0xcbf29ce484222325L;
+        boolean space = false;
+        for (int i = from; i < to; i++) {
+            char c = line.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+            if (space) {
+                h = (h ^ ' ') * 0x100000001b3L;
+                space = false;
+            }
+            char n = Character.isDigit(c) ? '#' : Character.toLowerCase(c);
+            h = (h ^ n) * 0x100000001b3L;
+        }
+        return h == 0 ? 1 : h;
+    }
+}
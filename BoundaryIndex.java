@@ -0,0 +1,125 @@
+package org.example.core;
+
+import java.util.Arrays;
+
+/**
+ * BoundaryIndex — sentence and paragraph boundary offsets of a text, built in a single
+ * linear scan. Offsets point just past the boundary (after the punctuation / newline),
+ * so they can be used directly as exclusive chunk ends without any substring probing.
+ * Sentences end at terminal punctuation or a blank line; a single newline is only a
+ * wrapped line (extracted PDF text breaks mid-sentence) and reads as a space.
+ */
+public class BoundaryIndex {
+    private final CharSequence text;
+    private final int[] sentenceEnds;   // ascending; the last entry is always text.length()
+    private final int[] paragraphEnds;  // ascending; subset of positions after a blank line
+
+    private BoundaryIndex(CharSequence text, int[] sentenceEnds, int[] paragraphEnds) {
+        this.text = text;
+        this.sentenceEnds = sentenceEnds;
+        this.paragraphEnds = paragraphEnds;
+    }
+
+    public static BoundaryIndex build(CharSequence text) {
+        int n = text.length();
+        IntList sentences = new IntList(Math.max(16, n / 80));
+        IntList paragraphs = new IntList(Math.max(16, n / 800));
+
+        boolean lineHasText = false;
+        boolean textSinceEnd = false;   // non-blank text after the last sentence end
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                if (!lineHasText && i > 0) {
+                    // blank line: paragraph (and sentence) break right after it; with no
+                    // text since the last sentence end, that sentence takes the gap
+                    paragraphs.addIfAfterLast(i + 1);
+                    if (textSinceEnd) sentences.addIfAfterLast(i + 1);
+                    else sentences.moveLast(i + 1);
+                    textSinceEnd = false;
+                }
+                lineHasText = false;
+            } else if (c == '.' || c == '?' || c == '!') {
+                // end of sentence when followed by whitespace or end of text
+                if (i + 1 >= n || Character.isWhitespace(text.charAt(i + 1))) {
+                    sentences.addIfAfterLast(i + 1);
+                    textSinceEnd = false;
+                } else {
+                    textSinceEnd = true;
+                }
+                lineHasText = true;
+            } else if (c != '\r' && !Character.isWhitespace(c)) {
+                lineHasText = true;
+                textSinceEnd = true;
+            }
+        }
+        if (n > 0) {
+            if (textSinceEnd) sentences.addIfAfterLast(n);
+            else sentences.moveLast(n);
+        }
+        return new BoundaryIndex(text, sentences.toArray(), paragraphs.toArray());
+    }
+
+    public CharSequence text() { return text; }
+    public int sentenceCount() { return sentenceEnds.length; }
+
+    /** Start offset of sentence {@code i} (0-based). */
+    public int sentenceStart(int i) { return i == 0 ? 0 : sentenceEnds[i - 1]; }
+
+    /** Exclusive end offset of sentence {@code i}. */
+    public int sentenceEnd(int i) { return sentenceEnds[i]; }
+
+    /**
+     * Best boundary in (from, to]: the last paragraph break if there is one, otherwise the
+     * last sentence end. Returns -1 when the window contains neither.
+     */
+    public int lastBoundaryIn(int from, int to) {
+        int p = lastIn(paragraphEnds, from, to);
+        int s = lastIn(sentenceEnds, from, to);
+        // prefer the later of the two; a paragraph break is also a sentence boundary
+        return Math.max(p, s);
+    }
+
+    /** First sentence end at or after {@code pos}, or text length. */
+    public int nextSentenceEnd(int pos) {
+        int k = Arrays.binarySearch(sentenceEnds, pos);
+        if (k < 0) k = -k - 1;
+        return k < sentenceEnds.length ? sentenceEnds[k] : text.length();
+    }
+
+    /** Index of the sentence that contains offset {@code pos}. */
+    public int sentenceAt(int pos) {
+        int k = Arrays.binarySearch(sentenceEnds, pos);
+        return k >= 0 ? Math.min(k + 1, sentenceEnds.length - 1) : Math.min(-k - 1, sentenceEnds.length - 1);
+    }
+
+    private static int lastIn(int[] arr, int from, int to) {
+        // largest value v with from < v <= to
+        int k = Arrays.binarySearch(arr, to);
+        int idx = k >= 0 ? k : -k - 2;
+        if (idx >= 0 && arr[idx] > from) return arr[idx];
+        return -1;
+    }
+
+    /** Minimal growable int array so the index stays primitive. */
+    static final class IntList {
+        private int[] a;
+        private int size;
+
+        IntList(int cap) { a = new int[Math.max(4, cap)]; }
+
+        void addIfAfterLast(int v) {
+            if (size > 0 && a[size - 1] >= v) return;
+            if (size == a.length) a = Arrays.copyOf(a, a.length * 2);
+            a[size++] = v;
+        }
+
+        /** Move the last value forward to {@code v}; adds it when the list is empty. */
+        void moveLast(int v) {
+            if (size == 0) addIfAfterLast(v);
+            else if (a[size - 1] < v) a[size - 1] = v;
+        }
+
+        int[] toArray() { return Arrays.copyOf(a, size); }
+    }
+}
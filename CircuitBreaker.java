@@ -0,0 +1,83 @@
+package org.example.core;
+
+/**
+ * CircuitBreaker — per-endpoint health gate. After {@code failureThreshold} consecutive
+ * failures it opens and rejects calls for {@code openMillis}; then a single probe call is let
+ * through (half-open) and its outcome closes or re-opens the breaker.
+ */
+public class CircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+    private Thread probeOwner;
+    private long timesOpened;
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        if (failureThreshold < 1) throw new IllegalArgumentException("failureThreshold must be >= 1");
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /** True if a call may proceed now. In half-open state only one probe is admitted at a time. */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openMillis) return false;
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probeInFlight) return false;
+            probeInFlight = true;
+            probeOwner = Thread.currentThread();
+        }
+        return true;
+    }
+
+    /**
+     * The caller's call ended without an answer from the endpoint (interrupted, cancelled, a
+     * bug); if it was the half-open probe, let the next call probe instead. No-op otherwise.
+     */
+    public synchronized void releaseProbe() {
+        if (probeInFlight && probeOwner == Thread.currentThread()) {
+            probeInFlight = false;
+            probeOwner = null;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        probeOwner = null;
+        state = State.CLOSED;
+    }
+
+    public synchronized void onFailure() {
+        probeInFlight = false;
+        probeOwner = null;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) timesOpened++;
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) return State.HALF_OPEN;
+        return state;
+    }
+
+    public synchronized long getTimesOpened() { return timesOpened; }
+
+    /** Milliseconds until an open breaker admits a probe, 0 otherwise. */
+    public synchronized long remainingOpenMillis() {
+        if (state != State.OPEN) return 0;
+        return Math.max(0, openMillis - (System.currentTimeMillis() - openedAt));
+    }
+}
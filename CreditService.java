@@ -151,6 +151,31 @@ public class CreditService {
         return Math.max(credits, 1);         // Minimum 1 credit
     }
 
+    // ~100 words of input per credit, matching the estimate above; output tokens cost ~4x input
+    private static final int TOKENS_PER_CREDIT = 130;
+    private static final int OUTPUT_TOKEN_WEIGHT = 4;
+
+    /**
+     * Calculate credits from the tokens the models actually reported (usageMetadata) rather
+     * than a length-based guess; cached answers cost nothing
+     */
+    public int calculateUsageCredits(int pageCount, int promptTokens, int outputTokens) {
+        int credits = 0;
+        credits += pageCount * 10;           // 10 credits per page for OCR
+        credits += calculateTokenCredits(promptTokens, outputTokens);
+        credits += 5;                        // Fixed cost for classification
+        return Math.max(credits, 1);         // Minimum 1 credit
+    }
+
+    /**
+     * The AI part of the above on its own, for model calls made after the document was
+     * charged (deferred summaries); 0 when nothing reached a model
+     */
+    public int calculateTokenCredits(int promptTokens, int outputTokens) {
+        long weighted = promptTokens + (long) outputTokens * OUTPUT_TOKEN_WEIGHT;
+        return (int) ((weighted + TOKENS_PER_CREDIT - 1) / TOKENS_PER_CREDIT);   // rounded up
+    }
+
     // === ADMIN ACCOUNT MANAGEMENT ===
 
     /**
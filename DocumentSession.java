@@ -0,0 +1,249 @@
+package org.example.core;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDDocumentInformation;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * DocumentSession — opens a document once and lazily exposes page count, per-page text
+ * and metadata. One session is meant to live for a single pipeline run so extraction,
+ * boilerplate stripping and credit estimation all share the same parsed document.
+ */
+public class DocumentSession implements Closeable {
+
+    public enum Kind { PDF, DOCX, TEXT, IMAGE, OTHER }
+
+    /** Rough characters per page for formats without a real page model. */
+    private static final int CHARS_PER_PAGE = 3000;
+
+    private final File file;
+    private final Kind kind;
+
+    private PDDocument pdf;
+    private XWPFDocument docx;
+    private Integer pageCount;
+    private String[] pageTexts;
+    private String fullText;
+    private Map<String, String> metadata;
+
+    private DocumentSession(File file, Kind kind) {
+        this.file = file;
+        this.kind = kind;
+    }
+
+    public static DocumentSession open(File file) {
+        Objects.requireNonNull(file, "file required");
+        return new DocumentSession(file, kindOf(file.getName()));
+    }
+
+    public File getFile() { return file; }
+    public Kind getKind() { return kind; }
+
+    /** Page count from the real page model where there is one, estimated otherwise. */
+    public synchronized int getPageCount() throws IOException {
+        if (pageCount != null) return pageCount;
+        switch (kind) {
+            case PDF:
+                pageCount = pdf().getNumberOfPages();
+                break;
+            case DOCX:
+                pageCount = docxPageCount();
+                break;
+            case TEXT:
+                pageCount = estimatePages(file.length());
+                break;
+            case IMAGE:
+                pageCount = imageFrameCount();
+                break;
+            default:
+                pageCount = 1;
+        }
+        return pageCount;
+    }
+
+    /** Text of a single page (0-based). Only PDFs have real pages; others return page 0 only. */
+    public synchronized String getPageText(int pageIndex) throws IOException {
+        if (kind != Kind.PDF) {
+            return pageIndex == 0 ? getFullText() : "";
+        }
+        int n = getPageCount();
+        if (pageIndex < 0 || pageIndex >= n) throw new IndexOutOfBoundsException("page " + pageIndex + " of " + n);
+        if (pageTexts == null) pageTexts = new String[n];
+        if (pageTexts[pageIndex] == null) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            stripper.setStartPage(pageIndex + 1);
+            stripper.setEndPage(pageIndex + 1);
+            pageTexts[pageIndex] = stripper.getText(pdf());
+        }
+        return pageTexts[pageIndex];
+    }
+
+    public synchronized List<String> getPageTexts() throws IOException {
+        if (kind != Kind.PDF) return List.of(getFullText());
+        List<String> out = new ArrayList<>(getPageCount());
+        for (int i = 0; i < getPageCount(); i++) out.add(getPageText(i));
+        return out;
+    }
+
+    /** Full text layer. For images this is empty; OCR stays with the caller. */
+    public synchronized String getFullText() throws IOException {
+        if (fullText != null) return fullText;
+        switch (kind) {
+            case PDF: {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < getPageCount(); i++) sb.append(getPageText(i));
+                fullText = sb.toString();
+                break;
+            }
+            case DOCX: {
+                StringBuilder sb = new StringBuilder();
+                docx().getParagraphs().forEach(p -> sb.append(p.getText()).append("\n"));
+                fullText = sb.toString();
+                break;
+            }
+            case TEXT:
+                try (MappedTextReader reader = MappedTextReader.open(file.toPath())) {
+                    fullText = reader.readAll();
+                }
+                break;
+            default:
+                fullText = "";
+        }
+        return fullText;
+    }
+
+    /** True when the document carries enough embedded text to skip OCR. */
+    public boolean hasTextLayer() throws IOException {
+        if (kind == Kind.IMAGE) return false;
+        return getFullText().trim().length() >= 100;
+    }
+
+    /**
+     * Average text-layer characters per page from at most {@code samplePages} evenly spaced
+     * pages, without extracting the whole document; 0 for images and scans without text.
+     */
+    public synchronized int sampleCharsPerPage(int samplePages) throws IOException {
+        int n = getPageCount();
+        switch (kind) {
+            case PDF: {
+                int k = Math.max(1, Math.min(samplePages, n));
+                long chars = 0;
+                for (int i = 0; i < k; i++) chars += getPageText((int) ((long) i * n / k)).trim().length();
+                return (int) (chars / k);
+            }
+            case TEXT:
+                return (int) (file.length() / n);
+            case DOCX:
+                return getFullText().trim().length() / n;
+            default:
+                return 0;
+        }
+    }
+
+    public synchronized Map<String, String> getMetadata() throws IOException {
+        if (metadata != null) return metadata;
+        Map<String, String> m = new LinkedHashMap<>();
+        m.put("filename", file.getName());
+        m.put("kind", kind.name());
+        m.put("size_bytes", String.valueOf(file.length()));
+        m.put("pages", String.valueOf(getPageCount()));
+        if (kind == Kind.PDF) {
+            PDDocumentInformation info = pdf().getDocumentInformation();
+            if (info != null) {
+                putIfPresent(m, "title", info.getTitle());
+                putIfPresent(m, "author", info.getAuthor());
+                putIfPresent(m, "producer", info.getProducer());
+                if (info.getCreationDate() != null) m.put("created", info.getCreationDate().toInstant().toString());
+            }
+        } else if (kind == Kind.DOCX) {
+            var core = docx().getProperties().getCoreProperties();
+            putIfPresent(m, "title", core.getTitle());
+            putIfPresent(m, "author", core.getCreator());
+        }
+        metadata = Collections.unmodifiableMap(m);
+        return metadata;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (pdf != null) {
+            try { pdf.close(); } catch (IOException ignored) {}
+            pdf = null;
+        }
+        if (docx != null) {
+            try { docx.close(); } catch (IOException ignored) {}
+            docx = null;
+        }
+    }
+
+    // ===== helpers =====
+
+    private PDDocument pdf() throws IOException {
+        if (pdf == null) pdf = PDDocument.load(file);
+        return pdf;
+    }
+
+    private XWPFDocument docx() throws IOException {
+        if (docx == null) {
+            try (FileInputStream fis = new FileInputStream(file)) {
+                docx = new XWPFDocument(fis);
+            }
+        }
+        return docx;
+    }
+
+    private int docxPageCount() throws IOException {
+        try {
+            int pages = docx().getProperties().getExtendedProperties().getUnderlyingProperties().getPages();
+            if (pages > 0) return pages;
+        } catch (Exception ignored) {
+            // app.xml missing or not written by the producer
+        }
+        return estimatePages(getFullText().length());
+    }
+
+    private int imageFrameCount() {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) return 1;
+            ImageReader r = readers.next();
+            try {
+                r.setInput(iis);
+                int n = r.getNumImages(true);
+                return Math.max(1, n);
+            } finally {
+                r.dispose();
+            }
+        } catch (Exception e) {
+            return 1;
+        }
+    }
+
+    private static int estimatePages(long chars) {
+        return (int) Math.max(1, (chars + CHARS_PER_PAGE - 1) / CHARS_PER_PAGE);
+    }
+
+    private static void putIfPresent(Map<String, String> m, String k, String v) {
+        if (v != null && !v.isBlank()) m.put(k, v);
+    }
+
+    static Kind kindOf(String filename) {
+        String name = filename.toLowerCase();
+        if (name.endsWith(".pdf")) return Kind.PDF;
+        if (name.endsWith(".docx")) return Kind.DOCX;
+        if (name.endsWith(".txt")) return Kind.TEXT;
+        if (name.endsWith(".png") || name.endsWith(".jpg") || name.endsWith(".jpeg")
+                || name.endsWith(".tiff") || name.endsWith(".tif") || name.endsWith(".bmp")) return Kind.IMAGE;
+        return Kind.OTHER;
+    }
+}
@@ -0,0 +1,424 @@
+package org.example.core;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ExecutionService — the one place the application starts threads.
+ * <ul>
+ *   <li>{@link #io}: a named virtual thread per task (pipelines, model calls, SQLite);
+ *       at most {@code exec.io.maxConcurrent} run at once, the rest wait their turn.</li>
+ *   <li>{@link #callCpu}: CPU-heavy work (text extraction, rendering) on a fixed pool of
+ *       {@code exec.cpu.threads} platform threads.</li>
+ *   <li>{@link #background}: long-lived loops, stage workers and waits on the user (sign-in)
+ *       or on a remote job, uncapped because they bound themselves; {@link #callIo} takes an
+ *       I/O slot for each request such a task makes.</li>
+ * </ul>
+ * Every task runs in a {@link Lane}. The I/O slots, the CPU queue and any {@link Gate} admit
+ * waiting work lane by lane, and while interactive work is in flight the batch and background
+ * lanes together get only a share of each gate ({@code exec.throttledShare}). Queue depth,
+ * active counts and per-lane latencies are exposed as gauges; {@link #shutdown} stops
+ * accepting work, waits for running tasks and interrupts what is left.
+ */
+public final class ExecutionService {
+    private static final int IO_MAX_CONCURRENT = Integer.getInteger("exec.io.maxConcurrent", 8);
+    private static final int CPU_THREADS = Integer.getInteger("exec.cpu.threads",
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    private static final double THROTTLED_SHARE =
+            Double.parseDouble(System.getProperty("exec.throttledShare", "0.5"));
+
+    private static final ExecutionService SHARED = new ExecutionService(IO_MAX_CONCURRENT, CPU_THREADS);
+
+    public static ExecutionService shared() {
+        return SHARED;
+    }
+
+    private final Gate ioGate;
+    private final ThreadPoolExecutor cpuPool;
+    private final AtomicLong cpuSeq = new AtomicLong();
+    private final List<Gate> gates = new CopyOnWriteArrayList<>();
+    private final Set<Thread> live = ConcurrentHashMap.newKeySet();
+    private final Set<Thread> ioLive = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean shutdown = new AtomicBoolean();
+
+    private final AtomicInteger ioQueued = new AtomicInteger();
+    private final AtomicInteger ioActive = new AtomicInteger();
+    private final AtomicInteger cpuActive = new AtomicInteger();
+    private final AtomicInteger backgroundActive = new AtomicInteger();
+    private final AtomicInteger interactiveInFlight = new AtomicInteger();
+    private final Map<Lane, LaneStats> laneStats = new EnumMap<>(Lane.class);
+
+    public ExecutionService(int ioMaxConcurrent, int cpuThreads) {
+        for (Lane lane : Lane.values()) laneStats.put(lane, new LaneStats());
+        this.ioGate = gate("io", ioMaxConcurrent);
+        AtomicInteger n = new AtomicInteger();
+        this.cpuPool = new ThreadPoolExecutor(Math.max(1, cpuThreads), Math.max(1, cpuThreads), 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "cpu-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /** Run I/O-bound work in the caller's lane; see {@link #io(String, Lane, Runnable)}. */
+    public Thread io(String name, Runnable task) {
+        return io(name, Lane.current(), task);
+    }
+
+    /** Run I/O-bound work on a virtual thread named {@code name}, once an I/O slot is free for its lane. */
+    public Thread io(String name, Lane lane, Runnable task) {
+        ensureRunning();
+        ioQueued.incrementAndGet();
+        if (lane == Lane.INTERACTIVE) interactiveInFlight.incrementAndGet();
+        long queuedAt = System.nanoTime();
+        return start(Thread.ofVirtual().name(name), lane, true, () -> {
+            try {
+                try {
+                    ioGate.acquire(lane);
+                } catch (InterruptedException e) {
+                    ioQueued.decrementAndGet();
+                    return;
+                }
+                ioQueued.decrementAndGet();
+                ioActive.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    ioActive.decrementAndGet();
+                    ioGate.release(lane);
+                    // an interactive task is what a user waits for; batch lanes record per document instead
+                    if (lane == Lane.INTERACTIVE) recordLatency(lane, System.nanoTime() - queuedAt);
+                }
+            } finally {
+                if (lane == Lane.INTERACTIVE && interactiveInFlight.decrementAndGet() == 0) {
+                    // the lower lanes may use their full share again
+                    gates.forEach(Gate::wake);
+                }
+            }
+        });
+    }
+
+    /**
+     * Run one I/O call on the caller's thread, holding an I/O slot in its lane only while it runs.
+     * For {@link #background} tasks that mostly wait (polling a remote job) between short requests.
+     */
+    public <T> T callIo(Callable<T> task) throws Exception {
+        ensureRunning();
+        Lane lane = Lane.current();
+        ioQueued.incrementAndGet();
+        try {
+            ioGate.acquire(lane);
+        } finally {
+            ioQueued.decrementAndGet();
+        }
+        ioActive.incrementAndGet();
+        try {
+            return task.call();
+        } finally {
+            ioActive.decrementAndGet();
+            ioGate.release(lane);
+        }
+    }
+
+    /** Start a long-lived or self-limiting task in the caller's lane; see {@link #background(String, Lane, Runnable)}. */
+    public Thread background(String name, Runnable task) {
+        return background(name, Lane.current(), task);
+    }
+
+    /** Start a long-lived or self-limiting task on a virtual thread, outside the I/O cap. */
+    public Thread background(String name, Lane lane, Runnable task) {
+        ensureRunning();
+        return start(Thread.ofVirtual().name(name), lane, false, () -> {
+            backgroundActive.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                backgroundActive.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Start {@code task} now on its own virtual thread in the caller's lane, outside the I/O cap
+     * (the caller already holds a slot and will {@link #await} the result). Cancelling the
+     * future interrupts it.
+     */
+    public <T> Future<T> fork(String name, Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        background(name, Lane.current(), future);
+        return future;
+    }
+
+    /**
+     * Run CPU-bound work on the bounded pool and wait for it; queued work runs lane by lane and
+     * the pool thread carries {@code name} meanwhile.
+     */
+    public <T> T callCpu(String name, Callable<T> task) throws Exception {
+        ensureRunning();
+        Lane lane = Lane.current();
+        long queuedAt = System.nanoTime();
+        CpuTask<T> cpuTask = new CpuTask<>(lane, cpuSeq.incrementAndGet(), () -> {
+            laneStats.get(lane).recordWait(System.nanoTime() - queuedAt);
+            Thread self = Thread.currentThread();
+            String poolName = self.getName();
+            self.setName(poolName + ":" + name);
+            Lane.set(lane);
+            cpuActive.incrementAndGet();
+            try {
+                return task.call();
+            } finally {
+                cpuActive.decrementAndGet();
+                Lane.set(null);
+                self.setName(poolName);
+            }
+        });
+        cpuPool.execute(cpuTask);
+        return await(cpuTask);
+    }
+
+    /** {@link Future#get()} that rethrows the task's own exception instead of an ExecutionException. */
+    public static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+    }
+
+    /** A lane-aware limit of {@code permits} on a shared resource, e.g. the Python bridges or the model quota. */
+    public Gate gate(String name, int permits) {
+        Gate g = new Gate(name, Math.max(1, permits));
+        gates.add(g);
+        return g;
+    }
+
+    /** Record an end-to-end latency in a lane, e.g. one batch document from its first stage to its last. */
+    public void recordLatency(Lane lane, long nanos) {
+        laneStats.get(lane).recordRun(nanos);
+    }
+
+    /**
+     * Admission to a shared resource. The highest lane with waiters goes first; while
+     * interactive work is in flight, batch and background work together hold at most
+     * {@code exec.throttledShare} of the permits.
+     */
+    public final class Gate {
+        private final String name;
+        private final int permits;
+        private final int throttledPermits;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private final int[] waiting = new int[Lane.values().length];
+        private int inUse;
+        private int lowerInUse;
+
+        private Gate(String name, int permits) {
+            this.name = name;
+            this.permits = permits;
+            this.throttledPermits = Math.max(1, (int) (permits * THROTTLED_SHARE));
+        }
+
+        public void acquire(Lane lane) throws InterruptedException {
+            long t0 = System.nanoTime();
+            lock.lock();
+            try {
+                waiting[lane.ordinal()]++;
+                try {
+                    while (!admissible(lane)) changed.await();
+                } finally {
+                    waiting[lane.ordinal()]--;
+                }
+                inUse++;
+                if (lane != Lane.INTERACTIVE) lowerInUse++;
+                // a higher-lane waiter leaving may unblock lower ones
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            laneStats.get(lane).recordWait(System.nanoTime() - t0);
+        }
+
+        public void release(Lane lane) {
+            lock.lock();
+            try {
+                inUse--;
+                if (lane != Lane.INTERACTIVE) lowerInUse--;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** Run {@code task} holding a permit in the caller's lane. */
+        public <T> T call(Callable<T> task) throws Exception {
+            Lane lane = Lane.current();
+            acquire(lane);
+            try {
+                return task.call();
+            } finally {
+                release(lane);
+            }
+        }
+
+        private boolean admissible(Lane lane) {
+            if (inUse >= permits) return false;
+            for (int i = 0; i < lane.ordinal(); i++) if (waiting[i] > 0) return false;
+            return lane == Lane.INTERACTIVE || interactiveInFlight.get() == 0 || lowerInUse < throttledPermits;
+        }
+
+        private void wake() {
+            lock.lock();
+            try {
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public String toString() {
+            lock.lock();
+            try {
+                return name + " " + inUse + "/" + permits + " in use, "
+                        + (waiting[0] + waiting[1] + waiting[2]) + " waiting";
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /** CPU pool entry, ordered by lane and then submission. */
+    private static final class CpuTask<T> extends FutureTask<T> implements Comparable<CpuTask<?>> {
+        private final Lane lane;
+        private final long seq;
+
+        CpuTask(Lane lane, long seq, Callable<T> callable) {
+            super(callable);
+            this.lane = lane;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(CpuTask<?> o) {
+            int c = Integer.compare(lane.ordinal(), o.lane.ordinal());
+            return c != 0 ? c : Long.compare(seq, o.seq);
+        }
+    }
+
+    /** Per-lane counts: time spent waiting for admission, and end-to-end latency of finished work. */
+    private static final class LaneStats {
+        private long waits, waitNanos, maxWaitNanos;
+        private long runs, runNanos, maxRunNanos;
+
+        synchronized void recordWait(long nanos) {
+            waits++;
+            waitNanos += nanos;
+            maxWaitNanos = Math.max(maxWaitNanos, nanos);
+        }
+
+        synchronized void recordRun(long nanos) {
+            runs++;
+            runNanos += nanos;
+            maxRunNanos = Math.max(maxRunNanos, nanos);
+        }
+
+        synchronized String describe() {
+            return runs + " done, avg " + ms(runs == 0 ? 0 : runNanos / runs) + " ms (max " + ms(maxRunNanos) + ")"
+                    + ", wait avg " + ms(waits == 0 ? 0 : waitNanos / waits) + " ms (max " + ms(maxWaitNanos) + ")";
+        }
+
+        private static long ms(long nanos) {
+            return TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+    }
+
+    // ===== gauges =====
+
+    public int ioQueued() { return ioQueued.get(); }
+    public int ioActive() { return ioActive.get(); }
+    public int cpuQueued() { return cpuPool.getQueue().size(); }
+    public int cpuActive() { return cpuActive.get(); }
+    public int backgroundActive() { return backgroundActive.get(); }
+    public int interactiveInFlight() { return interactiveInFlight.get(); }
+
+    public List<String> gauges() {
+        List<String> out = new ArrayList<>();
+        out.add("I/O tasks: " + ioActive() + " active, " + ioQueued() + " queued (cap " + ioGate.permits + ")");
+        out.add("CPU tasks: " + cpuActive() + " active, " + cpuQueued() + " queued (" + cpuPool.getMaximumPoolSize() + " threads)");
+        out.add("Background tasks: " + backgroundActive());
+        for (Gate g : gates) if (g != ioGate) out.add("Gate " + g);
+        for (Lane lane : Lane.values()) out.add("Lane " + lane + ": " + laneStats.get(lane).describe());
+        return out;
+    }
+
+    // ===== lifecycle =====
+
+    /** Stop accepting work, give running tasks {@code grace} to finish, then interrupt the rest. */
+    public void shutdown(Duration grace) {
+        if (!shutdown.compareAndSet(false, true)) return;
+        System.out.println("🛑 Shutting down: " + String.join("; ", gauges()));
+        long deadline = System.nanoTime() + grace.toNanos();
+        cpuPool.shutdown();
+        try {
+            // background loops never end by themselves; only I/O tasks get the grace period
+            for (Thread t : new ArrayList<>(ioLive)) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) break;
+                t.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(left)));
+            }
+            cpuPool.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        live.forEach(Thread::interrupt);
+        cpuPool.shutdownNow();
+    }
+
+    public boolean isShutdown() {
+        return shutdown.get();
+    }
+
+    private Thread start(Thread.Builder builder, Lane lane, boolean awaitOnShutdown, Runnable body) {
+        Thread t = builder.unstarted(() -> {
+            Lane.set(lane);
+            try {
+                body.run();
+            } catch (RuntimeException e) {
+                System.err.println("⚠️ Task " + Thread.currentThread().getName() + " failed: " + e.getMessage());
+            } finally {
+                live.remove(Thread.currentThread());
+                ioLive.remove(Thread.currentThread());
+            }
+        });
+        live.add(t);
+        if (awaitOnShutdown) ioLive.add(t);
+        t.start();
+        return t;
+    }
+
+    private void ensureRunning() {
+        if (shutdown.get()) throw new RejectedExecutionException("Execution service is shut down");
+    }
+}
@@ -0,0 +1,222 @@
+package org.example.core;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * GenerateContentJson — generateContent request and response JSON without a DOM.
+ * Requests are written field by field through a JsonWriter, with the prompt's segments
+ * escaped straight into the same stream. Responses are read with a JsonReader that keeps
+ * only the first candidate's text and finishReason, promptFeedback.blockReason and
+ * usageMetadata; everything else (safety ratings, citations, ...) is skipped unparsed.
+ */
+public final class GenerateContentJson {
+    private static final Gson GSON = new Gson();
+
+    private GenerateContentJson() {}
+
+    /** Token counts as reported by the model; zero when the response carried none. */
+    public static final class Usage {
+        public static final Usage NONE = new Usage(0, 0, 0, 0, 0);
+
+        public final int promptTokens;
+        public final int candidatesTokens;
+        public final int totalTokens;
+        public final int cachedTokens;
+        public final int thoughtsTokens;
+
+        public Usage(int promptTokens, int candidatesTokens, int totalTokens, int cachedTokens, int thoughtsTokens) {
+            this.promptTokens = promptTokens;
+            this.candidatesTokens = candidatesTokens;
+            this.totalTokens = totalTokens;
+            this.cachedTokens = cachedTokens;
+            this.thoughtsTokens = thoughtsTokens;
+        }
+
+        @Override
+        public String toString() {
+            return "prompt=" + promptTokens + " output=" + candidatesTokens + " thoughts=" + thoughtsTokens
+                    + " cached=" + cachedTokens + " total=" + totalTokens;
+        }
+    }
+
+    /** The parts of a response the clients act on. {@code text} is "" when there was none. */
+    public static final class Reply {
+        public final String text;
+        public final String finishReason;
+        public final String blockReason;
+        public final boolean hasCandidates;
+        public final Usage usage;
+
+        Reply(String text, String finishReason, String blockReason, boolean hasCandidates, Usage usage) {
+            this.text = text;
+            this.finishReason = finishReason;
+            this.blockReason = blockReason;
+            this.hasCandidates = hasCandidates;
+            this.usage = usage;
+        }
+    }
+
+    /** {contents:[{role:user, parts:[{text}]}], generationConfig} as a replayable, streamed request body. */
+    public static GoogleApiTransport.Body body(CharSequence prompt, JsonObject generationConfig) throws IOException {
+        return GoogleApiTransport.Body.json(prompt.length() + 256,
+                (json, raw) -> writeRequest(json, raw, prompt, generationConfig, null));
+    }
+
+    /**
+     * Write one request object at the writer's current position. {@code generationConfig} and
+     * {@code labels} are omitted when null. The prompt never becomes a String: its segments are
+     * escaped into {@code raw}, the Writer under {@code json}.
+     */
+    public static void writeRequest(JsonWriter json, Writer raw, CharSequence prompt, JsonObject generationConfig,
+                                    Map<String, String> labels) throws IOException {
+        json.beginObject();
+        json.name("contents").beginArray().beginObject();
+        json.name("role").value("user");
+        json.name("parts").beginArray().beginObject();
+        json.name("text");
+        // jsonValue("") emits the pending name and separator; JsonWriter keeps no buffer of its
+        // own, so the escaped literal can follow directly on the underlying Writer
+        json.jsonValue("");
+        (prompt instanceof Prompt ? (Prompt) prompt : Prompt.of(prompt)).writeJsonString(raw);
+        json.endObject().endArray();
+        json.endObject().endArray();
+        if (generationConfig != null) {
+            json.name("generationConfig");
+            GSON.toJson(generationConfig, json);
+        }
+        if (labels != null && !labels.isEmpty()) {
+            json.name("labels").beginObject();
+            for (Map.Entry<String, String> e : labels.entrySet()) json.name(e.getKey()).value(e.getValue());
+            json.endObject();
+        }
+        json.endObject();
+    }
+
+    public static Reply read(String body) throws IOException {
+        try (JsonReader in = new JsonReader(new StringReader(body))) {
+            return read(in);
+        }
+    }
+
+    public static Reply read(Reader body) throws IOException {
+        return read(new JsonReader(body));
+    }
+
+    /** Read one response object at the reader's current position. */
+    public static Reply read(JsonReader in) throws IOException {
+        StringBuilder text = new StringBuilder();
+        String[] finishReason = {null};
+        String blockReason = null;
+        boolean hasCandidates = false;
+        Usage usage = Usage.NONE;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "candidates":
+                    if (in.peek() == JsonToken.NULL) { in.nextNull(); break; }
+                    in.beginArray();
+                    if (in.hasNext()) {
+                        hasCandidates = true;
+                        readCandidate(in, text, finishReason);
+                    }
+                    while (in.hasNext()) in.skipValue();
+                    in.endArray();
+                    break;
+                case "promptFeedback":
+                    if (in.peek() == JsonToken.NULL) { in.nextNull(); break; }
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        if ("blockReason".equals(in.nextName())) blockReason = nextStringOrNull(in);
+                        else in.skipValue();
+                    }
+                    in.endObject();
+                    break;
+                case "usageMetadata":
+                    usage = readUsage(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return new Reply(text.toString(), finishReason[0], blockReason, hasCandidates, usage);
+    }
+
+    private static void readCandidate(JsonReader in, StringBuilder text, String[] finishReason) throws IOException {
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if ("finishReason".equals(name)) {
+                finishReason[0] = nextStringOrNull(in);
+            } else if ("content".equals(name) && in.peek() == JsonToken.BEGIN_OBJECT) {
+                in.beginObject();
+                while (in.hasNext()) {
+                    if ("parts".equals(in.nextName()) && in.peek() == JsonToken.BEGIN_ARRAY) readParts(in, text);
+                    else in.skipValue();
+                }
+                in.endObject();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+    }
+
+    private static void readParts(JsonReader in, StringBuilder text) throws IOException {
+        in.beginArray();
+        while (in.hasNext()) {
+            String partText = null;
+            boolean thought = false;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if ("text".equals(name)) partText = nextStringOrNull(in);
+                else if ("thought".equals(name) && in.peek() == JsonToken.BOOLEAN) thought = in.nextBoolean();
+                else in.skipValue();
+            }
+            in.endObject();
+            if (partText != null && !thought) text.append(partText);
+        }
+        in.endArray();
+    }
+
+    private static Usage readUsage(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return Usage.NONE;
+        }
+        int prompt = 0, candidates = 0, total = 0, cached = 0, thoughts = 0;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "promptTokenCount": prompt = in.nextInt(); break;
+                case "candidatesTokenCount": candidates = in.nextInt(); break;
+                case "totalTokenCount": total = in.nextInt(); break;
+                case "cachedContentTokenCount": cached = in.nextInt(); break;
+                case "thoughtsTokenCount": thoughts = in.nextInt(); break;
+                default: in.skipValue();
+            }
+        }
+        in.endObject();
+        return new Usage(prompt, candidates, total, cached, thoughts);
+    }
+
+    private static String nextStringOrNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+}
@@ -1,18 +1,18 @@
 package org.example.core;
 
 import com.google.gson.*;
-import java.net.http.*;
 import java.net.URI;
-import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.regex.Pattern;
 
 
 public class GenerativeClassifierRest {
     private final String modelId; 
-    private static final HttpClient HTTP = HttpClient.newBuilder()
-            .connectTimeout(Duration.ofSeconds(20)).build();
+    private static final ResilientTransport TRANSPORT = ResilientTransport.shared();
     private static final Gson GSON = new Gson();
+    // Bump when the instruction wording changes so cached responses are not reused
+    static final String PROMPT_TEMPLATE_VERSION = "classify-v1";
+    private static final LlmResponseCache CACHE = LlmResponseCache.shared();
 
     public GenerativeClassifierRest(String model) { 
         if (model == null) throw new IllegalArgumentException("model is required");
@@ -20,50 +20,62 @@ public class GenerativeClassifierRest {
     }
 
     public Result classifyWithToken(String text, String[] allowedLabels, String accessToken) throws Exception {
+        return classifyWithToken(text, allowedLabels, accessToken, null);
+    }
+
+    /** Same, recording the call's token usage in {@code ledger} (may be null) as the override stage. */
+    public Result classifyWithToken(String text, String[] allowedLabels, String accessToken, UsageLedger ledger) throws Exception {
         if (text == null) text = "";
         if (allowedLabels == null || allowedLabels.length == 0)
             throw new IllegalArgumentException("allowedLabels must not be empty");
         if (accessToken == null || accessToken.isBlank())
             throw new IllegalArgumentException("accessToken is required");
 
-        // Build instruction
-        String instruction =
-                "Classify the document into exactly ONE of these labels: " + String.join(", ", allowedLabels) + ".\n" +
-                        "Return ONLY compact JSON like {\"label\":\"<one_of_labels>\",\"reason\":\"<short why>\"}.\n" +
-                        "Do not include code fences or extra commentary.";
-
-        // v1beta request body
-        JsonObject rootReq = new JsonObject();
-        JsonArray contents = new JsonArray();
-        JsonObject userMsg = new JsonObject();
-        userMsg.addProperty("role", "user");
-        JsonArray parts = new JsonArray();
-        JsonObject part = new JsonObject();
-        part.addProperty("text", instruction + "\n\nDocument:\n" + text);
-        parts.add(part);
-        userMsg.add("parts", parts);
-        contents.add(userMsg);
-        rootReq.add("contents", contents);
+        Prompt prompt = Prompt.of(instruction(allowedLabels), "\n\nDocument:\n", text);
 
         // Endpoint
         String url = "https://generativelanguage.googleapis.com/v1beta/models/"
                 + modelId + ":generateContent";
 
-        HttpRequest req = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .header("Authorization", "Bearer " + accessToken)
-                .header("Content-Type", "application/json; charset=UTF-8")
-                .timeout(Duration.ofSeconds(45))
-                .POST(HttpRequest.BodyPublishers.ofString(GSON.toJson(rootReq), StandardCharsets.UTF_8))
-                .build();
+        String cacheKey = LlmResponseCache.key(modelId, "{}", PROMPT_TEMPLATE_VERSION, prompt);
+        String body = CACHE.get(cacheKey);
+        if (body != null) {
+            System.out.println("♻️ [Gemini classify] Cache hit (" + CACHE.stats() + ")");
+        } else {
+            long t0 = System.nanoTime();
+            GoogleApiTransport.Response resp = TRANSPORT.send("gemini.generateContent", URI.create(url), accessToken,
+                    GenerateContentJson.body(prompt, null), Duration.ofSeconds(45), true);
+            int code = resp.statusCode;
+            body = resp.body;
+
+            if (code >= 400) {
+                throw new RuntimeException("Gemini classify error: HTTP " + code + " -> " + body);
+            }
+            GenerateContentJson.Reply reply = null;
+            try { reply = body == null ? null : GenerateContentJson.read(body); } catch (Exception ignore) {}
+            if (reply != null) {
+                UsageLedger.record(ledger, UsageLedger.OVERRIDE, modelId, reply.usage, (System.nanoTime() - t0) / 1_000_000);
+            }
+            // only cache complete answers that actually carry text
+            if (reply != null && "STOP".equals(reply.finishReason) && !reply.text.isBlank()) CACHE.put(cacheKey, body);
+        }
+        return parseResult(body, allowedLabels);
+    }
 
-        HttpResponse<String> resp = HTTP.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
-        int code = resp.statusCode();
-        String body = resp.body();
+    /** Same prompt as {@link #classifyWithToken}, as a request for a batch prediction job. */
+    public BatchPredictionRunner.Item batchItem(String text, String[] allowedLabels) {
+        return new BatchPredictionRunner.Item("classify",
+                Prompt.of(instruction(allowedLabels), "\n\nDocument:\n", text == null ? "" : text), null);
+    }
 
-        if (code >= 400) {
-            throw new RuntimeException("Gemini classify error: HTTP " + code + " -> " + body);
-        }
+    private static String instruction(String[] allowedLabels) {
+        return "Classify the document into exactly ONE of these labels: " + String.join(", ", allowedLabels) + ".\n" +
+                "Return ONLY compact JSON like {\"label\":\"<one_of_labels>\",\"reason\":\"<short why>\"}.\n" +
+                "Do not include code fences or extra commentary.";
+    }
+
+    /** Label/reason from a generateContent response body (online or batch output). */
+    public static Result parseResult(String body, String[] allowedLabels) {
         if (body == null || body.isBlank()) {
             return new Result(null, null, null); // nothing returned; caller keeps SVM label
         }
@@ -75,7 +87,16 @@ public class GenerativeClassifierRest {
             // Could be safety blocked or empty – caller should keep SVM label
             return new Result(null, null, body);
         }
+        return parseText(textOut, allowedLabels, body);
+    }
+
+    /** Label/reason from the model's answer text (e.g. a batch prediction result). */
+    public static Result parseText(String textOut, String[] allowedLabels) {
+        return parseText(textOut, allowedLabels, null);
+    }
 
+    private static Result parseText(String textOut, String[] allowedLabels, String body) {
+        if (textOut == null || textOut.isBlank()) return new Result(null, null, body);
         textOut = textOut.trim();
 
         // If the model followed instructions and returned JSON, parse it
@@ -128,22 +149,11 @@ public class GenerativeClassifierRest {
         return null;
     }
 
-    /** Pulls candidates[0].content.parts[0].text if present, otherwise null. */
+    /** Candidate text via the streaming reader, or null when there is none. */
     private static String extractFirstText(String json) {
         try {
-            JsonObject root = JsonParser.parseString(json).getAsJsonObject();
-            if (!root.has("candidates")) return null;
-            JsonArray candidates = root.getAsJsonArray("candidates");
-            if (candidates.size() == 0) return null;
-            JsonObject cand0 = candidates.get(0).getAsJsonObject();
-            if (!cand0.has("content")) return null;
-            JsonObject content = cand0.getAsJsonObject("content");
-            if (!content.has("parts")) return null;
-            JsonArray parts = content.getAsJsonArray("parts");
-            if (parts.size() == 0) return null;
-            JsonObject p0 = parts.get(0).getAsJsonObject();
-            if (!p0.has("text") || p0.get("text").isJsonNull()) return null;
-            return p0.get("text").getAsString();
+            String text = GenerateContentJson.read(json).text;
+            return text.isEmpty() ? null : text;
         } catch (Exception e) {
             return null;
         }
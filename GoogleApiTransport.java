@@ -0,0 +1,459 @@
+package org.example.core;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.net.URI;
+import java.net.http.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * GoogleApiTransport — the one HttpClient every Google REST call goes through.
+ * HTTP/2 (multiplexed over a kept-alive connection per host), dispatch on virtual
+ * threads, gzip request bodies above a small threshold, gzip responses, and per-endpoint
+ * latency / byte counters so slow or heavy endpoints show up in {@link #stats()}.
+ */
+public class GoogleApiTransport {
+    private static final int GZIP_MIN_BYTES = Integer.getInteger("google.http.gzipMinBytes", 1024);
+    private static final boolean GZIP_REQUESTS = Boolean.parseBoolean(System.getProperty("google.http.gzipRequests", "true"));
+    // Google front ends only gzip responses for clients that say so in the User-Agent as well
+    private static final String USER_AGENT = "smart-document-classifier/1.0 (gzip)";
+    public static final String JSON = "application/json; charset=utf-8";
+
+    private static volatile GoogleApiTransport shared;
+
+    private final HttpClient http;
+    private final ExecutorService executor;
+    private final Map<String, EndpointStats> stats = new ConcurrentHashMap<>();
+
+    static {
+        // JDK client pool tuning; only takes effect if set before the first HttpClient is built
+        if (System.getProperty("jdk.httpclient.keepalive.timeout") == null) {
+            System.setProperty("jdk.httpclient.keepalive.timeout", "300");
+        }
+        if (System.getProperty("jdk.httpclient.connectionPoolSize") == null) {
+            System.setProperty("jdk.httpclient.connectionPoolSize", "32");
+        }
+    }
+
+    GoogleApiTransport(Duration connectTimeout) {
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+    }
+
+    public static GoogleApiTransport shared() {
+        GoogleApiTransport t = shared;
+        if (t == null) {
+            synchronized (GoogleApiTransport.class) {
+                t = shared;
+                if (t == null) {
+                    t = new GoogleApiTransport(Duration.ofSeconds(20));
+                    shared = t;
+                }
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Request body, encoded once and replayable: retries and hedged copies resend the same
+     * blocks. JSON bodies are gzip'd above a small threshold; {@link #json} writes through a
+     * JsonWriter straight into compressed fixed-size blocks, so no full-size uncompressed
+     * buffer (or its toByteArray copy) is ever held.
+     */
+    public static final class Body {
+        private static final int BLOCK = 32 * 1024;
+
+        /** Writes the JSON document; {@code raw} is the Writer under {@code json}, for pre-escaped values. */
+        @FunctionalInterface
+        public interface JsonContent {
+            void write(JsonWriter json, Writer raw) throws IOException;
+        }
+
+        final List<byte[]> blocks;
+        final long size;
+        final String contentType;
+        final boolean gzipped;
+
+        private Body(List<byte[]> blocks, long size, String contentType, boolean gzipped) {
+            this.blocks = blocks;
+            this.size = size;
+            this.contentType = contentType;
+            this.gzipped = gzipped;
+        }
+
+        public static Body of(byte[] data, String contentType) throws IOException {
+            if (GZIP_REQUESTS && JSON.equals(contentType) && data.length >= GZIP_MIN_BYTES) {
+                byte[] gz = gzip(data);
+                return new Body(List.of(gz), gz.length, contentType, true);
+            }
+            return new Body(List.of(data), data.length, contentType, false);
+        }
+
+        /** @param sizeHint rough uncompressed size in chars, used only to decide on gzip */
+        public static Body json(long sizeHint, JsonContent content) throws IOException {
+            boolean gzip = GZIP_REQUESTS && sizeHint >= GZIP_MIN_BYTES;
+            BlockOutputStream blocks = new BlockOutputStream(BLOCK);
+            OutputStream sink = gzip ? new GZIPOutputStream(blocks, 8192) : blocks;
+            try (Writer raw = new BufferedWriter(new OutputStreamWriter(sink, StandardCharsets.UTF_8), 16 * 1024)) {
+                JsonWriter json = new JsonWriter(raw);
+                content.write(json, raw);
+                json.flush();
+            }
+            return new Body(blocks.blocks(), blocks.size, JSON, gzip);
+        }
+
+        public long size() { return size; }
+
+        HttpRequest.BodyPublisher publisher() {
+            return blocks.size() == 1
+                    ? HttpRequest.BodyPublishers.ofByteArray(blocks.get(0))
+                    : HttpRequest.BodyPublishers.ofByteArrays(blocks);
+        }
+    }
+
+    /** Buffered response, already decompressed. */
+    public static final class Response {
+        public final int statusCode;
+        public final String body;
+        public final HttpHeaders headers;
+
+        Response(int statusCode, String body, HttpHeaders headers) {
+            this.statusCode = statusCode;
+            this.body = body;
+            this.headers = headers;
+        }
+    }
+
+    /**
+     * Streaming response (e.g. SSE). The body is decompressed on the fly; closing it
+     * records the exchange in the endpoint's stats.
+     */
+    public final class StreamingResponse implements Closeable {
+        public final int statusCode;
+        public final HttpHeaders headers;
+        private final BufferedReader reader;
+        private final CountingInputStream wire;
+        private final String endpoint;
+        private final long startNanos;
+        private final long sentBytes;
+        private boolean closed;
+
+        StreamingResponse(String endpoint, long startNanos, long sentBytes, HttpResponse<InputStream> resp) throws IOException {
+            this.endpoint = endpoint;
+            this.startNanos = startNanos;
+            this.sentBytes = sentBytes;
+            this.statusCode = resp.statusCode();
+            this.headers = resp.headers();
+            this.wire = new CountingInputStream(resp.body());
+            this.reader = new BufferedReader(new InputStreamReader(decoded(wire, headers), StandardCharsets.UTF_8));
+        }
+
+        public Stream<String> lines() { return reader.lines(); }
+
+        /** Whole remaining body, e.g. for an error message. */
+        public String readAll() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            char[] buf = new char[8192];
+            for (int n; (n = reader.read(buf)) > 0; ) sb.append(buf, 0, n);
+            return sb.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                reader.close();
+            } finally {
+                record(endpoint, startNanos, statusCode, sentBytes, wire.count);
+            }
+        }
+    }
+
+    public Response get(String endpoint, URI uri, String bearerToken, Duration timeout)
+            throws IOException, InterruptedException {
+        return send(endpoint, uri, bearerToken, (Body) null, timeout);
+    }
+
+    /** POST {@code jsonBody} (or GET when it is null) and buffer the decoded response. */
+    public Response send(String endpoint, URI uri, String bearerToken, byte[] jsonBody, Duration timeout)
+            throws IOException, InterruptedException {
+        return send(endpoint, uri, bearerToken, jsonBody, JSON, timeout);
+    }
+
+    /**
+     * Same with an explicit content type (e.g. a media upload). Only JSON bodies are gzip'd;
+     * other payloads go out as-is so the server stores exactly what was sent.
+     */
+    public Response send(String endpoint, URI uri, String bearerToken, byte[] body, String contentType, Duration timeout)
+            throws IOException, InterruptedException {
+        return send(endpoint, uri, bearerToken, body == null ? null : Body.of(body, contentType), timeout);
+    }
+
+    /** POST a pre-encoded body (GET when it is null) and buffer the decoded response. */
+    public Response send(String endpoint, URI uri, String bearerToken, Body body, Duration timeout)
+            throws IOException, InterruptedException {
+        long t0 = System.nanoTime();
+        long sent = 0;
+        int status = -1;
+        long received = 0;
+        try {
+            HttpRequest.Builder rb = request(uri, bearerToken, timeout);
+            sent = attachBody(rb, body);
+            HttpResponse<byte[]> resp = http.send(rb.build(), HttpResponse.BodyHandlers.ofByteArray());
+            status = resp.statusCode();
+            byte[] raw = resp.body();
+            received = raw.length;
+            byte[] plain = isGzip(resp.headers()) ? gunzip(raw) : raw;
+            return new Response(status, new String(plain, StandardCharsets.UTF_8), resp.headers());
+        } finally {
+            record(endpoint, t0, status, sent, received);
+        }
+    }
+
+    /** Like {@link #send} but hands back the body as a stream of lines; caller must close it. */
+    public StreamingResponse stream(String endpoint, URI uri, String bearerToken, byte[] jsonBody, Duration timeout,
+                                    String accept) throws IOException, InterruptedException {
+        return stream(endpoint, uri, bearerToken, jsonBody == null ? null : Body.of(jsonBody, JSON), timeout, accept);
+    }
+
+    public StreamingResponse stream(String endpoint, URI uri, String bearerToken, Body body, Duration timeout,
+                                    String accept) throws IOException, InterruptedException {
+        long t0 = System.nanoTime();
+        HttpRequest.Builder rb = request(uri, bearerToken, timeout);
+        if (accept != null) rb.header("Accept", accept);
+        long sent = attachBody(rb, body);
+        try {
+            HttpResponse<InputStream> resp = http.send(rb.build(), HttpResponse.BodyHandlers.ofInputStream());
+            return new StreamingResponse(endpoint, t0, sent, resp);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            record(endpoint, t0, -1, sent, 0);
+            throw e;
+        }
+    }
+
+    /** Snapshot of per-endpoint counters, keyed by endpoint name. */
+    public Map<String, EndpointStats.Snapshot> stats() {
+        Map<String, EndpointStats.Snapshot> out = new TreeMap<>();
+        stats.forEach((k, v) -> out.put(k, v.snapshot()));
+        return out;
+    }
+
+    /** Recent latency percentile for one endpoint, or -1 when there is no history yet. */
+    public long latencyPercentileMs(String endpoint, double p) {
+        return latencyPercentileMs(endpoint, p, 1);
+    }
+
+    /** As above, but -1 until at least {@code minSamples} successful calls have been seen. */
+    public long latencyPercentileMs(String endpoint, double p, int minSamples) {
+        EndpointStats s = stats.get(endpoint);
+        return s == null || s.sampleCount() < minSamples ? -1 : s.percentileMs(p);
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // ===== helpers =====
+
+    private HttpRequest.Builder request(URI uri, String bearerToken, Duration timeout) {
+        HttpRequest.Builder rb = HttpRequest.newBuilder()
+                .uri(uri)
+                .timeout(timeout)
+                .header("User-Agent", USER_AGENT)
+                .header("Accept-Encoding", "gzip");
+        if (bearerToken != null) rb.header("Authorization", "Bearer " + bearerToken);
+        return rb;
+    }
+
+    /** Set the method and body; returns the number of bytes that go on the wire. */
+    private static long attachBody(HttpRequest.Builder rb, Body body) {
+        if (body == null) {
+            rb.GET();
+            return 0;
+        }
+        rb.header("Content-Type", body.contentType);
+        if (body.gzipped) rb.header("Content-Encoding", "gzip");
+        rb.POST(body.publisher());
+        return body.size;
+    }
+
+    private void record(String endpoint, long startNanos, int status, long sentBytes, long receivedBytes) {
+        long ms = (System.nanoTime() - startNanos) / 1_000_000;
+        stats.computeIfAbsent(endpoint, k -> new EndpointStats()).record(ms, status, sentBytes, receivedBytes);
+    }
+
+    private static boolean isGzip(HttpHeaders headers) {
+        return headers.firstValue("Content-Encoding").map(v -> v.toLowerCase().contains("gzip")).orElse(false);
+    }
+
+    private static InputStream decoded(InputStream in, HttpHeaders headers) throws IOException {
+        return isGzip(headers) ? new GZIPInputStream(in, 8192) : in;
+    }
+
+    static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        try (GZIPOutputStream gz = new GZIPOutputStream(bos, 8192)) {
+            gz.write(data);
+        }
+        return bos.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] data) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data), 8192)) {
+            return in.readAllBytes();
+        }
+    }
+
+    /** Collects written bytes in fixed-size blocks instead of one growing array. */
+    private static final class BlockOutputStream extends OutputStream {
+        private final int blockSize;
+        private final List<byte[]> full = new ArrayList<>();
+        private byte[] current;
+        private int pos;
+        long size;
+
+        BlockOutputStream(int blockSize) {
+            this.blockSize = blockSize;
+            this.current = new byte[blockSize];
+        }
+
+        @Override
+        public void write(int b) {
+            if (pos == blockSize) nextBlock();
+            current[pos++] = (byte) b;
+            size++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            while (len > 0) {
+                if (pos == blockSize) nextBlock();
+                int n = Math.min(len, blockSize - pos);
+                System.arraycopy(b, off, current, pos, n);
+                pos += n;
+                off += n;
+                len -= n;
+                size += n;
+            }
+        }
+
+        private void nextBlock() {
+            full.add(current);
+            current = new byte[blockSize];
+            pos = 0;
+        }
+
+        List<byte[]> blocks() {
+            List<byte[]> out = new ArrayList<>(full);
+            if (pos > 0) out.add(pos == blockSize ? current : Arrays.copyOf(current, pos));
+            return out;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) { super(in); }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+
+    /** Counters for one endpoint plus a ring of recent successful-call latencies for percentiles. */
+    public static final class EndpointStats {
+        private static final int WINDOW = 256;
+
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong totalMs = new AtomicLong();
+        private final AtomicLong maxMs = new AtomicLong();
+        private final AtomicLong bytesSent = new AtomicLong();
+        private final AtomicLong bytesReceived = new AtomicLong();
+        private final long[] recent = new long[WINDOW];
+        private int recentCount;
+        private int recentPos;
+
+        void record(long ms, int status, long sent, long received) {
+            calls.incrementAndGet();
+            totalMs.addAndGet(ms);
+            maxMs.accumulateAndGet(ms, Math::max);
+            bytesSent.addAndGet(sent);
+            bytesReceived.addAndGet(received);
+            if (status < 200 || status >= 400) {
+                errors.incrementAndGet();
+                return;
+            }
+            synchronized (recent) {
+                recent[recentPos] = ms;
+                recentPos = (recentPos + 1) % WINDOW;
+                if (recentCount < WINDOW) recentCount++;
+            }
+        }
+
+        int sampleCount() {
+            synchronized (recent) {
+                return recentCount;
+            }
+        }
+
+        long percentileMs(double p) {
+            long[] copy;
+            synchronized (recent) {
+                if (recentCount == 0) return -1;
+                copy = Arrays.copyOf(recent, recentCount);
+            }
+            Arrays.sort(copy);
+            int idx = (int) Math.ceil(p * copy.length) - 1;
+            return copy[Math.max(0, Math.min(copy.length - 1, idx))];
+        }
+
+        Snapshot snapshot() {
+            return new Snapshot(calls.get(), errors.get(), totalMs.get(), maxMs.get(),
+                    percentileMs(0.50), percentileMs(0.95), bytesSent.get(), bytesReceived.get());
+        }
+
+        public static final class Snapshot {
+            public final long calls, errors, totalMs, maxMs, p50Ms, p95Ms, bytesSent, bytesReceived;
+
+            Snapshot(long calls, long errors, long totalMs, long maxMs, long p50Ms, long p95Ms, long bytesSent, long bytesReceived) {
+                this.calls = calls; this.errors = errors; this.totalMs = totalMs; this.maxMs = maxMs;
+                this.p50Ms = p50Ms; this.p95Ms = p95Ms; this.bytesSent = bytesSent; this.bytesReceived = bytesReceived;
+            }
+
+            public long avgMs() { return calls == 0 ? 0 : totalMs / calls; }
+
+            @Override
+            public String toString() {
+                return String.format("calls=%d errors=%d avg=%dms p50=%dms p95=%dms max=%dms sent=%dB received=%dB",
+                        calls, errors, avgMs(), p50Ms, p95Ms, maxMs, bytesSent, bytesReceived);
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.example.core;
+
+/**
+ * Lane — priority class of a unit of work, highest first. Threads started by
+ * {@link ExecutionService} carry their lane; shared resources ({@link ExecutionService.Gate},
+ * the CPU pool) admit waiting work lane by lane.
+ */
+public enum Lane {
+    /** a user is waiting on it: a dropped file, an opened document, sign-in */
+    INTERACTIVE,
+    /** batches the user started */
+    BATCH,
+    /** re-processing nobody is waiting on: resumed jobs, deferred enrichment */
+    BACKGROUND;
+
+    private static final ThreadLocal<Lane> CURRENT = new ThreadLocal<>();
+
+    /** The calling thread's lane; threads the service didn't start (EDT, main) count as interactive. */
+    public static Lane current() {
+        Lane lane = CURRENT.get();
+        return lane == null ? INTERACTIVE : lane;
+    }
+
+    static void set(Lane lane) {
+        CURRENT.set(lane);
+    }
+}
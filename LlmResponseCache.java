@@ -0,0 +1,224 @@
+package org.example.core;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * LlmResponseCache — content-addressed cache for model responses.
+ * data/cache/llm/<sha256>.gz
+ * The key hashes model id, generation config, prompt template version and prompt text,
+ * so any change to one of them is a miss. Entries are gzip'd on disk and evicted LRU
+ * once the store exceeds its byte cap.
+ */
+public class LlmResponseCache {
+    private static final long DEFAULT_MAX_BYTES = Long.getLong("llm.cache.maxBytes", 256L * 1024 * 1024);
+    private static volatile LlmResponseCache shared;
+
+    private final Path dir;
+    private final long maxBytes;
+    private volatile boolean bypass;
+
+    // access-ordered: eldest entry is the least recently used
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong puts = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public LlmResponseCache(Path dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.bypass = Boolean.getBoolean("llm.cache.bypass");
+        Files.createDirectories(dir);
+        loadIndex();
+    }
+
+    /** Process-wide cache under <user.dir>/data/cache/llm. Falls back to a disabled cache on I/O errors. */
+    public static LlmResponseCache shared() {
+        LlmResponseCache c = shared;
+        if (c == null) {
+            synchronized (LlmResponseCache.class) {
+                c = shared;
+                if (c == null) {
+                    Path d = Paths.get(System.getProperty("user.dir"), "data", "cache", "llm");
+                    try {
+                        c = new LlmResponseCache(d, DEFAULT_MAX_BYTES);
+                    } catch (IOException e) {
+                        System.err.println("⚠️ LLM cache unavailable (" + e.getMessage() + "), running uncached");
+                        c = disabled();
+                    }
+                    shared = c;
+                }
+            }
+        }
+        return c;
+    }
+
+    private static LlmResponseCache disabled() {
+        try {
+            LlmResponseCache c = new LlmResponseCache(Files.createTempDirectory("llm-cache"), 0);
+            c.setBypass(true);
+            return c;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Cache key: sha256 over the fields that determine the model's answer. */
+    public static String key(String modelId, String generationConfig, String templateVersion, CharSequence prompt) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (CharSequence part : new CharSequence[]{modelId, generationConfig, templateVersion}) {
+                md.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+            }
+            // hash the prompt in bounded slices so large chunk views are never copied whole
+            int n = prompt.length();
+            for (int i = 0; i < n; ) {
+                int j = Math.min(n, i + 8192);
+                if (j < n && Character.isHighSurrogate(prompt.charAt(j - 1))) j--;
+                md.update(prompt.subSequence(i, j).toString().getBytes(StandardCharsets.UTF_8));
+                i = j;
+            }
+            byte[] digest = md.digest();
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) sb.append(String.format("%02x", b & 0xff));
+            return sb.toString();
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+
+    public boolean isBypass() { return bypass; }
+    public void setBypass(boolean bypass) { this.bypass = bypass; }
+
+    /** Cached response, or null on miss / bypass. */
+    public String get(String key) {
+        if (bypass) return null;
+        synchronized (this) {
+            if (!index.containsKey(key)) {  // containsKey doesn't touch access order
+                misses.incrementAndGet();
+                return null;
+            }
+            index.get(key);                 // mark as recently used
+        }
+        Path p = entryPath(key);
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(p))) {
+            String value = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            try { Files.setLastModifiedTime(p, FileTime.fromMillis(System.currentTimeMillis())); } catch (IOException ignored) {}
+            hits.incrementAndGet();
+            return value;
+        } catch (IOException e) {
+            // entry vanished or is corrupt; forget it
+            synchronized (this) {
+                Long size = index.remove(key);
+                if (size != null) totalBytes -= size;
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    public void put(String key, String value) {
+        if (bypass || value == null || maxBytes <= 0) return;
+        Path target = entryPath(key);
+        Path tmp = dir.resolve(key + ".tmp-" + Long.toHexString(ThreadLocalRandom.current().nextLong()));
+        try {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+                out.write(value.getBytes(StandardCharsets.UTF_8));
+            }
+            long size = Files.size(tmp);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (this) {
+                Long old = index.put(key, size);
+                totalBytes += size - (old == null ? 0 : old);
+                evictIfNeeded();
+            }
+            puts.incrementAndGet();
+        } catch (IOException e) {
+            System.err.println("⚠️ LLM cache write failed: " + e.getMessage());
+            try { Files.deleteIfExists(tmp); } catch (IOException ignored) {}
+        }
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits.get(), misses.get(), puts.get(), evictions.get(), index.size(), totalBytes, maxBytes);
+    }
+
+    /** Snapshot of cache counters. */
+    public static class Stats {
+        public final long hits, misses, puts, evictions;
+        public final int entries;
+        public final long bytes, maxBytes;
+
+        Stats(long hits, long misses, long puts, long evictions, int entries, long bytes, long maxBytes) {
+            this.hits = hits; this.misses = misses; this.puts = puts; this.evictions = evictions;
+            this.entries = entries; this.bytes = bytes; this.maxBytes = maxBytes;
+        }
+
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d misses=%d hitRate=%.1f%% entries=%d size=%d/%d bytes evictions=%d",
+                    hits, misses, hitRate() * 100, entries, bytes, maxBytes, evictions);
+        }
+    }
+
+    // ===== helpers =====
+
+    private Path entryPath(String key) {
+        return dir.resolve(key + ".gz");
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            try { Files.deleteIfExists(entryPath(eldest.getKey())); } catch (IOException ignored) {}
+            totalBytes -= eldest.getValue();
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /** Rebuild LRU order from file modification times (oldest first). */
+    private void loadIndex() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> s = Files.list(dir)) {
+            s.forEach(p -> {
+                String n = p.getFileName().toString();
+                if (n.endsWith(".gz")) files.add(p);
+                else if (n.contains(".tmp-")) {
+                    try { Files.deleteIfExists(p); } catch (IOException ignored) {}
+                }
+            });
+        }
+        files.sort(Comparator.comparing(p -> {
+            try { return Files.getLastModifiedTime(p).toMillis(); } catch (IOException e) { return 0L; }
+        }));
+        synchronized (this) {
+            for (Path p : files) {
+                String n = p.getFileName().toString();
+                long size = Files.size(p);
+                index.put(n.substring(0, n.length() - 3), size);
+                totalBytes += size;
+            }
+            evictIfNeeded();
+        }
+    }
+}
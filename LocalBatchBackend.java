@@ -0,0 +1,138 @@
+package org.example.core;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * LocalBatchBackend — in-process stand-in for Vertex batch prediction. Jobs run on a
+ * background thread, read the same JSONL input, and write output lines in the same
+ * {request, response, status} shape, so the batch runner is exercised end to end without
+ * GCS or quota. The default responder answers summaries with a local TextRank summary and
+ * classifications with a fixed label.
+ */
+public class LocalBatchBackend implements BatchPredictionBackend {
+
+    private final Path workDir;
+    private final Function<JsonObject, String> responder;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    public LocalBatchBackend(Path workDir) {
+        this(workDir, LocalBatchBackend::defaultResponse);
+    }
+
+    /** @param responder maps a generateContent request (with its labels) to the model's text answer */
+    public LocalBatchBackend(Path workDir, Function<JsonObject, String> responder) {
+        this.workDir = workDir;
+        this.responder = responder;
+    }
+
+    private static final class Job {
+        volatile JobState state = JobState.PENDING;
+        volatile String message;
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        Path output;
+    }
+
+    @Override
+    public String submit(Path inputJsonl, String displayName, String modelId) throws Exception {
+        String jobId = "local-" + displayName + "-" + UUID.randomUUID().toString().substring(0, 8);
+        Path dir = workDir.resolve(jobId);
+        Files.createDirectories(dir);
+        Job job = new Job();
+        job.output = dir.resolve("predictions.jsonl");
+        jobs.put(jobId, job);
+
+        ExecutionService.shared().background("local-batch-" + jobId, () -> run(inputJsonl, job));
+        return jobId;
+    }
+
+    @Override
+    public JobStatus poll(String jobId) {
+        Job job = jobs.get(jobId);
+        if (job == null) return new JobStatus(jobId, JobState.FAILED, "unknown job", -1, 0);
+        return new JobStatus(jobId, job.state, job.message, job.completed.get(), job.failed.get());
+    }
+
+    @Override
+    public void readResults(String jobId, Consumer<String> sink) throws Exception {
+        Job job = jobs.get(jobId);
+        if (job == null || job.state != JobState.SUCCEEDED) throw new IllegalStateException("job not finished: " + jobId);
+        try (BufferedReader r = Files.newBufferedReader(job.output, StandardCharsets.UTF_8)) {
+            r.lines().filter(l -> !l.isBlank()).forEach(sink);
+        }
+    }
+
+    @Override
+    public long pollIntervalMillis() { return 200; }
+
+    private void run(Path input, Job job) {
+        job.state = JobState.RUNNING;
+        try (BufferedReader in = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             BufferedWriter out = Files.newBufferedWriter(job.output, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) continue;
+                JsonObject request = JsonParser.parseString(line).getAsJsonObject().getAsJsonObject("request");
+                JsonObject result = new JsonObject();
+                result.add("request", request);
+                try {
+                    result.add("response", responseFor(responder.apply(request)));
+                    result.addProperty("status", "");
+                    job.completed.incrementAndGet();
+                } catch (Exception e) {
+                    result.addProperty("status", String.valueOf(e.getMessage()));
+                    job.failed.incrementAndGet();
+                }
+                out.write(result.toString());
+                out.newLine();
+            }
+            job.state = JobState.SUCCEEDED;
+        } catch (Exception e) {
+            job.message = e.getMessage();
+            job.state = JobState.FAILED;
+        }
+    }
+
+    private static JsonObject responseFor(String text) {
+        JsonObject part = new JsonObject();
+        part.addProperty("text", text);
+        JsonArray parts = new JsonArray();
+        parts.add(part);
+        JsonObject content = new JsonObject();
+        content.addProperty("role", "model");
+        content.add("parts", parts);
+        JsonObject cand = new JsonObject();
+        cand.add("content", content);
+        cand.addProperty("finishReason", "STOP");
+        JsonArray cands = new JsonArray();
+        cands.add(cand);
+        JsonObject response = new JsonObject();
+        response.add("candidates", cands);
+        return response;
+    }
+
+    private static String defaultResponse(JsonObject request) {
+        String task = request.has("labels") && request.getAsJsonObject("labels").has("task")
+                ? request.getAsJsonObject("labels").get("task").getAsString() : "";
+        if ("classify".equals(task)) {
+            return "{\"label\":\"Other\",\"reason\":\"local batch stand-in\"}";
+        }
+        String prompt = request.getAsJsonArray("contents").get(0).getAsJsonObject()
+                .getAsJsonArray("parts").get(0).getAsJsonObject().get("text").getAsString();
+        return new TextRankSummarizer().summarize(prompt, 8);
+    }
+}
@@ -1,6 +1,7 @@
 package org.example.ui;
 
 import org.example.auth.TokenManager;
+import org.example.core.BatchPlanner;
 import org.example.storage.StorageManager;
 import org.example.storage.CreditService;
 import org.example.ui.components.FileTableModel;
@@ -101,6 +102,8 @@ public class MainWindowUI extends JFrame {
 
     // --- State ---
     private Path currentSelectedPath = null;
+    // bumped whenever the dashboard's summary pane gets a new document; stale streams stop appending
+    private final java.util.concurrent.atomic.AtomicInteger summaryViewSeq = new java.util.concurrent.atomic.AtomicInteger();
 
     public MainWindowUI(UIController controller, TokenManager tokenManager) {
         this.controller = controller;
@@ -113,6 +116,14 @@ public class MainWindowUI extends JFrame {
 
         setTitle("Smart Document Processor");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        // runs before EXIT_ON_CLOSE exits: let in-flight pipelines finish or be interrupted cleanly
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                creditUpdateTimer.stop();
+                controller.shutdown();
+            }
+        });
         setSize(1200, 800);
         setLocationRelativeTo(null);
 
@@ -1107,8 +1118,14 @@ public class MainWindowUI extends JFrame {
 
         runBtn.setEnabled(false);
         setStatus("Running pipeline…");
-        controller.runPipeline(currentSelectedPath.toFile(), result -> {
+        metadataArea.setText("Summary:\n");
+        ThrottledTextAppender summaryStream = new ThrottledTextAppender(metadataArea, 100);
+        int seq = summaryViewSeq.incrementAndGet();
+        controller.runPipeline(currentSelectedPath.toFile(), delta -> {
+            if (seq == summaryViewSeq.get()) summaryStream.append(delta);
+        }, result -> {
             SwingUtilities.invokeLater(() -> {
+                summaryStream.stop();
                 String sum = String.valueOf(result.getOrDefault("summary", "")).trim();
                 if (sum.isEmpty()) sum = "[No summary returned]";
                 extractedArea.setText(result.getOrDefault("extracted", "").toString());
@@ -1120,15 +1137,23 @@ public class MainWindowUI extends JFrame {
                 String creditInfo = String.format("\n\n--- Credit Information ---\nUsed: %d credits\nRemaining: %d credits",
                         creditsUsed, remainingCredits);
 
-                metadataArea.setText("Summary:\n" + sum + creditInfo);
+                if (seq == summaryViewSeq.get()) metadataArea.setText(summaryHeader(result) + sum + creditInfo);
+                rememberEnrichment(currentSelectedPath, result);
                 docNameLabel.setText("Document: " + currentSelectedPath.getFileName());
                 docTypeLabel.setText("Type: " + result.getOrDefault("prediction", "Unknown"));
                 runBtn.setEnabled(true);
                 updateCreditDisplay(); // Refresh credit display
-                setStatus("Done. Used " + creditsUsed + " credits.");
+                long ttft = ((Number) result.getOrDefault("summary_ttft_ms", -1L)).longValue();
+                long total = ((Number) result.getOrDefault("summary_latency_ms", 0L)).longValue();
+                int boilerplate = ((Number) result.getOrDefault("boilerplate_chars_removed", 0)).intValue();
+                setStatus("Done. Used " + creditsUsed + " credits. Summary: "
+                        + ("pending".equals(result.get("summary_status")) ? "pending (Vertex unavailable, retried after saving)."
+                           : (ttft >= 0 ? ttft + " ms to first token, " : "") + total + " ms total.")
+                        + (boilerplate > 0 ? " Boilerplate removed: " + boilerplate + " chars." : ""));
             });
         }, ex -> {
             SwingUtilities.invokeLater(() -> {
+                summaryStream.stop();
                 JOptionPane.showMessageDialog(this, "Pipeline error: " + ex.getMessage());
                 runBtn.setEnabled(true);
                 setStatus("Failed.");
@@ -1146,6 +1171,8 @@ public class MainWindowUI extends JFrame {
         pipelineResult.put("summary", metadataArea.getText());
         pipelineResult.put("prediction", docTypeLabel.getText().replace("Type: ", ""));
         pipelineResult.put("confidence", 1.0);
+        // a summary that is still pending gets queued for enrichment on save
+        if (currentSelectedPath.equals(pendingEnrichmentPath)) pipelineResult.putAll(pendingEnrichment);
 
         try {
             controller.saveResults(currentSelectedPath.toFile(), pipelineResult);
@@ -1189,8 +1216,22 @@ public class MainWindowUI extends JFrame {
             return;
         }
 
+        // pre-flight: pages, OCR, tokens, credits and time, with the batch reordered shortest first
+        setStatus("Planning batch of " + docs.size() + " documents…");
+        controller.planBatch(docs,
+                plan -> SwingUtilities.invokeLater(() -> confirmBatch(plan.files(), plan)),
+                error -> SwingUtilities.invokeLater(() -> {
+                    System.err.println("⚠️ Batch planning failed: " + error.getMessage());
+                    confirmBatch(docs, null);
+                }));
+    }
+
+    /** Confirm and start a batch; {@code plan} is null when the pre-flight pass failed. */
+    private void confirmBatch(java.util.List<File> docs, BatchPlanner.Plan plan) {
+        setStatus("Ready.");
+
         // Estimate credits needed
-        int estimatedCredits = docs.size() * 10; // Rough estimate
+        int estimatedCredits = plan != null ? plan.credits : docs.size() * 10; // Rough estimate without a plan
         CreditService.UserCreditInfo info = controller.getUserCreditInfo();
         if (info != null && info.getCreditsBalance() < estimatedCredits) {
             int result = JOptionPane.showConfirmDialog(this,
@@ -1202,27 +1243,44 @@ public class MainWindowUI extends JFrame {
             if (result != JOptionPane.YES_OPTION) return;
         }
 
-        if (JOptionPane.showConfirmDialog(this, "Process " + docs.size() + " documents?",
-                "Confirm Batch", JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION) return;
+        // "Summaries on demand" classifies now and only summarizes documents when opened or when the queue gets to them
+        boolean batchJob = controller.isBatchPredictionAvailable();
+        Object[] options = batchJob
+                ? new Object[]{"Process now", "Summaries on demand", "Overnight batch job", "Cancel"}
+                : new Object[]{"Process now", "Summaries on demand", "Cancel"};
+        int choice = JOptionPane.showOptionDialog(this,
+                "Process " + docs.size() + " documents?\n\n" +
+                        (plan != null ? plan.describe() + "\n(shortest documents first)\n\n" : "") +
+                        "Summaries on demand is faster and charges for a summary only when one is produced." +
+                        (batchJob ? "\nAn overnight batch job is cheaper but results arrive within 24 hours." : ""),
+                "Confirm Batch", JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE,
+                null, options, options[0]);
+        if (choice < 0 || choice == options.length - 1) return;
+        boolean lazy = choice == 1;
+        boolean overnight = batchJob && choice == 2;
+
+        java.util.function.Consumer<String> onProgress = msg -> SwingUtilities.invokeLater(() -> setStatus(msg));
+        java.util.function.Consumer<java.util.Map<File, Exception>> onDone = failures -> SwingUtilities.invokeLater(() -> {
+            if (failures.isEmpty()) {
+                JOptionPane.showMessageDialog(this, "Batch completed successfully.");
+                updateCreditDisplay(); // Refresh credit display
+            } else {
+                StringBuilder sb = new StringBuilder("Batch finished with failures:\n");
+                failures.forEach((f, ex) -> sb.append(f.getName()).append(": ")
+                        .append(ex.getMessage()).append("\n"));
+                JOptionPane.showMessageDialog(this, sb.toString(), "Batch Report", JOptionPane.WARNING_MESSAGE);
+            }
+            refreshFileTable();
+            refreshStorageTables();
+            setStatus("Ready.");
+        });
 
-        controller.runBatch(
-                docs,
-                msg -> SwingUtilities.invokeLater(() -> setStatus(msg)),
-                failures -> SwingUtilities.invokeLater(() -> {
-                    if (failures.isEmpty()) {
-                        JOptionPane.showMessageDialog(this, "Batch completed successfully.");
-                        updateCreditDisplay(); // Refresh credit display
-                    } else {
-                        StringBuilder sb = new StringBuilder("Batch finished with failures:\n");
-                        failures.forEach((f, ex) -> sb.append(f.getName()).append(": ")
-                                .append(ex.getMessage()).append("\n"));
-                        JOptionPane.showMessageDialog(this, sb.toString(), "Batch Report", JOptionPane.WARNING_MESSAGE);
-                    }
-                    refreshFileTable();
-                    refreshStorageTables();
-                    setStatus("Ready.");
-                })
-        );
+        if (overnight) {
+            controller.runBatchOvernight(docs, onProgress, onDone);
+        } else {
+            controller.runBatch(docs, lazy ? UIController.BatchProfile.LAZY_SUMMARY : UIController.BatchProfile.FULL,
+                    onProgress, onDone);
+        }
     }
 
     private JPanel createDatabasePanel() {
@@ -1722,6 +1780,7 @@ public class MainWindowUI extends JFrame {
                 }
 
                 runBtn.setEnabled(false);
+                int seq = summaryViewSeq.incrementAndGet();
                 controller.runPipeline(p.toFile(), result -> {
                     SwingUtilities.invokeLater(() -> {
                         extractedArea.setText(String.valueOf(result.getOrDefault("extracted","")));
@@ -1734,7 +1793,8 @@ public class MainWindowUI extends JFrame {
                         String creditInfo = String.format("\n\n--- Credit Information ---\nUsed: %d credits\nRemaining: %d credits",
                                 creditsUsed, remainingCredits);
 
-                        metadataArea.setText("Summary:\n" + sum + creditInfo);
+                        if (seq == summaryViewSeq.get()) metadataArea.setText(summaryHeader(result) + sum + creditInfo);
+                        rememberEnrichment(p, result);
                         docNameLabel.setText("Document: " + p.getFileName());
                         docTypeLabel.setText("Type: " + result.getOrDefault("prediction","Unknown"));
                         runBtn.setEnabled(true);
@@ -1850,6 +1910,45 @@ public class MainWindowUI extends JFrame {
     private void populateSummariesTable(java.util.List<Path> paths) {
         summariesBacking = new java.util.ArrayList<>(paths);
         populateGenericTable(tSummaries, paths);
+        // deferred summaries hold an extractive stand-in until the enrichment queue replaces them
+        java.util.Set<Path> pending = controller.getPendingSummaryPaths();
+        var model = (javax.swing.table.DefaultTableModel) tSummaries.getModel();
+        for (int i = 0; i < paths.size(); i++) {
+            if (pending.contains(paths.get(i))) model.setValueAt(model.getValueAt(i, 0) + " (summary pending)", i, 0);
+        }
+    }
+
+    private static String summaryHeader(java.util.Map<String, Object> result) {
+        return "pending".equals(result.get("summary_status"))
+                ? "Summary (pending: Vertex AI was unavailable, this is an extractive stand-in; "
+                  + "the full summary is filled in automatically once the document is saved):\n"
+                : "Summary:\n";
+    }
+
+    /** Keeps the enrichment flags of the last run so Save can queue the document. */
+    private void rememberEnrichment(Path path, java.util.Map<String, Object> result) {
+        pendingEnrichment.clear();
+        pendingEnrichmentPath = null;
+        if (!"pending".equals(result.get("summary_status"))) return;
+        pendingEnrichmentPath = path;
+        for (String k : new String[]{"summary_status", "summary_pending", "override_pending", "enrichment_reason"}) {
+            if (result.containsKey(k)) pendingEnrichment.put(k, result.get(k));
+        }
+    }
+
+    /** Called by the controller when a deferred summary or label has been filled in. */
+    public void onEnrichmentCompleted(String filename) {
+        refreshStorageTables();
+        refreshFileTable();
+        setStatus("Deferred summary ready: " + filename + ".");
+    }
+
+    /** A batch left unfinished by the previous run was completed in the background (EDT). */
+    public void onJobsResumed(int total, int failed) {
+        refreshStorageTables();
+        refreshFileTable();
+        updateCreditDisplay();
+        setStatus("Resumed " + total + " unfinished batch document(s)" + (failed > 0 ? ", " + failed + " failed." : "."));
     }
 
     private void populateGenericTable(JTable table, java.util.List<Path> paths) {
@@ -2023,6 +2122,53 @@ public class MainWindowUI extends JFrame {
             e.printStackTrace();
             JOptionPane.showMessageDialog(this, "Open failed: " + e.getMessage());
         }
+        summarizeIfPending(p);
+    }
+
+    /**
+     * A document whose summary is still queued (lazy batch profile, or deferred after a Vertex
+     * outage) gets it generated as soon as it is opened, streamed into the dashboard.
+     */
+    private void summarizeIfPending(Path p) {
+        controller.findPendingSummary(p, row -> {
+            String extracted = "";
+            Object extractedPath = row.get("extracted_path");
+            if (extractedPath != null) {
+                try { extracted = java.nio.file.Files.readString(Path.of(extractedPath.toString())); }
+                catch (Exception ignored) {}
+            }
+            String extractedText = extracted;
+            SwingUtilities.invokeLater(() -> showPendingSummary(row, extractedText));
+        });
+    }
+
+    private void showPendingSummary(java.util.Map<String, Object> row, String extracted) {
+        Path stored = Path.of(String.valueOf(row.get("stored_input_path")));
+        String name = String.valueOf(row.get("filename"));
+
+        currentSelectedPath = stored;
+        docNameLabel.setText("Document: " + name);
+        docTypeLabel.setText("Type: " + row.get("predicted_label"));
+        extractedArea.setText(extracted);
+        metadataArea.setText("Summary:\n");
+        showPage(PAGE_DASH);
+        setStatus("Generating summary for " + name + "…");
+
+        ThrottledTextAppender summaryStream = new ThrottledTextAppender(metadataArea, 100);
+        int seq = summaryViewSeq.incrementAndGet();
+        controller.summarizeNow(stored.toFile(),
+                delta -> { if (seq == summaryViewSeq.get()) summaryStream.append(delta); },
+                text -> SwingUtilities.invokeLater(() -> {
+                    summaryStream.stop();
+                    if (seq == summaryViewSeq.get()) metadataArea.setText("Summary:\n" + text);
+                    setStatus("Summary ready: " + name + ".");
+                    refreshStorageTables();
+                    updateCreditDisplay();
+                }),
+                ex -> SwingUtilities.invokeLater(() -> {
+                    summaryStream.stop();
+                    setStatus("Summary for " + name + " is still pending: " + ex.getMessage());
+                }));
     }
 
     private void doEditMetadata() {
@@ -2113,6 +2259,7 @@ public class MainWindowUI extends JFrame {
         updateCreditDisplay();
 
         extractedArea.setText("");
+        summaryViewSeq.incrementAndGet();
         metadataArea.setText("");
         docNameLabel.setText("Document: -");
         docTypeLabel.setText("Type: -");
@@ -2244,6 +2391,10 @@ public class MainWindowUI extends JFrame {
         });
     }
 
+    // enrichment flags of the last pipeline run, applied when that document is saved
+    private Path pendingEnrichmentPath;
+    private final java.util.Map<String, Object> pendingEnrichment = new java.util.HashMap<>();
+
     private File lastChooserDir = new File(System.getProperty("user.home"), "Documents");
 
     private static class CardPanel extends JPanel {
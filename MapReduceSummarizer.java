@@ -0,0 +1,248 @@
+package org.example.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MapReduceSummarizer — summarizes chunks concurrently behind a shared rate limiter,
+ * then merges the partial summaries. Chunks may be zero-copy views over the document.
+ * When the partials are too large for one merge prompt they are merged hierarchically
+ * (tree reduce) until they fit. Chunk calls run on {@link ExecutionService} threads in the
+ * caller's {@link Lane}, so a dropped file's chunks go ahead of a batch's.
+ */
+public class MapReduceSummarizer {
+
+    /** Single model call; implemented by the REST bridge. {@code stage} is "map", "merge-L<n>" or "final". */
+    @FunctionalInterface
+    public interface Generator {
+        String generate(String stage, CharSequence prompt, int maxOutputTokens) throws Exception;
+    }
+
+    /** Timing and size of one model call. Token counts are estimates (~4 chars/token). */
+    public static class CallStat {
+        public final String stage;       // "map", "merge-L<n>", "final"
+        public final int index;
+        public final long latencyMs;
+        public final int promptChars;
+        public final int outputChars;
+        public final int estPromptTokens;
+        public final int estOutputTokens;
+
+        public CallStat(String stage, int index, long latencyMs, int promptChars, int outputChars) {
+            this.stage = stage;
+            this.index = index;
+            this.latencyMs = latencyMs;
+            this.promptChars = promptChars;
+            this.outputChars = outputChars;
+            this.estPromptTokens = estimateTokens(promptChars);
+            this.estOutputTokens = estimateTokens(outputChars);
+        }
+
+        @Override
+        public String toString() {
+            return stage + "#" + index + " " + latencyMs + "ms, ~" + estPromptTokens + " in / ~" + estOutputTokens + " out tokens";
+        }
+    }
+
+    public static class Result {
+        public final String text;
+        public final List<CallStat> calls;
+        public final long wallMs;
+        public final long firstTokenMs;   // time to first streamed token, -1 when not streamed
+
+        public Result(String text, List<CallStat> calls, long wallMs) {
+            this(text, calls, wallMs, -1);
+        }
+
+        public Result(String text, List<CallStat> calls, long wallMs, long firstTokenMs) {
+            this.text = text;
+            this.calls = Collections.unmodifiableList(calls);
+            this.wallMs = wallMs;
+            this.firstTokenMs = firstTokenMs;
+        }
+    }
+
+    private static final int DEFAULT_PARALLELISM = Integer.getInteger("summarize.parallelism", 4);
+
+    // Shared across bridges: the quota belongs to the project, not to a single document
+    private static final TokenBucketLimiter VERTEX_LIMITER = TokenBucketLimiter.perMinute(
+            Integer.getInteger("vertex.requestsPerMinute", 60),
+            Integer.getInteger("vertex.burst", 4));
+
+    // chunk and merge calls in flight across all documents, admitted lane by lane
+    private static final ExecutionService.Gate MAP_SLOTS = ExecutionService.shared().gate("summarize-map", DEFAULT_PARALLELISM);
+    private static final AtomicInteger CALL_SEQ = new AtomicInteger();
+
+    private final Generator generator;
+    private final TokenBucketLimiter limiter;
+    private final ExecutionService.Gate slots;
+
+    public MapReduceSummarizer(Generator generator) {
+        this(generator, VERTEX_LIMITER, MAP_SLOTS);
+    }
+
+    public MapReduceSummarizer(Generator generator, TokenBucketLimiter limiter, ExecutionService.Gate slots) {
+        this.generator = generator;
+        this.limiter = limiter;
+        this.slots = slots;
+    }
+
+    /**
+     * @param chunks          document chunks, in order
+     * @param chunkPrompt     maps (index, total, chunk) to the per-chunk prompt
+     * @param chunkMaxTokens  output budget per chunk summary
+     * @param mergeMaxTokens  output budget of the final merge
+     * @param mergeBudgetChars max characters of partial summaries fed into one merge call
+     */
+    public Result summarize(List<? extends CharSequence> chunks, ChunkPrompt chunkPrompt,
+                            int chunkMaxTokens, int mergeMaxTokens, int mergeBudgetChars) throws Exception {
+        return summarize(chunks, chunkPrompt, chunkMaxTokens, mergeMaxTokens, mergeBudgetChars, generator);
+    }
+
+    /**
+     * Same as above, but the final merge goes through {@code finalGenerator}
+     * (e.g. a streaming call that feeds the UI while the merge is generated).
+     */
+    public Result summarize(List<? extends CharSequence> chunks, ChunkPrompt chunkPrompt, int chunkMaxTokens, int mergeMaxTokens,
+                            int mergeBudgetChars, Generator finalGenerator) throws Exception {
+        long t0 = System.nanoTime();
+        List<CallStat> stats = Collections.synchronizedList(new ArrayList<>());
+
+        // --- map ---
+        List<Future<String>> futures = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            final int idx = i;
+            final CharSequence prompt = chunkPrompt.build(idx, chunks.size(), chunks.get(idx));
+            futures.add(submit(() -> call("map", idx, prompt, chunkMaxTokens, stats)));
+        }
+        List<String> partials = new ArrayList<>();
+        for (String s : await(futures)) {
+            if (s != null && !s.trim().isEmpty()) partials.add(s.trim());
+        }
+
+        if (partials.isEmpty()) return new Result("", stats, elapsedMs(t0));
+        if (partials.size() == 1) return new Result(partials.get(0), stats, elapsedMs(t0));
+
+        // --- tree reduce until the partials fit one merge prompt ---
+        int level = 0;
+        while (partials.size() > 1 && totalChars(partials) > mergeBudgetChars) {
+            level++;
+            List<List<String>> groups = pack(partials, mergeBudgetChars);
+            List<Future<String>> merges = new ArrayList<>(groups.size());
+            for (int g = 0; g < groups.size(); g++) {
+                final List<String> group = groups.get(g);
+                final int idx = g;
+                final String stage = "merge-L" + level;
+                if (group.size() == 1) {
+                    merges.add(CompletableFuture.completedFuture(group.get(0)));
+                    continue;
+                }
+                final String prompt = intermediateMergePrompt(group);
+                merges.add(submit(() -> call(stage, idx, prompt, chunkMaxTokens, stats)));
+            }
+            List<String> next = new ArrayList<>();
+            List<String> merged = await(merges);
+            for (int g = 0; g < merged.size(); g++) {
+                String s = merged.get(g);
+                // keep the inputs if a merge came back empty so nothing is lost
+                if (s == null || s.isBlank()) next.add(String.join("\n\n", groups.get(g)));
+                else next.add(s.trim());
+            }
+            partials = next;
+        }
+
+        if (partials.size() == 1) return new Result(partials.get(0), stats, elapsedMs(t0));
+
+        // --- final merge ---
+        String join = String.join("\n\n", partials);
+        String mergePrompt = "Combine the following partial summaries into one cohesive, comprehensive legal document summary. " +
+                "Remove repetition but preserve all important legal details, parties, obligations, dates, and clauses. " +
+                "Ensure the final summary flows naturally as a single document:\n\n" + join;
+
+        String merged = call(finalGenerator, "final", 0, mergePrompt, mergeMaxTokens, stats);
+        String text = (merged == null || merged.isBlank()) ? join : merged.trim();
+        return new Result(text, stats, elapsedMs(t0));
+    }
+
+    @FunctionalInterface
+    public interface ChunkPrompt {
+        CharSequence build(int index, int total, CharSequence chunk);
+    }
+
+    /** A chunk or merge call on its own thread in the caller's lane, once a slot is free. */
+    private Future<String> submit(Callable<String> task) {
+        return ExecutionService.shared().fork("summarize-map-" + CALL_SEQ.incrementAndGet(), () -> slots.call(task));
+    }
+
+    private String call(String stage, int index, CharSequence prompt, int maxTokens, List<CallStat> stats) throws Exception {
+        return call(generator, stage, index, prompt, maxTokens, stats);
+    }
+
+    private String call(Generator gen, String stage, int index, CharSequence prompt, int maxTokens, List<CallStat> stats) throws Exception {
+        limiter.acquire();
+        long t0 = System.nanoTime();
+        String out = gen.generate(stage, prompt, maxTokens);
+        CallStat st = new CallStat(stage, index, elapsedMs(t0), prompt.length(), out == null ? 0 : out.length());
+        stats.add(st);
+        System.out.println("⏱️ [MapReduce] " + st);
+        return out;
+    }
+
+    private static String intermediateMergePrompt(List<String> group) {
+        return "Combine the following partial summaries of consecutive sections of a legal document into one summary " +
+                "of those sections. Remove repetition but preserve all important legal details, parties, obligations, " +
+                "dates, and clauses:\n\n" + String.join("\n\n", group);
+    }
+
+    /** Greedy packing of consecutive partials; every group gets at least two items when possible. */
+    private static List<List<String>> pack(List<String> items, int budgetChars) {
+        List<List<String>> groups = new ArrayList<>();
+        List<String> cur = new ArrayList<>();
+        int curChars = 0;
+        for (String s : items) {
+            if (cur.size() >= 2 && curChars + s.length() > budgetChars) {
+                groups.add(cur);
+                cur = new ArrayList<>();
+                curChars = 0;
+            }
+            cur.add(s);
+            curChars += s.length();
+        }
+        if (!cur.isEmpty()) groups.add(cur);
+        return groups;
+    }
+
+    private static List<String> await(List<Future<String>> futures) throws Exception {
+        List<String> out = new ArrayList<>(futures.size());
+        try {
+            for (Future<String> f : futures) out.add(f.get());
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw e;
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+        return out;
+    }
+
+    private static int totalChars(List<String> parts) {
+        int n = 0;
+        for (String p : parts) n += p.length() + 2;
+        return n;
+    }
+
+    private static long elapsedMs(long t0) {
+        return (System.nanoTime() - t0) / 1_000_000;
+    }
+
+    static int estimateTokens(int chars) {
+        return (chars + 3) / 4;
+    }
+}
@@ -0,0 +1,157 @@
+package org.example.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * MappedTextReader — memory-maps a plain-text file and decodes it incrementally.
+ * The charset is sniffed once from the BOM or a prefix of the file, and malformed
+ * bytes are replaced in-line, so the file is only ever read a single time.
+ */
+public class MappedTextReader implements Closeable {
+    private static final int SNIFF_BYTES = 64 * 1024;
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;   // bytes mapped at a time
+    public static final int DEFAULT_DECODE_CHARS = 64 * 1024;   // bounded decode buffer
+
+    private final FileChannel channel;
+    private final long size;
+    private final Charset charset;
+    private final int bomLength;
+
+    private MappedTextReader(FileChannel channel, long size, Charset charset, int bomLength) {
+        this.channel = channel;
+        this.size = size;
+        this.charset = charset;
+        this.bomLength = bomLength;
+    }
+
+    public static MappedTextReader open(Path path) throws IOException {
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = ch.size();
+            ByteBuffer prefix = size == 0
+                    ? ByteBuffer.allocate(0)
+                    : ch.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(SNIFF_BYTES, size));
+            int bom = bomLength(prefix);
+            Charset cs = sniffCharset(prefix, bom);
+            return new MappedTextReader(ch, size, cs, bom);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    public Charset getCharset() { return charset; }
+    public long sizeBytes() { return size; }
+
+    /**
+     * Decode the whole file, handing each filled buffer to {@code sink}.
+     * The CharSequence is only valid for the duration of the callback.
+     */
+    public void forEachChunk(int maxChars, Consumer<CharSequence> sink) throws IOException {
+        CharsetDecoder dec = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer out = CharBuffer.allocate(Math.max(1024, maxChars));
+
+        long pos = bomLength;
+        while (pos < size) {
+            long len = Math.min(MAP_WINDOW, size - pos);
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, pos, len);
+            boolean last = pos + len >= size;
+
+            while (dec.decode(in, out, last).isOverflow()) {
+                drain(out, sink);
+            }
+            if (!last && in.position() == 0) {
+                throw new IOException("Could not decode window at byte " + pos);
+            }
+            // Any trailing partial character is re-mapped at the start of the next window
+            pos += in.position();
+            if (last) break;
+        }
+        while (dec.flush(out).isOverflow()) {
+            drain(out, sink);
+        }
+        drain(out, sink);
+    }
+
+    /** Convenience: decode the whole file into one String (single pass, pre-sized). */
+    public String readAll() throws IOException {
+        long estimate = Math.min(Integer.MAX_VALUE - 8, (long) ((size - bomLength) * estimateCharsPerByte()));
+        StringBuilder sb = new StringBuilder((int) Math.max(16, estimate));
+        forEachChunk(DEFAULT_DECODE_CHARS, sb::append);
+        return sb.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static void drain(CharBuffer out, Consumer<CharSequence> sink) {
+        out.flip();
+        if (out.hasRemaining()) sink.accept(out);
+        out.clear();
+    }
+
+    private double estimateCharsPerByte() {
+        String n = charset.name();
+        return n.startsWith("UTF-16") ? 0.5 : 1.0;
+    }
+
+    // ===== Charset sniffing =====
+
+    private static int bomLength(ByteBuffer b) {
+        if (b.limit() >= 3 && (b.get(0) & 0xff) == 0xEF && (b.get(1) & 0xff) == 0xBB && (b.get(2) & 0xff) == 0xBF) return 3;
+        if (b.limit() >= 2 && (b.get(0) & 0xff) == 0xFE && (b.get(1) & 0xff) == 0xFF) return 2;
+        if (b.limit() >= 2 && (b.get(0) & 0xff) == 0xFF && (b.get(1) & 0xff) == 0xFE) return 2;
+        return 0;
+    }
+
+    private static Charset sniffCharset(ByteBuffer b, int bom) {
+        if (bom == 3) return StandardCharsets.UTF_8;
+        if (bom == 2) return (b.get(0) & 0xff) == 0xFE ? StandardCharsets.UTF_16BE : StandardCharsets.UTF_16LE;
+
+        // BOM-less UTF-16 shows up as lots of NULs on one side
+        int evenZeros = 0, oddZeros = 0;
+        for (int i = 0; i < b.limit(); i++) {
+            if (b.get(i) == 0) {
+                if ((i & 1) == 0) evenZeros++; else oddZeros++;
+            }
+        }
+        int pairs = Math.max(1, b.limit() / 2);
+        if (oddZeros > pairs / 3 && evenZeros < pairs / 20) return StandardCharsets.UTF_16LE;
+        if (evenZeros > pairs / 3 && oddZeros < pairs / 20) return StandardCharsets.UTF_16BE;
+
+        // Strict UTF-8 check over the prefix; a truncated trailing sequence is fine
+        CharsetDecoder strict = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        ByteBuffer in = b.duplicate();
+        in.position(0);
+        CharBuffer scratch = CharBuffer.allocate(8192);
+        while (true) {
+            CoderResult cr = strict.decode(in, scratch, false);
+            if (cr.isError()) return legacyFallback();
+            if (cr.isOverflow()) { scratch.clear(); continue; }
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    private static Charset legacyFallback() {
+        try {
+            return Charset.forName("windows-1252");
+        } catch (Exception e) {
+            return StandardCharsets.ISO_8859_1;
+        }
+    }
+}
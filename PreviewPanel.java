@@ -72,6 +72,11 @@ public class PreviewPanel extends JPanel {
         preprocessed.setText(result.getOrDefault("preprocessed","").toString());
         summary.setText(result.getOrDefault("summary","").toString());
         metadata.setText("Filename: " + filename + "\nPrediction: " + result.getOrDefault("prediction","-") + "\nConfidence: " + result.getOrDefault("confidence","-"));
+        Object ttft = result.get("summary_ttft_ms");
+        Object total = result.get("summary_latency_ms");
+        if (total != null) {
+            metadata.append("\nSummary latency: " + (ttft != null && ((Number) ttft).longValue() >= 0 ? ttft + " ms to first token, " : "") + total + " ms total");
+        }
     }
 
     public Map<String,Object> getCurrentPipelineResult() { return lastPipelineResult; }
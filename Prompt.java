@@ -0,0 +1,107 @@
+package org.example.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Prompt — an instruction plus document text kept as separate segments (usually a
+ * short String and a {@link TextChunker.Chunk} view), so building a prompt never copies
+ * the document. Segments are escaped straight into the request body.
+ */
+public final class Prompt implements CharSequence {
+    private final List<CharSequence> segments;
+    private final int length;
+
+    private Prompt(List<CharSequence> segments) {
+        this.segments = segments;
+        int n = 0;
+        for (CharSequence cs : segments) n += cs.length();
+        this.length = n;
+    }
+
+    public static Prompt of(CharSequence... parts) {
+        List<CharSequence> segs = new ArrayList<>(parts.length);
+        for (CharSequence p : parts) if (p != null && p.length() > 0) segs.add(p);
+        return new Prompt(Collections.unmodifiableList(segs));
+    }
+
+    public List<CharSequence> segments() { return segments; }
+
+    @Override public int length() { return length; }
+
+    @Override
+    public char charAt(int index) {
+        for (CharSequence cs : segments) {
+            if (index < cs.length()) return cs.charAt(index);
+            index -= cs.length();
+        }
+        throw new IndexOutOfBoundsException();
+    }
+
+    /** A view over the overlapping parts of the segments; nothing is copied. */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) throw new IndexOutOfBoundsException();
+        List<CharSequence> segs = new ArrayList<>();
+        int offset = 0;
+        for (CharSequence cs : segments) {
+            int n = cs.length();
+            int from = Math.max(start, offset), to = Math.min(end, offset + n);
+            if (from < to) {
+                segs.add(from == offset && to == offset + n ? cs : cs.subSequence(from - offset, to - offset));
+            }
+            offset += n;
+            if (offset >= end) break;
+        }
+        return new Prompt(Collections.unmodifiableList(segs));
+    }
+
+    /** Write the prompt as a JSON string literal (with quotes), escaping as it goes. */
+    public void writeJsonString(Appendable out) throws IOException {
+        out.append('"');
+        for (CharSequence cs : segments) escapeJson(cs, out);
+        out.append('"');
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(length);
+        for (CharSequence cs : segments) sb.append(cs);
+        return sb.toString();
+    }
+
+    static void escapeJson(CharSequence cs, Appendable out) throws IOException {
+        for (int i = 0, n = cs.length(); i < n; i++) {
+            char c = cs.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                case '\b': out.append("\\b"); break;
+                case '\f': out.append("\\f"); break;
+                default:
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+    }
+
+    /** Convenience for callers that need the escaped form as a String (small prompts only). */
+    public String toJsonString() {
+        StringBuilder sb = new StringBuilder(length + 16);
+        try {
+            writeJsonString(sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+}
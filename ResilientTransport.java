@@ -0,0 +1,350 @@
+package org.example.core;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ResilientTransport — retry / circuit-breaker / hedging layer over {@link GoogleApiTransport}.
+ * Transient failures (I/O errors, 429, 500, 502, 503, 504) are retried with full-jitter
+ * exponential backoff, waiting at least as long as Retry-After or the RetryInfo delay in
+ * the error body. A per-endpoint breaker fails fast while the endpoint is unhealthy.
+ * Idempotent calls can be hedged: if no answer arrives within the endpoint's recent p95,
+ * a second identical request is raced against the first.
+ */
+public class ResilientTransport {
+    private static final int MAX_ATTEMPTS = Integer.getInteger("resilience.maxAttempts", 4);
+    private static final long BASE_DELAY_MS = Long.getLong("resilience.baseDelayMs", 500);
+    private static final long MAX_DELAY_MS = Long.getLong("resilience.maxDelayMs", 30_000);
+    private static final int BREAKER_FAILURES = Integer.getInteger("resilience.breaker.failureThreshold", 5);
+    private static final long BREAKER_OPEN_MS = Long.getLong("resilience.breaker.openMs", 30_000);
+    private static final boolean HEDGE = Boolean.getBoolean("resilience.hedge");
+    private static final long HEDGE_MIN_DELAY_MS = Long.getLong("resilience.hedge.minDelayMs", 1_000);
+    private static final int HEDGE_MIN_SAMPLES = Integer.getInteger("resilience.hedge.minSamples", 20);
+
+    private static final Pattern HTTP_STATUS = Pattern.compile("HTTP (\\d{3})\\b");
+    private static final Pattern RETRY_DELAY = Pattern.compile("\"retryDelay\"\\s*:\\s*\"(\\d+(?:\\.\\d+)?)s\"");
+    private static volatile ResilientTransport shared;
+
+    private final GoogleApiTransport transport;
+    private final ExecutorService hedgePool = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+
+    public ResilientTransport(GoogleApiTransport transport) {
+        this.transport = transport;
+    }
+
+    public static ResilientTransport shared() {
+        ResilientTransport r = shared;
+        if (r == null) {
+            synchronized (ResilientTransport.class) {
+                r = shared;
+                if (r == null) {
+                    r = new ResilientTransport(GoogleApiTransport.shared());
+                    shared = r;
+                }
+            }
+        }
+        return r;
+    }
+
+    /** Thrown without touching the network while an endpoint's breaker is open. */
+    public static class CircuitOpenException extends IOException {
+        public CircuitOpenException(String endpoint, long retryInMs) {
+            super("Circuit open for " + endpoint + " (retry in " + retryInMs + " ms)");
+        }
+    }
+
+    /**
+     * Buffered call with retries. A non-retryable error response (e.g. 400/403) is returned as-is
+     * so the caller keeps its own error handling; so is the last retryable response once
+     * attempts run out.
+     */
+    public GoogleApiTransport.Response send(String endpoint, URI uri, String bearerToken, byte[] jsonBody,
+                                            Duration timeout, boolean idempotent) throws IOException, InterruptedException {
+        return send(endpoint, uri, bearerToken, jsonBody, GoogleApiTransport.JSON, timeout, idempotent);
+    }
+
+    public GoogleApiTransport.Response send(String endpoint, URI uri, String bearerToken, byte[] body, String contentType,
+                                            Duration timeout, boolean idempotent) throws IOException, InterruptedException {
+        return send(endpoint, uri, bearerToken, body == null ? null : GoogleApiTransport.Body.of(body, contentType),
+                timeout, idempotent);
+    }
+
+    /** The body is encoded once; every attempt (and hedge) resends the same blocks. */
+    public GoogleApiTransport.Response send(String endpoint, URI uri, String bearerToken, GoogleApiTransport.Body body,
+                                            Duration timeout, boolean idempotent) throws IOException, InterruptedException {
+        Counters c = counters(endpoint);
+        CircuitBreaker breaker = breaker(endpoint);
+        for (int attempt = 1; ; attempt++) {
+            if (!breaker.tryAcquire()) {
+                c.shortCircuited.incrementAndGet();
+                throw new CircuitOpenException(endpoint, breaker.remainingOpenMillis());
+            }
+            c.attempts.incrementAndGet();
+            GoogleApiTransport.Response resp;
+            try {
+                resp = idempotent && HEDGE
+                        ? hedged(endpoint, () -> transport.send(endpoint, uri, bearerToken, body, timeout), c)
+                        : transport.send(endpoint, uri, bearerToken, body, timeout);
+            } catch (InterruptedException | RuntimeException e) {
+                breaker.releaseProbe();   // no verdict on the endpoint; don't keep it half-open forever
+                throw e;
+            } catch (IOException e) {
+                breaker.onFailure();
+                if (attempt >= MAX_ATTEMPTS) {
+                    c.gaveUp.incrementAndGet();
+                    throw e;
+                }
+                backoff(endpoint, attempt, -1, c, e.getMessage());
+                continue;
+            }
+
+            if (!isRetryable(resp.statusCode)) {
+                breaker.onSuccess();   // the endpoint answered; 4xx is the caller's problem
+                return resp;
+            }
+            breaker.onFailure();
+            long hinted = retryAfterMs(resp);
+            if (attempt >= MAX_ATTEMPTS || hinted > MAX_DELAY_MS) {
+                c.gaveUp.incrementAndGet();
+                return resp;
+            }
+            backoff(endpoint, attempt, hinted, c, "HTTP " + resp.statusCode);
+        }
+    }
+
+    public GoogleApiTransport.Response get(String endpoint, URI uri, String bearerToken, Duration timeout)
+            throws IOException, InterruptedException {
+        return send(endpoint, uri, bearerToken, (GoogleApiTransport.Body) null, timeout, true);
+    }
+
+    /**
+     * Streaming call. Only opening the stream is retried; once the caller starts reading,
+     * a failure is theirs to handle since deltas may already have been delivered.
+     */
+    public GoogleApiTransport.StreamingResponse stream(String endpoint, URI uri, String bearerToken, byte[] jsonBody,
+                                                       Duration timeout, String accept) throws IOException, InterruptedException {
+        return stream(endpoint, uri, bearerToken,
+                jsonBody == null ? null : GoogleApiTransport.Body.of(jsonBody, GoogleApiTransport.JSON), timeout, accept);
+    }
+
+    public GoogleApiTransport.StreamingResponse stream(String endpoint, URI uri, String bearerToken, GoogleApiTransport.Body body,
+                                                       Duration timeout, String accept) throws IOException, InterruptedException {
+        Counters c = counters(endpoint);
+        CircuitBreaker breaker = breaker(endpoint);
+        for (int attempt = 1; ; attempt++) {
+            if (!breaker.tryAcquire()) {
+                c.shortCircuited.incrementAndGet();
+                throw new CircuitOpenException(endpoint, breaker.remainingOpenMillis());
+            }
+            c.attempts.incrementAndGet();
+            GoogleApiTransport.StreamingResponse resp;
+            try {
+                resp = transport.stream(endpoint, uri, bearerToken, body, timeout, accept);
+            } catch (InterruptedException | RuntimeException e) {
+                breaker.releaseProbe();
+                throw e;
+            } catch (IOException e) {
+                breaker.onFailure();
+                if (attempt >= MAX_ATTEMPTS) {
+                    c.gaveUp.incrementAndGet();
+                    throw e;
+                }
+                backoff(endpoint, attempt, -1, c, e.getMessage());
+                continue;
+            }
+            if (!isRetryable(resp.statusCode)) {
+                breaker.onSuccess();
+                return resp;
+            }
+            breaker.onFailure();
+            long hinted = parseRetryAfterMs(resp.headers.firstValue("Retry-After").orElse(null));
+            if (attempt >= MAX_ATTEMPTS || hinted > MAX_DELAY_MS) {
+                c.gaveUp.incrementAndGet();
+                return resp;
+            }
+            resp.close();
+            backoff(endpoint, attempt, hinted, c, "HTTP " + resp.statusCode);
+        }
+    }
+
+    public Map<String, Snapshot> stats() {
+        Map<String, Snapshot> out = new TreeMap<>();
+        counters.forEach((endpoint, c) -> {
+            CircuitBreaker b = breaker(endpoint);
+            out.put(endpoint, new Snapshot(c.attempts.get(), c.retries.get(), c.retryAfterHonoured.get(), c.gaveUp.get(),
+                    c.shortCircuited.get(), b.getTimesOpened(), b.getState(), c.hedges.get(), c.hedgeWins.get()));
+        });
+        return out;
+    }
+
+    public CircuitBreaker.State breakerState(String endpoint) {
+        return breaker(endpoint).getState();
+    }
+
+    // ===== helpers =====
+
+    private GoogleApiTransport.Response hedged(String endpoint, Callable<GoogleApiTransport.Response> call, Counters c)
+            throws IOException, InterruptedException {
+        long p95 = transport.latencyPercentileMs(endpoint, 0.95, HEDGE_MIN_SAMPLES);
+        if (p95 < 0) return callDirect(call);
+        long delay = Math.max(HEDGE_MIN_DELAY_MS, p95);
+
+        CompletionService<GoogleApiTransport.Response> race = new ExecutorCompletionService<>(hedgePool);
+        Future<GoogleApiTransport.Response> primary = race.submit(call);
+        Future<GoogleApiTransport.Response> backup = null;
+        try {
+            Future<GoogleApiTransport.Response> first = race.poll(delay, TimeUnit.MILLISECONDS);
+            if (first != null) return unwrap(first);
+
+            c.hedges.incrementAndGet();
+            backup = race.submit(call);
+            GoogleApiTransport.Response fallback = null;
+            IOException error = null;
+            for (int i = 0; i < 2; i++) {
+                Future<GoogleApiTransport.Response> done = race.take();
+                try {
+                    GoogleApiTransport.Response r = unwrap(done);
+                    if (!isRetryable(r.statusCode)) {
+                        if (done == backup) c.hedgeWins.incrementAndGet();
+                        return r;
+                    }
+                    fallback = r;
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+            if (fallback != null) return fallback;
+            throw error;
+        } finally {
+            primary.cancel(true);
+            if (backup != null) backup.cancel(true);
+        }
+    }
+
+    private static GoogleApiTransport.Response callDirect(Callable<GoogleApiTransport.Response> call)
+            throws IOException, InterruptedException {
+        try {
+            return call.call();
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static GoogleApiTransport.Response unwrap(Future<GoogleApiTransport.Response> f)
+            throws IOException, InterruptedException {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    private void backoff(String endpoint, int attempt, long hintedMs, Counters c, String why) throws InterruptedException {
+        long cap = Math.min(MAX_DELAY_MS, BASE_DELAY_MS << Math.min(20, attempt - 1));
+        long delay = ThreadLocalRandom.current().nextLong(cap + 1);   // full jitter
+        if (hintedMs > 0) {
+            c.retryAfterHonoured.incrementAndGet();
+            delay = Math.max(delay, hintedMs);
+        }
+        c.retries.incrementAndGet();
+        System.err.println("🔁 " + endpoint + " attempt " + attempt + " failed (" + why + "), retrying in " + delay + " ms");
+        Thread.sleep(delay);
+    }
+
+    /**
+     * Whether a call that still failed after the in-call retries is worth retrying much later:
+     * open circuits, network errors and timeouts, and 429/5xx responses surfaced by the
+     * clients as "HTTP nnn" in an exception message. Other HTTP errors (400, 403, ...) are permanent.
+     */
+    public static boolean isTransient(Throwable t) {
+        for (Throwable c = t; c != null; c = c.getCause()) {
+            if (c instanceof CircuitOpenException) return true;
+            Matcher m = HTTP_STATUS.matcher(String.valueOf(c.getMessage()));
+            if (m.find()) return isRetryable(Integer.parseInt(m.group(1)));
+            if (c instanceof IOException) return true;
+        }
+        return false;
+    }
+
+    private static boolean isRetryable(int status) {
+        return status == 429 || status == 500 || status == 502 || status == 503 || status == 504;
+    }
+
+    /** Retry-After header, else google.rpc.RetryInfo's retryDelay in the error body; -1 if neither. */
+    private static long retryAfterMs(GoogleApiTransport.Response resp) {
+        long header = parseRetryAfterMs(resp.headers.firstValue("Retry-After").orElse(null));
+        if (header >= 0) return header;
+        if (resp.body != null) {
+            Matcher m = RETRY_DELAY.matcher(resp.body);
+            if (m.find()) return (long) (Double.parseDouble(m.group(1)) * 1000);
+        }
+        return -1;
+    }
+
+    /** Retry-After as delta-seconds or HTTP-date, in ms; -1 if absent or unparsable. */
+    static long parseRetryAfterMs(String value) {
+        if (value == null || value.isBlank()) return -1;
+        String v = value.trim();
+        try {
+            return Long.parseLong(v) * 1000;
+        } catch (NumberFormatException ignored) {}
+        try {
+            ZonedDateTime at = ZonedDateTime.parse(v, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, at.toInstant().toEpochMilli() - System.currentTimeMillis());
+        } catch (Exception ignored) {}
+        return -1;
+    }
+
+    private CircuitBreaker breaker(String endpoint) {
+        return breakers.computeIfAbsent(endpoint, k -> new CircuitBreaker(BREAKER_FAILURES, BREAKER_OPEN_MS));
+    }
+
+    private Counters counters(String endpoint) {
+        return counters.computeIfAbsent(endpoint, k -> new Counters());
+    }
+
+    private static final class Counters {
+        final AtomicLong attempts = new AtomicLong();
+        final AtomicLong retries = new AtomicLong();
+        final AtomicLong retryAfterHonoured = new AtomicLong();
+        final AtomicLong gaveUp = new AtomicLong();
+        final AtomicLong shortCircuited = new AtomicLong();
+        final AtomicLong hedges = new AtomicLong();
+        final AtomicLong hedgeWins = new AtomicLong();
+    }
+
+    /** Per-endpoint resilience counters. */
+    public static final class Snapshot {
+        public final long attempts, retries, retryAfterHonoured, gaveUp, shortCircuited, breakerOpened, hedges, hedgeWins;
+        public final CircuitBreaker.State breaker;
+
+        Snapshot(long attempts, long retries, long retryAfterHonoured, long gaveUp, long shortCircuited,
+                 long breakerOpened, CircuitBreaker.State breaker, long hedges, long hedgeWins) {
+            this.attempts = attempts; this.retries = retries; this.retryAfterHonoured = retryAfterHonoured;
+            this.gaveUp = gaveUp; this.shortCircuited = shortCircuited; this.breakerOpened = breakerOpened;
+            this.breaker = breaker; this.hedges = hedges; this.hedgeWins = hedgeWins;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("attempts=%d retries=%d retryAfter=%d gaveUp=%d breaker=%s opened=%d shortCircuited=%d hedges=%d hedgeWins=%d",
+                    attempts, retries, retryAfterHonoured, gaveUp, breaker, breakerOpened, shortCircuited, hedges, hedgeWins);
+        }
+    }
+}
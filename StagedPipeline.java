@@ -0,0 +1,198 @@
+package org.example.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * StagedPipeline — runs items through a fixed sequence of stages, each with its own worker
+ * threads (virtual, from {@link ExecutionService}) and a bounded input queue. A full queue
+ * blocks the stage feeding it, so a slow stage (OCR, a model call) throttles everything
+ * upstream instead of piling items up in memory, while different items occupy different
+ * stages at the same time. Completions reach the listener in input order; stage starts
+ * are reported as they happen.
+ */
+public final class StagedPipeline<T> {
+
+    @FunctionalInterface
+    public interface Step<T> {
+        /** Work on {@code item}; returning false ends the item here (e.g. skipped), throwing fails it. */
+        boolean apply(T item) throws Exception;
+    }
+
+    public interface Listener<T> {
+        /** Called on the stage's worker thread, in no particular order. */
+        default void onStageStart(int index, T item, String stage) {}
+
+        /**
+         * Called on the worker thread as soon as an item leaves the pipeline (done, ended early
+         * or failed), in no particular order; {@link #onComplete} may follow much later, once
+         * every earlier item is through.
+         */
+        default void onExit(int index, T item, Exception error) {}
+
+        /** Serialized and in input order; {@code error} is null unless a stage threw. */
+        void onComplete(int index, T item, Exception error);
+    }
+
+    private static final class Stage<T> {
+        final String name;
+        final int workers;
+        final int queueCapacity;
+        final Step<T> step;
+
+        Stage(String name, int workers, int queueCapacity, Step<T> step) {
+            this.name = name;
+            this.workers = workers;
+            this.queueCapacity = queueCapacity;
+            this.step = step;
+        }
+    }
+
+    public static final class Builder<T> {
+        private final String name;
+        private final List<Stage<T>> stages = new ArrayList<>();
+
+        private Builder(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @param workers       threads working this stage
+         * @param queueCapacity items that may wait for this stage before the previous one blocks
+         */
+        public Builder<T> stage(String stageName, int workers, int queueCapacity, Step<T> step) {
+            stages.add(new Stage<>(stageName, Math.max(1, workers), Math.max(1, queueCapacity), step));
+            return this;
+        }
+
+        public StagedPipeline<T> build() {
+            if (stages.isEmpty()) throw new IllegalStateException("pipeline has no stages");
+            return new StagedPipeline<>(name, new ArrayList<>(stages));
+        }
+    }
+
+    private final String name;
+    private final List<Stage<T>> stages;
+
+    private StagedPipeline(String name, List<Stage<T>> stages) {
+        this.name = name;
+        this.stages = stages;
+    }
+
+    public static <T> Builder<T> builder(String name) {
+        return new Builder<>(name);
+    }
+
+    /**
+     * Run all items and return once every one has completed. Items are fed from the calling
+     * thread, which blocks while the first stage's queue is full. Workers run in the caller's
+     * {@link Lane}.
+     */
+    public void run(List<T> items, Listener<T> listener) throws InterruptedException {
+        int n = items.size();
+        if (n == 0) return;
+
+        List<BlockingQueue<Integer>> queues = new ArrayList<>(stages.size());
+        for (Stage<T> s : stages) queues.add(new ArrayBlockingQueue<>(s.queueCapacity));
+        InOrder<T> completions = new InOrder<>(items, listener);
+        CountDownLatch done = new CountDownLatch(n);
+
+        Lane lane = Lane.current();
+        List<Thread> threads = new ArrayList<>();
+        for (int k = 0; k < stages.size(); k++) {
+            Stage<T> stage = stages.get(k);
+            BlockingQueue<Integer> in = queues.get(k);
+            BlockingQueue<Integer> out = k + 1 < queues.size() ? queues.get(k + 1) : null;
+            for (int w = 0; w < stage.workers; w++) {
+                threads.add(ExecutionService.shared().background(name + "-" + stage.name + "-" + w, lane,
+                        () -> work(stage, in, out, items, listener, completions, done)));
+            }
+        }
+
+        try {
+            for (int i = 0; i < n; i++) queues.get(0).put(i);
+            done.await();
+        } finally {
+            threads.forEach(Thread::interrupt);
+        }
+    }
+
+    private static <T> void work(Stage<T> stage, BlockingQueue<Integer> in, BlockingQueue<Integer> out, List<T> items,
+                                 Listener<T> listener, InOrder<T> completions, CountDownLatch done) {
+        while (true) {
+            int i;
+            try {
+                i = in.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            T item = items.get(i);
+            boolean next;
+            Exception error = null;
+            try {
+                listener.onStageStart(i, item, stage.name);
+                next = stage.step.apply(item);
+            } catch (InterruptedException e) {
+                exit(i, item, e, listener, completions, done);
+                return;
+            } catch (Exception e) {
+                error = e;
+                next = false;
+            }
+            if (next && out != null) {
+                try {
+                    out.put(i);   // blocks while the next stage is saturated
+                } catch (InterruptedException e) {
+                    exit(i, item, e, listener, completions, done);
+                    return;
+                }
+            } else {
+                exit(i, item, error, listener, completions, done);
+            }
+        }
+    }
+
+    private static <T> void exit(int i, T item, Exception error, Listener<T> listener, InOrder<T> completions,
+                                 CountDownLatch done) {
+        try {
+            listener.onExit(i, item, error);
+        } catch (RuntimeException e) {
+            System.err.println("⚠️ Pipeline listener failed for item " + i + ": " + e.getMessage());
+        }
+        completions.complete(i, error);
+        done.countDown();
+    }
+
+    /** Releases completions to the listener as a contiguous prefix of the input. */
+    private static final class InOrder<T> {
+        private final List<T> items;
+        private final Listener<T> listener;
+        private final boolean[] finished;
+        private final Exception[] errors;
+        private int next;
+
+        InOrder(List<T> items, Listener<T> listener) {
+            this.items = items;
+            this.listener = listener;
+            this.finished = new boolean[items.size()];
+            this.errors = new Exception[items.size()];
+        }
+
+        synchronized void complete(int index, Exception error) {
+            finished[index] = true;
+            errors[index] = error;
+            while (next < finished.length && finished[next]) {
+                try {
+                    listener.onComplete(next, items.get(next), errors[next]);
+                } catch (RuntimeException e) {
+                    System.err.println("⚠️ Pipeline listener failed for item " + next + ": " + e.getMessage());
+                }
+                errors[next] = null;
+                next++;
+            }
+        }
+    }
+}
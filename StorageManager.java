@@ -16,6 +16,7 @@ import java.util.*;
  *   Users/<ownerId>/inputs/<YYYY-MM-DD>/<file>
  *   Users/<ownerId>/extracted/<label>/<file>.txt
  *   Users/<ownerId>/summaries/<label>/<file>.summary.json
+ *   jobs/<jobId>/<stage text>.txt   (checkpoints of unfinished batch jobs)
  *   db/metadata.db
  */
 public class StorageManager {
@@ -26,6 +27,7 @@ public class StorageManager {
     private final String jdbcUrl;
     private final Path extractedDir;
     private final Path summariesDir;
+    private final Path jobsDir;
 
     public StorageManager(String projectRoot) throws Exception {
         this.baseDir = Paths.get(projectRoot).toAbsolutePath();
@@ -33,6 +35,7 @@ public class StorageManager {
         this.summariesDir = baseDir.resolve("data").resolve("summaries");
         this.inputsDir = baseDir.resolve("data").resolve("inputs");
         this.usersRoot = baseDir.resolve("data").resolve("Users");
+        this.jobsDir = baseDir.resolve("data").resolve("jobs");
         this.dbPath = baseDir.resolve("data").resolve("db").resolve("metadata.db");
         this.jdbcUrl = "jdbc:sqlite:" + dbPath;
 
@@ -54,6 +57,7 @@ public class StorageManager {
         Files.createDirectories(inputsDir);
         Files.createDirectories(extractedDir);
         Files.createDirectories(summariesDir);
+        Files.createDirectories(jobsDir);
         Files.createDirectories(dbPath.getParent());
     }
 
@@ -121,12 +125,95 @@ public class StorageManager {
                             ");"
             );
 
+            // Token usage per model call, as reported by the model (usageMetadata)
+            s.executeUpdate(
+                    "CREATE TABLE IF NOT EXISTS token_usage (\n" +
+                            "  id INTEGER PRIMARY KEY AUTOINCREMENT,\n" +
+                            "  document_sha256 TEXT,\n" +
+                            "  filename TEXT,\n" +
+                            "  owner_id TEXT,\n" +
+                            "  label TEXT,\n" +
+                            "  stage TEXT,\n" +
+                            "  model TEXT,\n" +
+                            "  prompt_tokens INTEGER DEFAULT 0,\n" +
+                            "  output_tokens INTEGER DEFAULT 0,\n" +
+                            "  cached_tokens INTEGER DEFAULT 0,\n" +
+                            "  total_tokens INTEGER DEFAULT 0,\n" +
+                            "  latency_ms INTEGER,\n" +
+                            "  created_at TEXT DEFAULT CURRENT_TIMESTAMP\n" +
+                            ");"
+            );
+
+            // Documents whose summary or label override failed transiently, retried with backoff
+            s.executeUpdate(
+                    "CREATE TABLE IF NOT EXISTS enrichment_queue (\n" +
+                            "  id INTEGER PRIMARY KEY AUTOINCREMENT,\n" +
+                            "  document_sha256 TEXT UNIQUE,\n" +
+                            "  owner_id TEXT,\n" +
+                            "  need_summary INTEGER DEFAULT 0,\n" +
+                            "  need_override INTEGER DEFAULT 0,\n" +
+                            "  priority INTEGER DEFAULT 0,\n" +
+                            "  attempts INTEGER DEFAULT 0,\n" +
+                            "  next_attempt_at INTEGER,\n" +
+                            "  last_error TEXT,\n" +
+                            "  created_at TEXT DEFAULT CURRENT_TIMESTAMP\n" +
+                            ");"
+            );
+
+            // Batch jobs, one row per document, checkpointed after every stage so a batch survives a crash
+            s.executeUpdate(
+                    "CREATE TABLE IF NOT EXISTS jobs (\n" +
+                            "  id INTEGER PRIMARY KEY AUTOINCREMENT,\n" +
+                            "  batch_id TEXT,\n" +
+                            "  owner_id TEXT,\n" +
+                            "  file_path TEXT,\n" +
+                            "  position INTEGER,\n" +
+                            "  profile TEXT,\n" +
+                            "  stage TEXT DEFAULT 'queued',\n" +
+                            "  state TEXT DEFAULT 'pending',\n" +
+                            "  source_sha256 TEXT,\n" +
+                            "  text_sha256 TEXT,\n" +
+                            "  page_count INTEGER,\n" +
+                            "  credits_estimated INTEGER,\n" +
+                            "  boilerplate_removed INTEGER,\n" +
+                            "  prediction TEXT,\n" +
+                            "  confidence REAL,\n" +
+                            "  label TEXT,\n" +
+                            "  override_pending INTEGER DEFAULT 0,\n" +
+                            "  summary_status TEXT,\n" +
+                            "  usage_json TEXT,\n" +
+                            "  lease_owner TEXT,\n" +
+                            "  lease_until INTEGER,\n" +
+                            "  attempts INTEGER DEFAULT 0,\n" +
+                            "  last_error TEXT,\n" +
+                            "  created_at TEXT DEFAULT CURRENT_TIMESTAMP,\n" +
+                            "  updated_at TEXT\n" +
+                            ");"
+            );
+
+            // Overnight batch prediction jobs still running at the backend, polled again after a restart
+            s.executeUpdate(
+                    "CREATE TABLE IF NOT EXISTS batch_predictions (\n" +
+                            "  id INTEGER PRIMARY KEY AUTOINCREMENT,\n" +
+                            "  job_name TEXT UNIQUE,\n" +
+                            "  display_name TEXT,\n" +
+                            "  owner_id TEXT,\n" +
+                            "  state TEXT DEFAULT 'running',\n" +
+                            "  last_error TEXT,\n" +
+                            "  created_at TEXT DEFAULT CURRENT_TIMESTAMP,\n" +
+                            "  updated_at TEXT\n" +
+                            ");"
+            );
+
             // Create indexes
             s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_documents_owner ON documents(owner_id)");
             s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_documents_sha256 ON documents(sha256)");
             s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_documents_label ON documents(predicted_label)");
             s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_credit_transactions_user ON credit_transactions(user_id)");
             s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_credit_transactions_type ON credit_transactions(transaction_type)");
+            s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_token_usage_owner_label ON token_usage(owner_id, label)");
+            s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_token_usage_sha ON token_usage(document_sha256)");
+            s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_jobs_owner_state ON jobs(owner_id, state)");
 
             // Insert default admin user (password: admin123)
             s.executeUpdate(
@@ -148,6 +235,25 @@ public class StorageManager {
                 // Column might already exist, ignore the error
                 System.out.println("Note: user_name column setup completed (might already exist)");
             }
+            try {
+                // NULL or 'ready': final summary; 'pending': queued for enrichment; 'failed': gave up, extractive summary kept
+                s.executeUpdate("ALTER TABLE documents ADD COLUMN summary_status TEXT");
+            } catch (SQLException e) {
+                // Column already exists
+            }
+            try {
+                // higher first; lazily deferred summaries sit below retries
+                s.executeUpdate("ALTER TABLE enrichment_queue ADD COLUMN priority INTEGER DEFAULT 0");
+            } catch (SQLException e) {
+                // Column already exists
+            }
+            try {
+                // the input file's hash when it was extracted; a changed file restarts its job
+                s.executeUpdate("ALTER TABLE jobs ADD COLUMN source_sha256 TEXT");
+            } catch (SQLException e) {
+                // Column already exists
+            }
+            s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_enrichment_queue_due ON enrichment_queue(owner_id, priority, next_attempt_at)");
         }
     }
 
@@ -288,6 +394,14 @@ public class StorageManager {
     }
 
     // ===== SHA-256 =====
+    /** SHA-256 of a text's UTF-8 bytes, hex. */
+    public static String sha256Text(String text) throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) sb.append(String.format("%02x", b & 0xff));
+        return sb.toString();
+    }
+
     public static String sha256(File f) throws Exception {
         MessageDigest md = MessageDigest.getInstance("SHA-256");
         try (InputStream is = Files.newInputStream(f.toPath())) {
@@ -400,57 +514,520 @@ public class StorageManager {
     public void upsertDocumentRecord(Map<String, Object> fields) throws SQLException {
         try (Connection c = DriverManager.getConnection(jdbcUrl)) {
             c.setAutoCommit(false);
-            String checkSql = "SELECT id FROM documents WHERE sha256 = ?";
-            try (PreparedStatement ps = c.prepareStatement(checkSql)) {
-                ps.setString(1, toStr(fields.get("sha256")));
+            upsert(c, fields);
+            c.commit();
+        }
+    }
+
+    /** Bulk variant: all records in one connection and one transaction (batch-prediction results). */
+    public void upsertDocumentRecords(List<Map<String, Object>> records) throws SQLException {
+        if (records.isEmpty()) return;
+        try (Connection c = DriverManager.getConnection(jdbcUrl)) {
+            c.setAutoCommit(false);
+            try {
+                for (Map<String, Object> fields : records) upsert(c, fields);
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
+        }
+    }
+
+    // ===== token usage =====
+
+    /**
+     * One row per model call of a document; {@code calls} hold stage, model, prompt_tokens,
+     * output_tokens, cached_tokens, total_tokens and latency_ms. Written in one transaction.
+     */
+    public void recordTokenUsage(String sha256, String filename, String ownerId, String label,
+                                 List<Map<String, Object>> calls) throws SQLException {
+        if (calls == null || calls.isEmpty()) return;
+        String sql = "INSERT INTO token_usage(document_sha256, filename, owner_id, label, stage, model, " +
+                "prompt_tokens, output_tokens, cached_tokens, total_tokens, latency_ms) VALUES(?,?,?,?,?,?,?,?,?,?,?)";
+        try (Connection c = getConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                for (Map<String, Object> call : calls) {
+                    ps.setString(1, sha256);
+                    ps.setString(2, filename);
+                    ps.setString(3, ownerId);
+                    ps.setString(4, label);
+                    ps.setString(5, toStr(call.get("stage")));
+                    ps.setString(6, toStr(call.get("model")));
+                    ps.setInt(7, toInt(call.get("prompt_tokens")));
+                    ps.setInt(8, toInt(call.get("output_tokens")));
+                    ps.setInt(9, toInt(call.get("cached_tokens")));
+                    ps.setInt(10, toInt(call.get("total_tokens")));
+                    ps.setInt(11, toInt(call.get("latency_ms")));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /** Token totals grouped by owner and label: owner_id, label, documents, calls, prompt/output/total tokens. */
+    public List<Map<String, Object>> getTokenUsageByOwnerAndLabel() throws SQLException {
+        String sql = "SELECT owner_id, label, COUNT(DISTINCT document_sha256) AS documents, COUNT(*) AS calls, " +
+                "SUM(prompt_tokens) AS prompt_tokens, SUM(output_tokens) AS output_tokens, SUM(total_tokens) AS total_tokens " +
+                "FROM token_usage GROUP BY owner_id, label ORDER BY total_tokens DESC";
+        return queryRows(sql);
+    }
+
+    /** Per-stage averages (override, chunk, merge, ...) for tuning chunk sizes against real numbers. */
+    public List<Map<String, Object>> getTokenUsageByStage() throws SQLException {
+        String sql = "SELECT stage, COUNT(*) AS calls, AVG(prompt_tokens) AS avg_prompt_tokens, " +
+                "AVG(output_tokens) AS avg_output_tokens, AVG(latency_ms) AS avg_latency_ms, SUM(total_tokens) AS total_tokens " +
+                "FROM token_usage GROUP BY stage ORDER BY total_tokens DESC";
+        return queryRows(sql);
+    }
+
+    // ===== batch jobs =====
+
+    // columns a stage checkpoint may set
+    private static final Set<String> JOB_CHECKPOINT_COLUMNS = Set.of(
+            "source_sha256", "text_sha256", "page_count", "credits_estimated", "boilerplate_removed", "prediction", "confidence",
+            "label", "override_pending", "summary_status", "usage_json");
+
+    /** One pending job per file, in order; returns their ids in the same order. */
+    public List<Long> createJobs(String batchId, String ownerId, String profile, List<File> files) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        String sql = "INSERT INTO jobs(batch_id, owner_id, file_path, position, profile, updated_at) VALUES(?,?,?,?,?,?)";
+        try (Connection c = getConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                for (int i = 0; i < files.size(); i++) {
+                    ps.setString(1, batchId);
+                    ps.setString(2, ownerId);
+                    ps.setString(3, files.get(i).getAbsolutePath());
+                    ps.setInt(4, i);
+                    ps.setString(5, profile);
+                    ps.setString(6, Instant.now().toString());
+                    ps.executeUpdate();
+                    try (ResultSet keys = ps.getGeneratedKeys()) {
+                        ids.add(keys.next() ? keys.getLong(1) : -1L);
+                    }
+                }
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Take the lease on a job for {@code leaseMs}. Fails when the job is finished or another
+     * worker holds a live lease; a lease that ran out (its worker crashed) can be taken over.
+     */
+    public boolean claimJob(long jobId, String worker, long nowMs, long leaseMs) throws SQLException {
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                     "UPDATE jobs SET state = 'running', lease_owner = ?, lease_until = ?, attempts = attempts + 1, updated_at = ? " +
+                     "WHERE id = ? AND state IN ('pending','running') " +
+                     "AND (lease_until IS NULL OR lease_until < ? OR lease_owner = ?)")) {
+            ps.setString(1, worker);
+            ps.setLong(2, nowMs + leaseMs);
+            ps.setString(3, Instant.now().toString());
+            ps.setLong(4, jobId);
+            ps.setLong(5, nowMs);
+            ps.setString(6, worker);
+            return ps.executeUpdate() == 1;
+        }
+    }
+
+    /** Record that {@code stage} completed, with the values it produced, and extend the lease. */
+    public void checkpointJob(long jobId, String stage, Map<String, Object> values, long leaseUntilMs) throws SQLException {
+        StringBuilder sql = new StringBuilder("UPDATE jobs SET stage = ?, lease_until = ?, updated_at = ?");
+        List<Object> args = new ArrayList<>();
+        for (Map.Entry<String, Object> e : values.entrySet()) {
+            if (!JOB_CHECKPOINT_COLUMNS.contains(e.getKey())) throw new IllegalArgumentException("Not a checkpoint column: " + e.getKey());
+            sql.append(", ").append(e.getKey()).append(" = ?");
+            args.add(e.getValue());
+        }
+        sql.append(" WHERE id = ?");
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement(sql.toString())) {
+            ps.setString(1, stage);
+            ps.setLong(2, leaseUntilMs);
+            ps.setString(3, Instant.now().toString());
+            int i = 4;
+            for (Object v : args) ps.setObject(i++, v instanceof Boolean ? ((Boolean) v ? 1 : 0) : v);
+            ps.setLong(i, jobId);
+            ps.executeUpdate();
+        }
+    }
+
+    /** End a job: state 'done', 'skipped' or 'failed'; its checkpoint texts are removed. */
+    public void finishJob(long jobId, String state, String error) throws SQLException {
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                     "UPDATE jobs SET state = ?, last_error = ?, lease_owner = NULL, lease_until = NULL, updated_at = ? WHERE id = ?")) {
+            ps.setString(1, state);
+            ps.setString(2, error);
+            ps.setString(3, Instant.now().toString());
+            ps.setLong(4, jobId);
+            ps.executeUpdate();
+        }
+        try {
+            deleteDirectory(jobsDir.resolve(String.valueOf(jobId)));
+        } catch (IOException ignored) {}
+    }
+
+    /** Give up the lease without finishing (shutdown), so the job resumes on the next start. */
+    public void releaseJob(long jobId) throws SQLException {
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                     "UPDATE jobs SET state = 'pending', lease_owner = NULL, lease_until = NULL, updated_at = ? WHERE id = ? AND state = 'running'")) {
+            ps.setString(1, Instant.now().toString());
+            ps.setLong(2, jobId);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Drop the leases of every worker but {@code worker}. Only one process uses the database,
+     * so at startup any other worker id belongs to a run that crashed or was killed; its
+     * leases would otherwise keep the jobs from resuming until they ran out.
+     */
+    public int releaseForeignLeases(String worker) throws SQLException {
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                     "UPDATE jobs SET state = 'pending', lease_owner = NULL, lease_until = NULL, updated_at = ? " +
+                     "WHERE state IN ('pending','running') AND lease_owner IS NOT NULL AND lease_owner <> ?")) {
+            ps.setString(1, Instant.now().toString());
+            ps.setString(2, worker);
+            return ps.executeUpdate();
+        }
+    }
+
+    /** Unfinished jobs of an owner that nobody holds a live lease on, oldest batch first. */
+    public List<Map<String, Object>> listResumableJobs(String ownerId, long nowMs) throws SQLException {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                     "SELECT * FROM jobs WHERE owner_id = ? AND state IN ('pending','running') " +
+                     "AND (lease_until IS NULL OR lease_until < ?) ORDER BY id")) {
+            ps.setString(1, ownerId);
+            ps.setLong(2, nowMs);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) rows.add(rowToMap(rs));
+            }
+        }
+        return rows;
+    }
+
+    /** Number of unfinished jobs of an owner (all owners when null). */
+    public int countUnfinishedJobs(String ownerId) throws SQLException {
+        String sql = ownerId == null
+                ? "SELECT COUNT(*) FROM jobs WHERE state IN ('pending','running')"
+                : "SELECT COUNT(*) FROM jobs WHERE owner_id = ? AND state IN ('pending','running')";
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            if (ownerId != null) ps.setString(1, ownerId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /** Checkpoint text of a job (extracted, body, preprocessed, summary). */
+    public void writeJobText(long jobId, String name, String text) throws IOException {
+        Path dir = jobsDir.resolve(String.valueOf(jobId));
+        Files.createDirectories(dir);
+        Files.writeString(dir.resolve(name + ".txt"), text == null ? "" : text, StandardCharsets.UTF_8);
+    }
+
+    /** The checkpoint text, or null when it was never written. */
+    public String readJobText(long jobId, String name) throws IOException {
+        Path p = jobsDir.resolve(String.valueOf(jobId)).resolve(name + ".txt");
+        return Files.exists(p) ? Files.readString(p, StandardCharsets.UTF_8) : null;
+    }
+
+    // ===== batch predictions =====
+
+    /** Remember a submitted batch prediction job so it can be polled again after a restart. */
+    public void createBatchPrediction(String jobName, String displayName, String ownerId) throws SQLException {
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                     "INSERT OR REPLACE INTO batch_predictions(job_name, display_name, owner_id, state, updated_at) VALUES(?,?,?,'running',?)")) {
+            ps.setString(1, jobName);
+            ps.setString(2, displayName);
+            ps.setString(3, ownerId);
+            ps.setString(4, Instant.now().toString());
+            ps.executeUpdate();
+        }
+    }
+
+    /** End a batch prediction job: state 'done' or 'failed'. */
+    public void finishBatchPrediction(String jobName, String state, String error) throws SQLException {
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                     "UPDATE batch_predictions SET state = ?, last_error = ?, updated_at = ? WHERE job_name = ?")) {
+            ps.setString(1, state);
+            ps.setString(2, error);
+            ps.setString(3, Instant.now().toString());
+            ps.setString(4, jobName);
+            ps.executeUpdate();
+        }
+    }
+
+    /** Batch prediction jobs of an owner that were submitted but never collected, oldest first. */
+    public List<Map<String, Object>> listRunningBatchPredictions(String ownerId) throws SQLException {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                     "SELECT * FROM batch_predictions WHERE owner_id = ? AND state = 'running' ORDER BY id")) {
+            ps.setString(1, ownerId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) rows.add(rowToMap(rs));
+            }
+        }
+        return rows;
+    }
+
+    // ===== enrichment queue =====
+
+    private static final String ENRICHMENT_SELECT =
+            "SELECT q.id AS queue_id, q.need_summary, q.need_override, q.priority, q.attempts, q.last_error, d.* " +
+            "FROM enrichment_queue q JOIN documents d ON d.sha256 = q.document_sha256 ";
+
+    /**
+     * Queue a document for deferred enrichment, due at {@code dueAtMs}. Re-queuing an entry
+     * keeps its attempt count and adds the new needs (and the higher priority) to the old ones.
+     */
+    public void enqueueEnrichment(String sha256, String ownerId, boolean needSummary, boolean needOverride,
+                                  int priority, long dueAtMs, String error) throws SQLException {
+        String sql = "INSERT INTO enrichment_queue(document_sha256, owner_id, need_summary, need_override, priority, next_attempt_at, last_error) " +
+                "VALUES(?,?,?,?,?,?,?) ON CONFLICT(document_sha256) DO UPDATE SET " +
+                "need_summary = MAX(need_summary, excluded.need_summary), need_override = MAX(need_override, excluded.need_override), " +
+                "priority = MAX(priority, excluded.priority), " +
+                "next_attempt_at = MIN(next_attempt_at, excluded.next_attempt_at), last_error = excluded.last_error";
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, sha256);
+            ps.setString(2, ownerId);
+            ps.setInt(3, needSummary ? 1 : 0);
+            ps.setInt(4, needOverride ? 1 : 0);
+            ps.setInt(5, priority);
+            ps.setLong(6, dueAtMs);
+            ps.setString(7, error);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Up to {@code limit} due entries of an owner, joined with their document row. Claimed
+     * entries are pushed out by {@code leaseMs}, so an entry whose worker dies comes due again.
+     */
+    public List<Map<String, Object>> claimDueEnrichment(String ownerId, int limit, long nowMs, long leaseMs) throws SQLException {
+        String sel = ENRICHMENT_SELECT + "WHERE q.owner_id = ? AND q.next_attempt_at <= ? " +
+                "ORDER BY q.priority DESC, q.next_attempt_at LIMIT ?";
+        List<Map<String, Object>> rows = new ArrayList<>();
+        try (Connection c = getConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(sel);
+                 PreparedStatement lease = c.prepareStatement("UPDATE enrichment_queue SET next_attempt_at = ? WHERE id = ?")) {
+                ps.setString(1, ownerId);
+                ps.setLong(2, nowMs);
+                ps.setInt(3, limit);
                 try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.next()) {
-                        int id = rs.getInt("id");
-                        String updateSql =
-                                "UPDATE documents SET filename=?, original_path=?, stored_input_path=?, extracted_path=?, summary_path=?, " +
-                                        "predicted_label=?, confidence=?, processed=?, processed_at=?, notes=?, owner_id=? WHERE id=?";
-                        try (PreparedStatement up = c.prepareStatement(updateSql)) {
-                            up.setString(1, toStr(fields.get("filename")));
-                            up.setString(2, toStr(fields.get("original_path")));
-                            up.setString(3, toStr(fields.get("stored_input_path")));
-                            up.setString(4, toStr(fields.get("extracted_path")));
-                            up.setString(5, toStr(fields.get("summary_path")));
-                            up.setString(6, toStr(fields.get("predicted_label")));
-                            Double conf = toDouble(fields.get("confidence"));
-                            if (conf == null) up.setNull(7, Types.REAL); else up.setDouble(7, conf);
-                            up.setInt(8, toInt(fields.get("processed")));
-                            up.setString(9, Instant.now().toString());
-                            up.setString(10, toStr(fields.get("notes")));
-                            up.setString(11, toStr(fields.get("owner_id")));
-                            up.setInt(12, id);
-                            up.executeUpdate();
-                        }
-                    } else {
-                        String insertSql =
-                                "INSERT INTO documents(filename, original_path, stored_input_path, extracted_path, summary_path, " +
-                                        "predicted_label, confidence, sha256, processed, uploaded_at, processed_at, notes, owner_id) " +
-                                        "VALUES(?,?,?,?,?,?,?,?,?,?,?,?,?)";
-                        try (PreparedStatement ins = c.prepareStatement(insertSql)) {
-                            ins.setString(1, toStr(fields.get("filename")));
-                            ins.setString(2, toStr(fields.get("original_path")));
-                            ins.setString(3, toStr(fields.get("stored_input_path")));
-                            ins.setString(4, toStr(fields.get("extracted_path")));
-                            ins.setString(5, toStr(fields.get("summary_path")));
-                            ins.setString(6, toStr(fields.get("predicted_label")));
-                            Double conf = toDouble(fields.get("confidence"));
-                            if (conf == null) ins.setNull(7, Types.REAL); else ins.setDouble(7, conf);
-                            ins.setString(8, toStr(fields.get("sha256")));
-                            ins.setInt(9, toInt(fields.get("processed")));
-                            ins.setString(10, Instant.now().toString());
-                            ins.setString(11, Instant.now().toString());
-                            ins.setString(12, toStr(fields.get("notes")));
-                            ins.setString(13, toStr(fields.get("owner_id")));
-                            ins.executeUpdate();
-                        }
+                    while (rs.next()) rows.add(rowToMap(rs));
+                }
+                for (Map<String, Object> row : rows) {
+                    lease.setLong(1, nowMs + leaseMs);
+                    lease.setInt(2, toInt(row.get("queue_id")));
+                    lease.addBatch();
+                }
+                lease.executeBatch();
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * The queue entry of one document joined with its row, whether due or not (an on-demand
+     * request jumps the queue); null when the document isn't queued.
+     */
+    public Map<String, Object> getEnrichment(String sha256) throws SQLException {
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement(ENRICHMENT_SELECT + "WHERE q.document_sha256 = ?")) {
+            ps.setString(1, sha256);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rowToMap(rs) : null;
+            }
+        }
+    }
+
+    /** Back off a failed entry until {@code nextAttemptAtMs}. */
+    public void rescheduleEnrichment(int queueId, int attempts, long nextAttemptAtMs, String error) throws SQLException {
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                     "UPDATE enrichment_queue SET attempts = ?, next_attempt_at = ?, last_error = ? WHERE id = ?")) {
+            ps.setInt(1, attempts);
+            ps.setLong(2, nextAttemptAtMs);
+            ps.setString(3, error);
+            ps.setInt(4, queueId);
+            ps.executeUpdate();
+        }
+    }
+
+    /** Drop an entry and set the document's summary_status ('ready' or 'failed') in one transaction. */
+    public void finishEnrichment(int queueId, String sha256, String summaryStatus) throws SQLException {
+        try (Connection c = getConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement del = c.prepareStatement("DELETE FROM enrichment_queue WHERE id = ?");
+                 PreparedStatement up = c.prepareStatement("UPDATE documents SET summary_status = ? WHERE sha256 = ?")) {
+                del.setInt(1, queueId);
+                del.executeUpdate();
+                up.setString(1, summaryStatus);
+                up.setString(2, sha256);
+                up.executeUpdate();
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /** Swap in a deferred summary: a new file under the label, summary_path pointed at it, the old file removed. */
+    public Path updateSummary(String sha256, String ownerId, String label, String filename, String summaryText)
+            throws IOException, SQLException {
+        Map<String, Object> row = getBySha256(sha256);
+        Path p = storeSummary(ownerId, label, filename, summaryText);
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement("UPDATE documents SET summary_path = ?, processed_at = ? WHERE sha256 = ?")) {
+            ps.setString(1, p.toString());
+            ps.setString(2, Instant.now().toString());
+            ps.setString(3, sha256);
+            ps.executeUpdate();
+        }
+        String old = row == null ? null : toStr(row.get("summary_path"));
+        if (old != null && !old.equals(p.toString())) safeDelete(old);
+        return p;
+    }
+
+    /** Number of queued entries of an owner (all owners when null). */
+    public int countPendingEnrichment(String ownerId) throws SQLException {
+        String sql = ownerId == null
+                ? "SELECT COUNT(*) FROM enrichment_queue"
+                : "SELECT COUNT(*) FROM enrichment_queue WHERE owner_id = ?";
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            if (ownerId != null) ps.setString(1, ownerId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /** summary_path of documents whose summary is still pending, for marking them in the UI. */
+    public Set<Path> listPendingSummariesByOwner(String ownerId) throws SQLException {
+        Set<Path> out = new HashSet<>();
+        String sql = (ownerId == null)
+                ? "SELECT summary_path FROM documents WHERE summary_status = 'pending' AND summary_path IS NOT NULL"
+                : "SELECT summary_path FROM documents WHERE owner_id = ? AND summary_status = 'pending' AND summary_path IS NOT NULL";
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            if (ownerId != null) ps.setString(1, ownerId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String p = rs.getString(1);
+                    if (p != null && !p.isBlank()) out.add(Paths.get(p));
+                }
+            }
+        }
+        return out;
+    }
+
+    private List<Map<String, Object>> queryRows(String sql) throws SQLException {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) rows.add(rowToMap(rs));
+        }
+        return rows;
+    }
+
+    private void upsert(Connection c, Map<String, Object> fields) throws SQLException {
+        String checkSql = "SELECT id FROM documents WHERE sha256 = ?";
+        try (PreparedStatement ps = c.prepareStatement(checkSql)) {
+            ps.setString(1, toStr(fields.get("sha256")));
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    int id = rs.getInt("id");
+                    String updateSql =
+                            "UPDATE documents SET filename=?, original_path=?, stored_input_path=?, extracted_path=?, summary_path=?, " +
+                                    "predicted_label=?, confidence=?, processed=?, processed_at=?, notes=?, owner_id=?, summary_status=? WHERE id=?";
+                    try (PreparedStatement up = c.prepareStatement(updateSql)) {
+                        up.setString(1, toStr(fields.get("filename")));
+                        up.setString(2, toStr(fields.get("original_path")));
+                        up.setString(3, toStr(fields.get("stored_input_path")));
+                        up.setString(4, toStr(fields.get("extracted_path")));
+                        up.setString(5, toStr(fields.get("summary_path")));
+                        up.setString(6, toStr(fields.get("predicted_label")));
+                        Double conf = toDouble(fields.get("confidence"));
+                        if (conf == null) up.setNull(7, Types.REAL); else up.setDouble(7, conf);
+                        up.setInt(8, toInt(fields.get("processed")));
+                        up.setString(9, Instant.now().toString());
+                        up.setString(10, toStr(fields.get("notes")));
+                        up.setString(11, toStr(fields.get("owner_id")));
+                        up.setString(12, toStr(fields.get("summary_status")));
+                        up.setInt(13, id);
+                        up.executeUpdate();
+                    }
+                } else {
+                    String insertSql =
+                            "INSERT INTO documents(filename, original_path, stored_input_path, extracted_path, summary_path, " +
+                                    "predicted_label, confidence, sha256, processed, uploaded_at, processed_at, notes, owner_id, summary_status) " +
+                                    "VALUES(?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+                    try (PreparedStatement ins = c.prepareStatement(insertSql)) {
+                        ins.setString(1, toStr(fields.get("filename")));
+                        ins.setString(2, toStr(fields.get("original_path")));
+                        ins.setString(3, toStr(fields.get("stored_input_path")));
+                        ins.setString(4, toStr(fields.get("extracted_path")));
+                        ins.setString(5, toStr(fields.get("summary_path")));
+                        ins.setString(6, toStr(fields.get("predicted_label")));
+                        Double conf = toDouble(fields.get("confidence"));
+                        if (conf == null) ins.setNull(7, Types.REAL); else ins.setDouble(7, conf);
+                        ins.setString(8, toStr(fields.get("sha256")));
+                        ins.setInt(9, toInt(fields.get("processed")));
+                        ins.setString(10, Instant.now().toString());
+                        ins.setString(11, Instant.now().toString());
+                        ins.setString(12, toStr(fields.get("notes")));
+                        ins.setString(13, toStr(fields.get("owner_id")));
+                        ins.setString(14, toStr(fields.get("summary_status")));
+                        ins.executeUpdate();
                     }
                 }
             }
-            c.commit();
+        }
+    }
+
+    /** The document row whose original, extracted or summary file is {@code path}, if its summary is still pending. */
+    public Map<String, Object> findPendingSummaryByPath(String path) throws SQLException {
+        String sql = "SELECT * FROM documents WHERE summary_status = 'pending' " +
+                "AND (stored_input_path = ? OR extracted_path = ? OR summary_path = ?) LIMIT 1";
+        try (Connection c = DriverManager.getConnection(jdbcUrl);
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, path);
+            ps.setString(2, path);
+            ps.setString(3, path);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rowToMap(rs) : null;
+            }
         }
     }
 
@@ -539,6 +1116,7 @@ public class StorageManager {
 
     public void deleteByPath(String storedInputPath) throws SQLException, IOException {
         String sel = "SELECT extracted_path, summary_path FROM documents WHERE stored_input_path=?";
+        String dequeue = "DELETE FROM enrichment_queue WHERE document_sha256 IN (SELECT sha256 FROM documents WHERE stored_input_path=?)";
         String del = "DELETE FROM documents WHERE stored_input_path=?";
         try (Connection c = DriverManager.getConnection(jdbcUrl)) {
             String extractedPath = null, summaryPath = null;
@@ -554,6 +1132,10 @@ public class StorageManager {
             safeDelete(extractedPath);
             safeDelete(summaryPath);
             safeDelete(storedInputPath);
+            try (PreparedStatement ps1 = c.prepareStatement(dequeue)) {
+                ps1.setString(1, storedInputPath);
+                ps1.executeUpdate();
+            }
             try (PreparedStatement ps2 = c.prepareStatement(del)) {
                 ps2.setString(1, storedInputPath);
                 ps2.executeUpdate();
@@ -565,9 +1147,12 @@ public class StorageManager {
         try (Connection c = DriverManager.getConnection(jdbcUrl);
              Statement s = c.createStatement()) {
             s.execute("DELETE FROM documents");
+            s.execute("DELETE FROM enrichment_queue");
+            s.execute("DELETE FROM jobs");
         }
         // wipe only under data/Users (keep db structure)
         deleteDirectory(usersRoot);
+        deleteDirectory(jobsDir);
         ensureDirs();
     }
 
@@ -605,7 +1190,7 @@ public class StorageManager {
         Map<String, Object> m = new LinkedHashMap<>();
         ResultSetMetaData md = rs.getMetaData();
         for (int i = 1; i <= md.getColumnCount(); i++) {
-            m.put(md.getColumnName(i), rs.getObject(i));
+            m.put(md.getColumnLabel(i), rs.getObject(i));
         }
         return m;
     }
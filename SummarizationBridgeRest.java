@@ -1,235 +1,435 @@
 package org.example.core;
 
 import com.google.gson.*;
-import java.net.http.*;
 import java.net.URI;
 import java.time.Duration;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class SummarizationBridgeRest {
-    private static final HttpClient HTTP = HttpClient.newBuilder()
-            .connectTimeout(Duration.ofSeconds(20)).build();
+    private static final ResilientTransport TRANSPORT = ResilientTransport.shared();
     private static final Gson GSON = new Gson();
+    // Bump when the prompt wording changes so cached responses are not reused
+    static final String PROMPT_TEMPLATE_VERSION = "summarize-v1";
+    // Partial summaries of content-defined chunks are memoized by chunk text alone (not by
+    // output budget, which moves with the chunk count); bump when CHUNK_PROMPT changes
+    static final String PARTIAL_TEMPLATE_VERSION = "partial-v1";
+    // No PART i/N here: the prompt, and so the memo key, must not depend on the chunk's position
+    private static final String CHUNK_PROMPT = "Summarize this section of a legal document. Focus on key legal points, " +
+            "parties, obligations, and important clauses:\n\n";
+    private static final String SUMMARY_CONTENTS = "Parties involved, Purpose/Intent, Key obligations and rights, " +
+            "Important dates/deadlines, Financial amounts if any, Termination clauses, and Overall significance";
+    private static final String SINGLE_PROMPT = "As a legal expert, provide a comprehensive summary of this legal document. " +
+            "Include: " + SUMMARY_CONTENTS + ".\n\n";
+    // label + reason on top of the summary budget
+    private static final int COMBINED_EXTRA_TOKENS = 256;
+    private static final LlmResponseCache CACHE = LlmResponseCache.shared();
 
     private final String projectId;
     private final String location;
     private final String modelId;
+    private final SummarizationPlanner planner;
 
     public SummarizationBridgeRest(String projectId, String location, String modelId) {
         this.projectId = projectId;
         this.location = location;
         this.modelId = modelId;
+        this.planner = new SummarizationPlanner(SummarizationPlanner.ModelLimits.forModel(modelId));
     }
 
+    public SummarizationPlanner getPlanner() { return planner; }
+    public String getProjectId() { return projectId; }
+    public String getLocation() { return location; }
+    public String getModelId() { return modelId; }
+
+    /**
+     * Single-call summary request for a batch prediction job. Batch output can't feed a
+     * map-reduce merge, so documents over the single-call budget are cut down with TextRank.
+     */
+    public BatchPredictionRunner.Item batchItem(String text) {
+        text = precompress(text == null ? "" : text.trim());
+        int budget = planner.maxSingleCallChars();
+        if (text.length() > budget) {
+            text = new TextRankSummarizer().compress(text, budget * 95 / 100);
+        }
+        SummarizationPlanner.Plan plan = planner.plan(text.length());
+        return new BatchPredictionRunner.Item("summary", Prompt.of(SINGLE_PROMPT, text), generationConfig(plan.finalOutputTokens));
+    }
+
+    /** Plan-driven summary: the planner picks single-call vs map-reduce and all budgets. */
+    public String summarize(String text, String accessToken, int timeoutSec) throws Exception {
+        return smartSummarize(text, accessToken, 0, timeoutSec, null);
+    }
+
+    /** Same, recording each call's token usage in {@code ledger} (may be null). */
+    public String summarize(String text, String accessToken, int timeoutSec, UsageLedger ledger) throws Exception {
+        return smartSummarize(text, accessToken, 0, timeoutSec, ledger);
+    }
+
+    /**
+     * @param maxOutTokens optional cap on any single output budget (<= 0 lets the planner decide)
+     */
     public String smartSummarize(String text, String accessToken, int maxOutTokens, int timeoutSec) throws Exception {
+        return smartSummarize(text, accessToken, maxOutTokens, timeoutSec, null);
+    }
+
+    public String smartSummarize(String text, String accessToken, int maxOutTokens, int timeoutSec,
+                                 UsageLedger ledger) throws Exception {
         if (text == null) text = "";
         text = text.trim();
         if (text.isEmpty()) return "[No input text]";
 
-        // If text is short, process in one go
-        if (text.length() <= 12000) {
-            String prompt = "As a legal expert, provide a comprehensive summary of this legal document. " +
-                    "Include: Parties involved, Purpose/Intent, Key obligations and rights, Important dates/deadlines, " +
-                    "Financial amounts if any, Termination clauses, and Overall significance.\n\n" + text;
-
-            return generateOnce(prompt, accessToken, maxOutTokens, timeoutSec);
-        }
+        text = precompress(text);
+        SummarizationPlanner.Plan plan = planner.plan(text.length(), maxOutTokens);
+        System.out.println("🧭 Summarization plan: " + plan);
+        return execute(plan, text, accessToken, timeoutSec, null, ledger).text;
+    }
 
-        // For longer documents, use chunking with better overlap
-        final int CHUNK_SIZE = 4000;
-        final int OVERLAP = 500;
-        List<String> chunks = splitChunksWithOverlap(text, CHUNK_SIZE, OVERLAP);
-        List<String> partials = new ArrayList<>();
+    /**
+     * Streaming variant: the single call (or the final merge of a map-reduce plan) goes
+     * through streamGenerateContent and each text delta is handed to {@code onDelta} as it
+     * arrives. The returned text is the complete summary, identical to the blocking path.
+     */
+    public MapReduceSummarizer.Result summarizeStreaming(String text, String accessToken, int timeoutSec,
+                                                         Consumer<String> onDelta) throws Exception {
+        return summarizeStreaming(text, accessToken, timeoutSec, onDelta, null);
+    }
 
-        for (int i = 0; i < chunks.size(); i++) {
-            String chunk = chunks.get(i);
-            String prompt = String.format("Summarize this PART %d/%d of a legal document. Focus on key legal points, " +
-                            "parties, obligations, and important clauses:\n\n%s",
-                    i + 1, chunks.size(), chunk);
+    public MapReduceSummarizer.Result summarizeStreaming(String text, String accessToken, int timeoutSec,
+                                                         Consumer<String> onDelta, UsageLedger ledger) throws Exception {
+        if (text == null) text = "";
+        text = precompress(text.trim());
+        SummarizationPlanner.Plan plan = planner.plan(text.length());
+        System.out.println("🧭 Summarization plan (streaming): " + plan);
+        return execute(plan, text, accessToken, timeoutSec, onDelta, ledger);
+    }
 
-            String s = generateOnce(prompt, accessToken, Math.min(2000, maxOutTokens), timeoutSec);
-            if (s != null && !s.trim().isEmpty()) {
-                partials.add(s.trim());
-            }
+    /** Label, reason and summary from one structured call. */
+    public static final class Combined {
+        public final String label;
+        public final String reason;
+        public final String summary;
 
-            // Small delay to avoid rate limiting
-            try { Thread.sleep(500); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        Combined(String label, String reason, String summary) {
+            this.label = label;
+            this.reason = reason;
+            this.summary = summary;
         }
-
-        if (partials.size() == 1) return partials.get(0);
-
-        // Merge partial summaries
-        String join = String.join("\n\n", partials);
-        String mergePrompt = "Combine the following partial summaries into one cohesive, comprehensive legal document summary. " +
-                "Remove repetition but preserve all important legal details, parties, obligations, dates, and clauses. " +
-                "Ensure the final summary flows naturally as a single document:\n\n" + join;
-
-        String merged = generateOnce(mergePrompt, accessToken, maxOutTokens, timeoutSec);
-        return (merged == null || merged.isBlank()) ? String.join("\n\n", partials) : merged.trim();
     }
 
-    private static List<String> splitChunksWithOverlap(String s, int chunkSize, int overlap) {
-        List<String> out = new ArrayList<>();
-        int i = 0;
-        while (i < s.length()) {
-            int end = Math.min(i + chunkSize, s.length());
+    /** True when {@link #classifyAndSummarize} would send {@code text} as one request rather than give up on it. */
+    public boolean fitsCombinedCall(String text) {
+        String t = text == null ? "" : precompress(text.trim());
+        return !t.isEmpty() && planner.plan(t.length()).mode == SummarizationPlanner.Mode.SINGLE;
+    }
 
-            // Try to break at sentence boundary if possible
-            if (end < s.length()) {
-                int sentenceEnd = findSentenceBoundary(s, end - 100, end + 100);
-                if (sentenceEnd > end - 500) { // Only use if it's reasonably close
-                    end = sentenceEnd;
-                }
+    /**
+     * Classify and summarize in one request whose responseSchema is {label, reason, summary},
+     * so the document is sent once instead of to the classifier and the summarizer separately.
+     * Returns null when the document needs map-reduce or the answer is unusable; the caller
+     * then keeps the separate classify + summarize path.
+     */
+    public Combined classifyAndSummarize(String text, String[] allowedLabels, String accessToken, int timeoutSec,
+                                         UsageLedger ledger) throws Exception {
+        if (text == null) text = "";
+        text = precompress(text.trim());
+        if (text.isEmpty()) return null;
+        SummarizationPlanner.Plan plan = planner.plan(text.length());
+        if (plan.mode != SummarizationPlanner.Mode.SINGLE) return null;
+
+        String instruction = "As a legal expert, read the legal document below and return JSON with:\n" +
+                "- label: exactly ONE of: " + String.join(", ", allowedLabels) + "\n" +
+                "- reason: a short reason for the label\n" +
+                "- summary: a comprehensive summary covering " + SUMMARY_CONTENTS + ".\n\nDocument:\n";
+
+        JsonObject cfg = generationConfig(plan.finalOutputTokens + COMBINED_EXTRA_TOKENS);
+        cfg.addProperty("responseMimeType", "application/json");
+        cfg.add("responseSchema", combinedSchema(allowedLabels));
+
+        String out = generate(Prompt.of(instruction, text), accessToken, cfg, timeoutSec, UsageLedger.COMBINED, ledger);
+        try {
+            JsonObject obj = JsonParser.parseString(out).getAsJsonObject();
+            String label = obj.has("label") && !obj.get("label").isJsonNull() ? obj.get("label").getAsString().trim() : null;
+            String reason = obj.has("reason") && !obj.get("reason").isJsonNull() ? obj.get("reason").getAsString() : null;
+            String summary = obj.has("summary") && !obj.get("summary").isJsonNull() ? obj.get("summary").getAsString().trim() : null;
+            String allowed = null;
+            for (String l : allowedLabels) if (l.equalsIgnoreCase(label)) allowed = l;
+            if (allowed == null || summary == null || summary.isEmpty()) {
+                System.err.println("⚠️ Combined answer missing label or summary; falling back to separate calls");
+                return null;
             }
+            return new Combined(allowed, reason, summary);
+        } catch (Exception e) {
+            // blocked / empty answers come back as bracketed notes rather than JSON
+            System.err.println("⚠️ Combined answer not JSON (" + abbreviate(out) + "); falling back to separate calls");
+            return null;
+        }
+    }
 
-            out.add(s.substring(i, end));
+    private static JsonObject combinedSchema(String[] allowedLabels) {
+        JsonObject str = new JsonObject();
+        str.addProperty("type", "STRING");
+        JsonObject label = str.deepCopy();
+        JsonArray labels = new JsonArray();
+        for (String l : allowedLabels) labels.add(l);
+        label.add("enum", labels);
+
+        JsonObject props = new JsonObject();
+        props.add("label", label);
+        props.add("reason", str.deepCopy());
+        props.add("summary", str.deepCopy());
+        JsonArray order = new JsonArray();
+        order.add("label");
+        order.add("reason");
+        order.add("summary");
+
+        JsonObject schema = new JsonObject();
+        schema.addProperty("type", "OBJECT");
+        schema.add("properties", props);
+        schema.add("required", order.deepCopy());
+        schema.add("propertyOrdering", order);
+        return schema;
+    }
 
-            if (end >= s.length()) break;
+    private static String abbreviate(String s) {
+        if (s == null) return "null";
+        return s.length() <= 80 ? s : s.substring(0, 80) + "…";
+    }
 
-            // Move forward with overlap
-            i = Math.max(i + 1, end - overlap);
-        }
-        return out;
+    /** Very long documents are cut down to their most central passages locally before paying for tokens. */
+    private String precompress(String text) {
+        int target = planner.precompressTargetChars(text.length());
+        if (target <= 0) return text;
+        long t0 = System.nanoTime();
+        String compressed = new TextRankSummarizer().compress(text, target);
+        System.out.println("🗜️ TextRank pre-compression: " + text.length() + " -> " + compressed.length() + " chars in "
+                + (System.nanoTime() - t0) / 1_000_000 + " ms");
+        return compressed;
     }
 
-    private static int findSentenceBoundary(String text, int start, int end) {
-        if (end > text.length()) end = text.length();
-        String segment = text.substring(start, end);
+    public MapReduceSummarizer.Result execute(SummarizationPlanner.Plan plan, String text, String accessToken, int timeoutSec) throws Exception {
+        return execute(plan, text, accessToken, timeoutSec, null, null);
+    }
 
-        // Look for sentence endings
-        int lastPeriod = segment.lastIndexOf('.');
-        int lastQuestion = segment.lastIndexOf('?');
-        int lastExclamation = segment.lastIndexOf('!');
-        int lastNewline = segment.lastIndexOf('\n');
+    /**
+     * Run a plan. Map-reduce chunks are summarized concurrently behind the shared Vertex
+     * rate limiter and merged as a tree; per-call timing/token stats come back with the text.
+     * When {@code onDelta} is non-null the user-visible call is streamed. Token usage of every
+     * call is recorded in {@code ledger} when it is non-null.
+     */
+    public MapReduceSummarizer.Result execute(SummarizationPlanner.Plan plan, String text, String accessToken,
+                                              int timeoutSec, Consumer<String> onDelta, UsageLedger ledger) throws Exception {
+        long t0 = System.nanoTime();
+        AtomicLong firstTokenMs = new AtomicLong(-1);
+        MapReduceSummarizer.Generator visible = onDelta == null
+                ? (stage, prompt, maxTokens) -> generateOnce(prompt, accessToken, maxTokens, timeoutSec, meterStage(stage), ledger)
+                : (stage, prompt, maxTokens) -> generateStreaming(prompt, accessToken, maxTokens, timeoutSec, delta -> {
+                    firstTokenMs.compareAndSet(-1, (System.nanoTime() - t0) / 1_000_000);
+                    onDelta.accept(delta);
+                }, meterStage(stage), ledger);
+
+        if (plan.mode == SummarizationPlanner.Mode.EMPTY) {
+            return new MapReduceSummarizer.Result("[No input text]", List.of(), 0);
+        }
+        if (plan.mode == SummarizationPlanner.Mode.SINGLE) {
+            Prompt prompt = Prompt.of(SINGLE_PROMPT, text);
+            String out = visible.generate("single", prompt, plan.finalOutputTokens);
+            long ms = (System.nanoTime() - t0) / 1_000_000;
+            return new MapReduceSummarizer.Result(out,
+                    List.of(new MapReduceSummarizer.CallStat("single", 0, ms, prompt.length(), out == null ? 0 : out.length())),
+                    ms, firstTokenMs.get());
+        }
 
-        int boundary = Math.max(Math.max(lastPeriod, lastQuestion), Math.max(lastExclamation, lastNewline));
-        if (boundary != -1) {
-            return start + boundary + 1; // +1 to include the punctuation
+        BoundaryIndex index = BoundaryIndex.build(text);
+        List<TextChunker.Chunk> chunks;
+        MapReduceSummarizer.ChunkPrompt chunkPrompt;
+        AtomicInteger reused = new AtomicInteger();
+        MapReduceSummarizer mr;
+        if (plan.contentDefined) {
+            chunks = TextChunker.chunkContentDefined(index, plan.chunkChars, plan.maxChunkChars);
+            chunkPrompt = (i, total, chunk) -> Prompt.of(CHUNK_PROMPT, chunk);
+            // only chunks whose text changed reach the model; merges are cached by their full prompt
+            mr = new MapReduceSummarizer((stage, prompt, maxTokens) -> "map".equals(stage)
+                    ? generateCached(LlmResponseCache.key(modelId, "partial", PARTIAL_TEMPLATE_VERSION, prompt), prompt,
+                        accessToken, generationConfig(maxTokens), timeoutSec, UsageLedger.CHUNK, ledger, reused)
+                    : generateOnce(prompt, accessToken, maxTokens, timeoutSec, meterStage(stage), ledger));
+        } else {
+            chunks = TextChunker.chunkWithOverlap(index, plan.chunkChars, plan.overlapChars);
+            chunkPrompt = (i, total, chunk) -> Prompt.of(String.format("Summarize this PART %d/%d of a legal document. Focus on key legal points, " +
+                    "parties, obligations, and important clauses:\n\n", i + 1, total), chunk);
+            mr = new MapReduceSummarizer(
+                    (stage, prompt, maxTokens) -> generateOnce(prompt, accessToken, maxTokens, timeoutSec, meterStage(stage), ledger));
         }
 
-        // Fallback: look for paragraph break
-        int doubleNewline = segment.lastIndexOf("\n\n");
-        if (doubleNewline != -1) {
-            return start + doubleNewline + 2;
+        MapReduceSummarizer.Result res = mr.summarize(chunks, chunkPrompt,
+                plan.chunkOutputTokens, plan.finalOutputTokens, plan.mergeBudgetChars, visible);
+
+        // No final merge was needed: hand the whole summary over in one piece
+        if (onDelta != null && firstTokenMs.get() < 0 && res.text != null && !res.text.isEmpty()) {
+            firstTokenMs.set((System.nanoTime() - t0) / 1_000_000);
+            onDelta.accept(res.text);
         }
 
-        return end; // No good boundary found
+        System.out.println("📚 Map-reduce summary: " + chunks.size() + " chunks"
+                + (plan.contentDefined ? " (" + reused.get() + " reused)" : "") + ", " + res.calls.size()
+                + " calls, " + res.wallMs + " ms wall");
+        return new MapReduceSummarizer.Result(res.text, res.calls, res.wallMs, firstTokenMs.get());
     }
 
-  
-    private String generateOnce(String userText, String accessToken, int maxTokens, int timeoutSec) throws Exception {
+    /** Map-reduce stage name to metering stage. */
+    private static String meterStage(String stage) {
+        if ("single".equals(stage)) return UsageLedger.SINGLE;
+        return "map".equals(stage) ? UsageLedger.CHUNK : UsageLedger.MERGE;
+    }
+
+    private String endpoint(String method) {
         // Use Vertex AI endpoint instead of direct Gemini API
-        String url = String.format("https://%s-aiplatform.googleapis.com/v1/projects/%s/locations/%s/publishers/google/models/%s:generateContent",
-                location, projectId, location, modelId);
+        return String.format("https://%s-aiplatform.googleapis.com/v1/projects/%s/locations/%s/publishers/google/models/%s:%s",
+                location, projectId, location, modelId, method);
+    }
 
+    private static JsonObject generationConfig(int maxTokens) {
         JsonObject cfg = new JsonObject();
         if (maxTokens > 0) {
             cfg.addProperty("maxOutputTokens", maxTokens);
         }
         cfg.addProperty("temperature", 0.2); // Lower temperature for more consistent legal summaries
+        return cfg;
+    }
 
-        JsonObject part = new JsonObject();
-        part.addProperty("text", userText);
-
-        JsonArray parts = new JsonArray();
-        parts.add(part);
-
-        JsonObject userMsg = new JsonObject();
-        userMsg.addProperty("role", "user");
-        userMsg.add("parts", parts);
+    private String generateOnce(CharSequence userText, String accessToken, int maxTokens, int timeoutSec,
+                                String stage, UsageLedger ledger) throws Exception {
+        return generate(userText, accessToken, generationConfig(maxTokens), timeoutSec, stage, ledger);
+    }
 
-        JsonArray contents = new JsonArray();
-        contents.add(userMsg);
+    private String generate(CharSequence userText, String accessToken, JsonObject cfg, int timeoutSec,
+                            String stage, UsageLedger ledger) throws Exception {
+        return generateCached(LlmResponseCache.key(modelId, cfg.toString(), PROMPT_TEMPLATE_VERSION, userText),
+                userText, accessToken, cfg, timeoutSec, stage, ledger, null);
+    }
 
-        JsonObject body = new JsonObject();
-        body.add("contents", contents);
-        body.add("generationConfig",cfg);
+    /** generateContent behind the response cache under {@code cacheKey}; {@code hits} counts cache hits when non-null. */
+    private String generateCached(String cacheKey, CharSequence userText, String accessToken, JsonObject cfg, int timeoutSec,
+                                  String stage, UsageLedger ledger, AtomicInteger hits) throws Exception {
+        String url = endpoint("generateContent");
 
-        HttpRequest req = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .timeout(Duration.ofSeconds(timeoutSec))
-                .header("Authorization", "Bearer " + accessToken)
-                .header("Content-Type", "application/json; charset=utf-8")
-                .POST(HttpRequest.BodyPublishers.ofString(body.toString(), StandardCharsets.UTF_8))
-                .build();
+        String cached = CACHE.get(cacheKey);
+        if (cached != null) {
+            System.out.println("♻️ [Vertex AI] Cache hit (" + CACHE.stats() + ")");
+            if (hits != null) hits.incrementAndGet();
+            return cached;
+        }
 
-        HttpResponse<String> resp = HTTP.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        long t0 = System.nanoTime();
+        GoogleApiTransport.Response resp = TRANSPORT.send("vertex.generateContent", URI.create(url), accessToken,
+                GenerateContentJson.body(userText, cfg), Duration.ofSeconds(timeoutSec), true);
 
-        if (resp.statusCode() != 200) {
-            System.err.println("[Vertex AI DEBUG] HTTP " + resp.statusCode() + " body:\n" + resp.body());
-            throw new java.io.IOException("Vertex AI API error: HTTP " + resp.statusCode() + " -> " + resp.body());
+        if (resp.statusCode != 200) {
+            System.err.println("[Vertex AI DEBUG] HTTP " + resp.statusCode + " body:\n" + resp.body);
+            throw new java.io.IOException("Vertex AI API error: HTTP " + resp.statusCode + " -> " + resp.body);
         }
 
-        JsonObject root = JsonParser.parseString(resp.body()).getAsJsonObject();
+        GenerateContentJson.Reply reply = GenerateContentJson.read(resp.body);
+        // blocked and empty answers still bill the prompt
+        UsageLedger.record(ledger, stage, modelId, reply.usage, (System.nanoTime() - t0) / 1_000_000);
 
         // Handle safety filters
-        if (root.has("promptFeedback")) {
-            JsonObject pf = root.getAsJsonObject("promptFeedback");
-            if (pf.has("blockReason") && !pf.get("blockReason").isJsonNull()) {
-                String blockReason = pf.get("blockReason").getAsString();
-                System.err.println("[Vertex AI DEBUG] Content blocked: " + blockReason);
-                return "[Summary blocked for safety: " + blockReason + "]";
-            }
+        if (reply.blockReason != null) {
+            System.err.println("[Vertex AI DEBUG] Content blocked: " + reply.blockReason);
+            return "[Summary blocked for safety: " + reply.blockReason + "]";
         }
 
-        if (!root.has("candidates")) {
-            System.err.println("[Vertex AI DEBUG] No candidates. Raw:\n" + resp.body());
+        if (!reply.hasCandidates) {
+            System.err.println("[Vertex AI DEBUG] No candidates. Raw:\n" + resp.body);
             return "[No candidates returned]";
         }
 
-        JsonArray cands = root.getAsJsonArray("candidates");
-        if (cands.size() == 0) {
-            System.err.println("[Vertex AI DEBUG] Empty candidates array. Raw:\n" + resp.body());
-            return "[No candidates returned]";
+        boolean complete = "STOP".equals(reply.finishReason);
+        if (!complete) {
+            System.err.println("[Vertex AI DEBUG] Non-STOP finish reason: " + reply.finishReason);
         }
 
-        // Process first candidate
-        JsonObject cand = cands.get(0).getAsJsonObject();
+        String result = reply.text.trim();
+        if (!result.isEmpty()) {
+            // a truncated (MAX_TOKENS) or filtered answer must not be replayed on the next run
+            if (complete) CACHE.put(cacheKey, result);
+            return result;
+        }
 
-        // Check finish reason
-        if (cand.has("finishReason") && !cand.get("finishReason").isJsonNull()) {
-            String finishReason = cand.get("finishReason").getAsString();
-            if (!"STOP".equals(finishReason)) {
-                System.err.println("[Vertex AI DEBUG] Non-STOP finish reason: " + finishReason);
-            }
+        System.err.println("[Vertex AI DEBUG] No valid content found. Raw:\n" + resp.body);
+        return "[No valid content in response]";
+    }
+
+    /**
+     * streamGenerateContent over server-sent events. Each event is a partial response;
+     * its text parts are forwarded to {@code onDelta} and accumulated. Shares the cache
+     * with generateOnce, so a cached answer is emitted as a single delta.
+     */
+    private String generateStreaming(CharSequence userText, String accessToken, int maxTokens, int timeoutSec,
+                                     Consumer<String> onDelta, String stage, UsageLedger ledger) throws Exception {
+        JsonObject cfg = generationConfig(maxTokens);
+        String cacheKey = LlmResponseCache.key(modelId, cfg.toString(), PROMPT_TEMPLATE_VERSION, userText);
+        String cached = CACHE.get(cacheKey);
+        if (cached != null) {
+            System.out.println("♻️ [Vertex AI] Cache hit (" + CACHE.stats() + ")");
+            onDelta.accept(cached);
+            return cached;
         }
 
-        // Extract text content
-        if (cand.has("content")) {
-            JsonObject content = cand.getAsJsonObject("content");
-            if (content.has("parts")) {
-                JsonArray outParts = content.getAsJsonArray("parts");
-                StringBuilder sb = new StringBuilder();
-                for (int j = 0; j < outParts.size(); j++) {
-                    JsonObject p = outParts.get(j).getAsJsonObject();
-                    if (p.has("text") && !p.get("text").isJsonNull()) {
-                        sb.append(p.get("text").getAsString());
-                    }
+        StringBuilder sb = new StringBuilder();
+        String finishReason = null;
+        GenerateContentJson.Usage usage = GenerateContentJson.Usage.NONE;
+        long t0 = System.nanoTime();
+        try (GoogleApiTransport.StreamingResponse resp = TRANSPORT.stream("vertex.streamGenerateContent",
+                URI.create(endpoint("streamGenerateContent") + "?alt=sse"), accessToken,
+                GenerateContentJson.body(userText, cfg), Duration.ofSeconds(timeoutSec), "text/event-stream")) {
+            if (resp.statusCode != 200) {
+                String err = resp.readAll();
+                System.err.println("[Vertex AI DEBUG] HTTP " + resp.statusCode + " body:\n" + err);
+                throw new java.io.IOException("Vertex AI API error: HTTP " + resp.statusCode + " -> " + err);
+            }
+
+            Iterator<String> it = resp.lines().iterator();
+            while (it.hasNext()) {
+                String line = it.next();
+                if (!line.startsWith("data:")) continue;   // blank separators / comments
+                String json = line.substring(5).trim();
+                if (json.isEmpty()) continue;
+
+                GenerateContentJson.Reply ev = GenerateContentJson.read(json);
+                // cumulative; the last event carries the final counts
+                if (ev.usage != GenerateContentJson.Usage.NONE) usage = ev.usage;
+                if (ev.blockReason != null) {
+                    UsageLedger.record(ledger, stage, modelId, usage, (System.nanoTime() - t0) / 1_000_000);
+                    System.err.println("[Vertex AI DEBUG] Content blocked: " + ev.blockReason);
+                    return "[Summary blocked for safety: " + ev.blockReason + "]";
                 }
-                String result = sb.toString().trim();
-                if (!result.isEmpty()) return result;
+                if (ev.finishReason != null) finishReason = ev.finishReason;
+                if (ev.text.isEmpty()) continue;
+                sb.append(ev.text);
+                onDelta.accept(ev.text);
             }
         }
 
-        System.err.println("[Vertex AI DEBUG] No valid content found. Raw:\n" + resp.body());
-        return "[No valid content in response]";
-    }
-
-    private static List<String> splitChunks(String s, int chunkSize) {
-        List<String> out = new ArrayList<>();
-        int i = 0;
-        while (i < s.length()) {
-            int end = Math.min(i + chunkSize, s.length());
-            out.add(s.substring(i, end));
-            i = end;
+        UsageLedger.record(ledger, stage, modelId, usage, (System.nanoTime() - t0) / 1_000_000);
+        boolean complete = "STOP".equals(finishReason);
+        if (!complete) {
+            System.err.println("[Vertex AI DEBUG] Non-STOP finish reason: " + finishReason);
+        }
+        String result = sb.toString().trim();
+        if (result.isEmpty()) {
+            System.err.println("[Vertex AI DEBUG] Stream ended without content");
+            return "[No valid content in response]";
         }
-        return out;
+        if (complete) CACHE.put(cacheKey, result);
+        return result;
     }
 
     // Helper method to maintain backward compatibility
     public String summarizeWithToken(String text, String accessToken, int maxOutputTokens, int timeoutSeconds) throws Exception {
-        return smartSummarize(text, accessToken, maxOutputTokens, timeoutSeconds);
+        return smartSummarize(text, accessToken, maxOutputTokens, timeoutSeconds, null);
     }
 }
\ No newline at end of file
@@ -0,0 +1,195 @@
+package org.example.core;
+
+/**
+ * SummarizationPlanner — turns a document size and the model's context limits into an
+ * explicit plan: single call or map-reduce, chunk size, overlap, output budgets and
+ * merge depth. The REST bridge executes the plan as-is, so this is the one place where
+ * chunking and token budgets are decided.
+ */
+public class SummarizationPlanner {
+
+    /** Context/output limits of a model, plus how many chars a token averages. */
+    public static class ModelLimits {
+        public final String modelId;
+        public final int maxInputTokens;
+        public final int maxOutputTokens;
+        public final double charsPerToken;
+
+        public ModelLimits(String modelId, int maxInputTokens, int maxOutputTokens, double charsPerToken) {
+            this.modelId = modelId;
+            this.maxInputTokens = maxInputTokens;
+            this.maxOutputTokens = maxOutputTokens;
+            this.charsPerToken = charsPerToken;
+        }
+
+        public static ModelLimits forModel(String modelId) {
+            String m = modelId == null ? "" : modelId.toLowerCase();
+            if (m.startsWith("gemini-2.5")) return new ModelLimits(modelId, 1_048_576, 65_536, 4.0);
+            if (m.startsWith("gemini-2.0") || m.startsWith("gemini-1.5")) return new ModelLimits(modelId, 1_048_576, 8_192, 4.0);
+            return new ModelLimits(modelId, 32_768, 8_192, 4.0);
+        }
+    }
+
+    public enum Mode { EMPTY, SINGLE, MAP_REDUCE }
+
+    /** The plan handed to the executor. Sizes in chars are derived from token budgets. */
+    public static class Plan {
+        public final Mode mode;
+        public final int estimatedInputTokens;
+        public final int chunkChars;
+        public final int overlapChars;
+        // content-defined chunking: chunkChars is the average, maxChunkChars the hard cap
+        public final boolean contentDefined;
+        public final int maxChunkChars;
+        public final int chunkCount;
+        public final int chunkOutputTokens;
+        public final int finalOutputTokens;
+        public final int mergeBudgetChars;
+        public final int mergeDepth;
+        public final int estimatedCalls;
+
+        Plan(Mode mode, int estimatedInputTokens, int chunkChars, int overlapChars, int chunkCount,
+             int chunkOutputTokens, int finalOutputTokens, int mergeBudgetChars, int mergeDepth, int estimatedCalls) {
+            this(mode, estimatedInputTokens, chunkChars, overlapChars, false, chunkChars, chunkCount,
+                    chunkOutputTokens, finalOutputTokens, mergeBudgetChars, mergeDepth, estimatedCalls);
+        }
+
+        Plan(Mode mode, int estimatedInputTokens, int chunkChars, int overlapChars, boolean contentDefined, int maxChunkChars,
+             int chunkCount, int chunkOutputTokens, int finalOutputTokens, int mergeBudgetChars, int mergeDepth, int estimatedCalls) {
+            this.mode = mode;
+            this.estimatedInputTokens = estimatedInputTokens;
+            this.chunkChars = chunkChars;
+            this.overlapChars = overlapChars;
+            this.contentDefined = contentDefined;
+            this.maxChunkChars = maxChunkChars;
+            this.chunkCount = chunkCount;
+            this.chunkOutputTokens = chunkOutputTokens;
+            this.finalOutputTokens = finalOutputTokens;
+            this.mergeBudgetChars = mergeBudgetChars;
+            this.mergeDepth = mergeDepth;
+            this.estimatedCalls = estimatedCalls;
+        }
+
+        @Override
+        public String toString() {
+            return mode + " ~" + estimatedInputTokens + " input tokens, " + chunkCount + " chunk(s) of "
+                    + (contentDefined ? "~" + chunkChars + " chars (content-defined, max " + maxChunkChars + ")"
+                                      : chunkChars + " chars (overlap " + overlapChars + ")")
+                    + ", chunk out " + chunkOutputTokens + ", final out "
+                    + finalOutputTokens + ", merge depth " + mergeDepth + ", ~" + estimatedCalls + " call(s)";
+        }
+    }
+
+    // Practical per-call input cap; long prompts hurt latency and recall well before the hard limit
+    private static final int DEFAULT_MAX_INPUT_TOKENS_PER_CALL = Integer.getInteger("summarize.maxInputTokensPerCall", 120_000);
+    private static final int PROMPT_OVERHEAD_TOKENS = 200;
+    // gemini-2.5 "thinking" is billed against maxOutputTokens, so budgets carry headroom for it
+    private static final int THINKING_RESERVE_TOKENS = Integer.getInteger("summarize.thinkingReserveTokens", 8_000);
+    private static final int SUMMARY_TOKENS = 2_000;
+    private static final int MIN_PARTIAL_TOKENS = 300;
+    private static final int MERGE_INPUT_TOKENS = 30_000;
+    // Documents above this are pre-compressed with TextRank before any LLM call (0 disables)
+    private static final int PRECOMPRESS_ABOVE_TOKENS = Integer.getInteger("summarize.precompressAboveTokens", 300_000);
+    private static final int PRECOMPRESS_TARGET_TOKENS = Integer.getInteger("summarize.precompressTargetTokens", 150_000);
+    // Content-defined chunks keep their cut points across edits, so partial summaries of
+    // unchanged regions can be reused; false restores balanced fixed windows with overlap
+    private static final boolean CONTENT_DEFINED_CHUNKS =
+            Boolean.parseBoolean(System.getProperty("summarize.contentDefinedChunks", "true"));
+
+    private final ModelLimits limits;
+    private final int maxInputTokensPerCall;
+
+    public SummarizationPlanner(ModelLimits limits) {
+        this(limits, DEFAULT_MAX_INPUT_TOKENS_PER_CALL);
+    }
+
+    public SummarizationPlanner(ModelLimits limits, int maxInputTokensPerCall) {
+        this.limits = limits;
+        this.maxInputTokensPerCall = maxInputTokensPerCall;
+    }
+
+    public ModelLimits getLimits() { return limits; }
+
+    public int estimateTokens(int chars) {
+        return (int) Math.ceil(chars / limits.charsPerToken);
+    }
+
+    public int charsForTokens(int tokens) {
+        return (int) (tokens * limits.charsPerToken);
+    }
+
+    /**
+     * Target size in chars for extractive pre-compression of a document this long,
+     * or 0 when it should go to the model as-is.
+     */
+    public int precompressTargetChars(int textChars) {
+        if (PRECOMPRESS_ABOVE_TOKENS <= 0 || estimateTokens(textChars) <= PRECOMPRESS_ABOVE_TOKENS) return 0;
+        return charsForTokens(Math.min(PRECOMPRESS_TARGET_TOKENS, PRECOMPRESS_ABOVE_TOKENS));
+    }
+
+    /** Largest document, in chars, that still goes out as a single call. */
+    public int maxSingleCallChars() {
+        int finalOut = capOutput(SUMMARY_TOKENS + THINKING_RESERVE_TOKENS, 0);
+        int perCall = Math.min(maxInputTokensPerCall, limits.maxInputTokens - finalOut - PROMPT_OVERHEAD_TOKENS);
+        return charsForTokens(perCall - PROMPT_OVERHEAD_TOKENS);
+    }
+
+    public Plan plan(int textChars) {
+        return plan(textChars, 0);
+    }
+
+    /**
+     * @param textChars       length of the (already cleaned) document text
+     * @param outputTokenCap  optional caller cap on any single output budget; <= 0 means none
+     */
+    public Plan plan(int textChars, int outputTokenCap) {
+        if (textChars <= 0) return new Plan(Mode.EMPTY, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+        int inputTokens = estimateTokens(textChars);
+        int finalOut = capOutput(SUMMARY_TOKENS + THINKING_RESERVE_TOKENS, outputTokenCap);
+        int perCall = Math.min(maxInputTokensPerCall,
+                limits.maxInputTokens - finalOut - PROMPT_OVERHEAD_TOKENS);
+
+        if (inputTokens + PROMPT_OVERHEAD_TOKENS <= perCall) {
+            return new Plan(Mode.SINGLE, inputTokens, textChars, 0, 1, 0, finalOut, 0, 0, 1);
+        }
+
+        // Balanced chunks: the fewest calls that fit, all of roughly the same size
+        int maxChunkTokens = perCall - PROMPT_OVERHEAD_TOKENS;
+        int chunkCount = (int) Math.ceil(inputTokens / (double) maxChunkTokens);
+        int overlapTokens = Math.min(500, perCall / 20);
+        int chunkTokens = (int) Math.ceil(inputTokens / (double) chunkCount) + overlapTokens;
+        chunkTokens = Math.min(chunkTokens, maxChunkTokens);
+        if (CONTENT_DEFINED_CHUNKS) {
+            // The average size must not follow the document length, or a small edit would move
+            // every cut: round the balanced size down to a power of two, which only changes when
+            // the document roughly doubles or halves. Chunks may grow to twice the average.
+            overlapTokens = 0;
+            chunkTokens = Integer.highestOneBit((int) Math.ceil(inputTokens / (double) chunkCount));
+            chunkCount = (int) Math.ceil(inputTokens / (double) chunkTokens);
+        }
+
+        // Partial summaries shrink as the count grows so the merge input stays bounded
+        int mergeInputTokens = Math.min(MERGE_INPUT_TOKENS, perCall);
+        int partialTokens = Math.max(MIN_PARTIAL_TOKENS, Math.min(SUMMARY_TOKENS, mergeInputTokens / chunkCount));
+        int chunkOut = capOutput(partialTokens + THINKING_RESERVE_TOKENS, outputTokenCap);
+
+        int fanIn = Math.max(2, mergeInputTokens / partialTokens);
+        int depth = 1;
+        int calls = chunkCount + 1;
+        for (int level = chunkCount; level > fanIn; level = (int) Math.ceil(level / (double) fanIn)) {
+            int merges = (int) Math.ceil(level / (double) fanIn);
+            calls += merges;
+            depth++;
+        }
+
+        return new Plan(Mode.MAP_REDUCE, inputTokens,
+                charsForTokens(chunkTokens), charsForTokens(overlapTokens), CONTENT_DEFINED_CHUNKS, charsForTokens(maxChunkTokens),
+                chunkCount, chunkOut, finalOut, charsForTokens(mergeInputTokens), depth, calls);
+    }
+
+    private int capOutput(int wanted, int cap) {
+        int v = Math.min(wanted, limits.maxOutputTokens);
+        return cap > 0 ? Math.min(v, cap) : v;
+    }
+}
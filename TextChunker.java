@@ -0,0 +1,143 @@
+package org.example.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TextChunker — offset-based chunking over a single CharSequence. Chunks are views
+ * (start/end into the source) and are only copied when they are finally serialized.
+ */
+public class TextChunker {
+
+    // Gear table for the content-defined cut hash; fixed seed, since memoized chunk
+    // summaries on disk depend on cuts being reproducible across runs
+    private static final long[] GEAR = new long[256];
+    static {
+        long x = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < GEAR.length; i++) {
+            // splitmix64
+            long z = (x += 0x9E3779B97F4A7C15L);
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    /** Zero-copy window onto the source text. */
+    public static final class Chunk implements CharSequence {
+        private final CharSequence source;
+        public final int start;
+        public final int end;
+
+        public Chunk(CharSequence source, int start, int end) {
+            if (start < 0 || end > source.length() || start > end) {
+                throw new IndexOutOfBoundsException("chunk [" + start + "," + end + ") of " + source.length());
+            }
+            this.source = source;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override public int length() { return end - start; }
+        @Override public char charAt(int index) { return source.charAt(start + index); }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new Chunk(source, start + from, start + to);
+        }
+
+        /** Materializes the chunk; avoid on hot paths. */
+        @Override
+        public String toString() {
+            return source.subSequence(start, end).toString();
+        }
+    }
+
+    private TextChunker() {}
+
+    /**
+     * Fixed-size windows with overlap, snapped to a nearby sentence/paragraph boundary
+     * (within +/-100 chars of the nominal end, and never more than 500 chars short).
+     */
+    public static List<Chunk> chunkWithOverlap(BoundaryIndex index, int chunkSize, int overlap) {
+        CharSequence s = index.text();
+        int n = s.length();
+        overlap = Math.max(0, Math.min(overlap, chunkSize / 2));
+        List<Chunk> out = new ArrayList<>();
+        int i = 0;
+        while (i < n) {
+            int end = Math.min(i + chunkSize, n);
+
+            // Try to break at sentence boundary if possible
+            if (end < n) {
+                int b = index.lastBoundaryIn(Math.max(i, end - 100), Math.min(n, end + 100));
+                if (b > end - 500 && b > i) end = b;
+            }
+
+            out.add(new Chunk(s, i, end));
+            if (end >= n) break;
+
+            // Move forward with overlap
+            i = Math.max(i + 1, end - overlap);
+        }
+        return out;
+    }
+
+    /**
+     * Content-defined chunks: no overlap, cuts only at sentence ends, and the cut points are
+     * chosen by a rolling (gear) hash over the last 64 chars rather than by offset. An edit
+     * therefore moves at most the cuts around it; before and after, the chunks come out
+     * byte-identical to those of the unedited text.
+     *
+     * A chunk is at least {@code targetChars / 2} long. From there the hash arms a cut with
+     * a probability per char chosen so chunks average about {@code targetChars}; the cut
+     * lands on the next sentence end. Chunks with no armed cut end at the last boundary
+     * before {@code maxChars} (or hard at {@code maxChars} inside one huge sentence).
+     */
+    public static List<Chunk> chunkContentDefined(BoundaryIndex index, int targetChars, int maxChars) {
+        CharSequence s = index.text();
+        int n = s.length();
+        int min = Math.max(1, targetChars / 2);
+        int max = Math.max(targetChars, Math.min(maxChars, 2 * targetChars));
+        // one armed cut per ~2^bits chars past the minimum
+        int bits = Math.max(1, 31 - Integer.numberOfLeadingZeros(Math.max(2, targetChars - min)));
+        long mask = -1L << (64 - bits);
+
+        List<Chunk> out = new ArrayList<>();
+        int start = 0;
+        while (start < n) {
+            int end = nextCut(index, start, min, max, mask);
+            out.add(new Chunk(s, start, end));
+            start = end;
+        }
+        return out;
+    }
+
+    private static int nextCut(BoundaryIndex index, int start, int min, int max, long mask) {
+        CharSequence s = index.text();
+        int n = s.length();
+        int limit = Math.min(n, start + max);
+        int from = Math.min(start + min, limit);
+
+        // The hash only depends on the 64 chars before a position (older ones shift out),
+        // so it is primed from the text itself, not from the chunk start
+        long h = 0;
+        for (int i = Math.max(0, from - 64); i < from; i++) h = (h << 1) + gear(s.charAt(i));
+
+        for (int i = from; i < limit; i++) {
+            h = (h << 1) + gear(s.charAt(i));
+            if ((h & mask) == 0) {
+                int end = index.nextSentenceEnd(i + 1);
+                if (end <= limit) return end;
+                break;
+            }
+        }
+        if (limit >= n) return n;
+        int b = index.lastBoundaryIn(start + min, limit);
+        return b > start ? b : limit;
+    }
+
+    private static long gear(char c) {
+        return GEAR[(c ^ (c >>> 8)) & 0xff];
+    }
+}
@@ -0,0 +1,293 @@
+package org.example.core;
+
+import java.util.Arrays;
+
+/**
+ * TextRankSummarizer — local extractive summarizer. Sentences come from {@link BoundaryIndex},
+ * each one becomes a hashed tf-idf vector (CSR layout in primitive arrays), a sparse cosine
+ * similarity graph keeps the strongest neighbours per sentence, and power iteration ranks
+ * them. Used as the fallback when Vertex is unavailable and as a pre-compressor that trims
+ * very long documents down to their most central passages before any LLM call.
+ */
+public class TextRankSummarizer {
+    private static final int HASH_BITS = 18;
+    private static final int HASH_MASK = (1 << HASH_BITS) - 1;
+    private static final int MIN_TOKENS = 3;          // shorter "sentences" (headings, numbers) are not ranked
+    private static final int MAX_NEIGHBOURS = 24;     // edges kept per sentence
+    private static final double DAMPING = 0.85;
+    private static final int MAX_ITERATIONS = 50;
+    private static final double EPSILON = 1e-6;
+
+    private static final String[] STOPWORDS = {
+            "the", "and", "of", "to", "in", "a", "an", "or", "for", "on", "by", "with", "as", "at", "be",
+            "is", "are", "was", "were", "this", "that", "these", "those", "it", "its", "from", "such", "any",
+            "all", "shall", "will", "may", "not", "no", "which", "who", "has", "have", "had", "been", "than",
+            "other", "into", "under", "upon", "their", "there", "if", "but", "so", "we", "our", "you", "your"
+    };
+    private static final int[] STOP_HASHES;
+    static {
+        STOP_HASHES = new int[STOPWORDS.length];
+        for (int i = 0; i < STOPWORDS.length; i++) STOP_HASHES[i] = hash(STOPWORDS[i], 0, STOPWORDS[i].length());
+        Arrays.sort(STOP_HASHES);
+    }
+
+    /** Ranked sentences of one document. Scores are indexed by sentence number. */
+    public static class Ranking {
+        public final BoundaryIndex index;
+        public final double[] scores;      // 0 for sentences that were not ranked
+        public final int[] order;          // ranked sentence numbers, best first
+
+        Ranking(BoundaryIndex index, double[] scores, int[] order) {
+            this.index = index;
+            this.scores = scores;
+            this.order = order;
+        }
+    }
+
+    public Ranking rank(CharSequence text) {
+        BoundaryIndex idx = BoundaryIndex.build(text);
+        int n = idx.sentenceCount();
+
+        // 1) tokenize every sentence into hashed term counts (CSR: rowStart / termIds / weights)
+        int[] rowStart = new int[n + 1];
+        IntBuffer terms = new IntBuffer(Math.max(16, text.length() / 6));
+        FloatBuffer weights = new FloatBuffer(Math.max(16, text.length() / 6));
+        int[] scratch = new int[256];
+        for (int s = 0; s < n; s++) {
+            int count = tokenize(text, idx.sentenceStart(s), idx.sentenceEnd(s), scratch);
+            if (count > scratch.length) {
+                scratch = new int[count];
+                count = tokenize(text, idx.sentenceStart(s), idx.sentenceEnd(s), scratch);
+            }
+            rowStart[s] = terms.size;
+            if (count >= MIN_TOKENS) {
+                Arrays.sort(scratch, 0, count);
+                for (int k = 0; k < count; ) {
+                    int t = scratch[k];
+                    int run = 1;
+                    while (k + run < count && scratch[k + run] == t) run++;
+                    terms.add(t);
+                    weights.add(run);
+                    k += run;
+                }
+            }
+        }
+        rowStart[n] = terms.size;
+
+        // 2) document frequencies and postings (sentence ids per term)
+        int[] df = new int[HASH_MASK + 1];
+        for (int k = 0; k < terms.size; k++) df[terms.a[k]]++;
+        int[] postStart = new int[HASH_MASK + 2];
+        for (int t = 0; t <= HASH_MASK; t++) postStart[t + 1] = postStart[t] + df[t];
+        int[] postings = new int[terms.size];
+        int[] fill = Arrays.copyOf(postStart, HASH_MASK + 1);
+        for (int s = 0; s < n; s++) {
+            for (int k = rowStart[s]; k < rowStart[s + 1]; k++) postings[fill[terms.a[k]]++] = s;
+        }
+
+        // 3) tf-idf weights, L2-normalized per sentence
+        int ranked = 0;
+        for (int s = 0; s < n; s++) if (rowStart[s + 1] > rowStart[s]) ranked++;
+        if (ranked == 0) return new Ranking(idx, new double[n], new int[0]);
+        for (int s = 0; s < n; s++) {
+            double norm = 0;
+            for (int k = rowStart[s]; k < rowStart[s + 1]; k++) {
+                double w = (1 + Math.log(weights.a[k])) * Math.log(1 + ranked / (double) df[terms.a[k]]);
+                weights.a[k] = (float) w;
+                norm += w * w;
+            }
+            if (norm > 0) {
+                float inv = (float) (1 / Math.sqrt(norm));
+                for (int k = rowStart[s]; k < rowStart[s + 1]; k++) weights.a[k] *= inv;
+            }
+        }
+
+        // 4) sparse similarity graph: accumulate dot products over shared terms, keep the top neighbours.
+        //    Terms present in a large share of sentences carry little signal and would make the graph dense.
+        int maxDf = Math.max(32, ranked / 5);
+        int[] nbrStart = new int[n + 1];
+        IntBuffer nbrIds = new IntBuffer(n * 8);
+        FloatBuffer nbrW = new FloatBuffer(n * 8);
+        float[] acc = new float[n];
+        int[] touched = new int[n];
+        int[] top = new int[MAX_NEIGHBOURS];
+        for (int s = 0; s < n; s++) {
+            nbrStart[s] = nbrIds.size;
+            int nt = 0;
+            for (int k = rowStart[s]; k < rowStart[s + 1]; k++) {
+                int t = terms.a[k];
+                if (df[t] > maxDf) continue;
+                float w = weights.a[k];
+                for (int p = postStart[t]; p < postStart[t + 1]; p++) {
+                    int o = postings[p];
+                    if (o == s) continue;
+                    if (acc[o] == 0) touched[nt++] = o;
+                    acc[o] += w * weightOf(terms.a, weights.a, rowStart[o], rowStart[o + 1], t);
+                }
+            }
+            int kept = selectTop(acc, touched, nt, top);
+            for (int k = 0; k < kept; k++) {
+                nbrIds.add(top[k]);
+                nbrW.add(acc[top[k]]);
+            }
+            for (int k = 0; k < nt; k++) acc[touched[k]] = 0;
+        }
+        nbrStart[n] = nbrIds.size;
+
+        // 5) power iteration over the row-normalized graph
+        double[] outSum = new double[n];
+        for (int s = 0; s < n; s++) {
+            for (int k = nbrStart[s]; k < nbrStart[s + 1]; k++) outSum[s] += nbrW.a[k];
+        }
+        double[] score = new double[n];
+        double[] next = new double[n];
+        double base = 1.0 / ranked;
+        for (int s = 0; s < n; s++) if (rowStart[s + 1] > rowStart[s]) score[s] = base;
+        for (int it = 0; it < MAX_ITERATIONS; it++) {
+            double dangling = 0;
+            Arrays.fill(next, 0);
+            for (int s = 0; s < n; s++) {
+                if (score[s] == 0) continue;
+                if (outSum[s] == 0) { dangling += score[s]; continue; }
+                double share = score[s] / outSum[s];
+                for (int k = nbrStart[s]; k < nbrStart[s + 1]; k++) next[nbrIds.a[k]] += share * nbrW.a[k];
+            }
+            double teleport = (1 - DAMPING) * base + DAMPING * dangling * base;
+            double delta = 0;
+            for (int s = 0; s < n; s++) {
+                if (rowStart[s + 1] == rowStart[s]) continue;
+                double v = teleport + DAMPING * next[s];
+                delta += Math.abs(v - score[s]);
+                next[s] = v;
+            }
+            double[] tmp = score; score = next; next = tmp;
+            if (delta < EPSILON) break;
+        }
+
+        Integer[] boxed = new Integer[ranked];
+        int r = 0;
+        for (int s = 0; s < n; s++) if (rowStart[s + 1] > rowStart[s]) boxed[r++] = s;
+        final double[] sc = score;
+        Arrays.sort(boxed, (a, b) -> a.equals(b) ? 0 : sc[a] != sc[b] ? Double.compare(sc[b], sc[a]) : Integer.compare(a, b));
+        int[] order = new int[ranked];
+        for (int k = 0; k < ranked; k++) order[k] = boxed[k];
+        return new Ranking(idx, score, order);
+    }
+
+    /** Top {@code maxSentences} sentences, in document order, as "- " bullets. */
+    public String summarize(String text, int maxSentences) {
+        if (text == null || text.isBlank()) return "";
+        Ranking r = rank(text);
+        int k = Math.min(maxSentences, r.order.length);
+        if (k == 0) return text.substring(0, Math.min(300, text.length())).trim();
+        int[] pick = Arrays.copyOf(r.order, k);
+        Arrays.sort(pick);
+        StringBuilder sb = new StringBuilder();
+        for (int s : pick) {
+            sb.append("- ").append(sentence(r.index, s)).append("\n");
+        }
+        return sb.toString().trim();
+    }
+
+    /**
+     * Shrink {@code text} to roughly {@code targetChars} by keeping the highest-ranked
+     * sentences in their original order. Gaps are marked with "[...]" so the model knows
+     * the passage is excerpted. Returns the text unchanged if it already fits.
+     */
+    public String compress(String text, int targetChars) {
+        if (text == null || text.length() <= targetChars) return text;
+        Ranking r = rank(text);
+        boolean[] keep = new boolean[r.index.sentenceCount()];
+        int used = 0;
+        for (int s : r.order) {
+            int len = r.index.sentenceEnd(s) - r.index.sentenceStart(s);
+            if (used + len > targetChars) continue;
+            keep[s] = true;
+            used += len;
+        }
+        StringBuilder sb = new StringBuilder(used + 256);
+        boolean gap = false;
+        for (int s = 0; s < keep.length; s++) {
+            if (!keep[s]) { gap = true; continue; }
+            if (gap && sb.length() > 0) sb.append("\n[...]\n");
+            gap = false;
+            sb.append(text, r.index.sentenceStart(s), r.index.sentenceEnd(s));
+        }
+        return sb.toString();
+    }
+
+    // ===== helpers =====
+
+    private static String sentence(BoundaryIndex idx, int s) {
+        return idx.text().subSequence(idx.sentenceStart(s), idx.sentenceEnd(s)).toString()
+                .replace('\r', ' ').replace('\n', ' ').trim();
+    }
+
+    /** Hash lowercase alphanumeric runs of length >= 2 (minus stopwords) into {@code out}; returns the count. */
+    private static int tokenize(CharSequence text, int from, int to, int[] out) {
+        int count = 0;
+        int i = from;
+        while (i < to) {
+            while (i < to && !Character.isLetterOrDigit(text.charAt(i))) i++;
+            int start = i;
+            while (i < to && Character.isLetterOrDigit(text.charAt(i))) i++;
+            if (i - start < 2) continue;
+            int h = hash(text, start, i);
+            if (Arrays.binarySearch(STOP_HASHES, h) >= 0) continue;
+            if (count < out.length) out[count] = h;
+            count++;
+        }
+        return count;
+    }
+
+    private static int hash(CharSequence text, int from, int to) {
+        int h = 0x811c9dc5;
+        for (int i = from; i < to; i++) {
+            h ^= Character.toLowerCase(text.charAt(i));
+            h *= 0x01000193;
+        }
+        return (h ^ (h >>> HASH_BITS)) & HASH_MASK;
+    }
+
+    /** Weight of term {@code t} in a sentence's sorted term row. */
+    private static float weightOf(int[] terms, float[] weights, int from, int to, int t) {
+        int k = Arrays.binarySearch(terms, from, to, t);
+        return k >= 0 ? weights[k] : 0f;
+    }
+
+    /** Indices of the {@code out.length} largest accumulators among {@code touched}; returns how many. */
+    private static int selectTop(float[] acc, int[] touched, int nt, int[] out) {
+        int size = 0;
+        for (int k = 0; k < nt; k++) {
+            int c = touched[k];
+            if (size < out.length) {
+                out[size++] = c;
+            } else {
+                int min = 0;
+                for (int m = 1; m < size; m++) if (acc[out[m]] < acc[out[min]]) min = m;
+                if (acc[c] > acc[out[min]]) out[min] = c;
+            }
+        }
+        return size;
+    }
+
+    private static final class IntBuffer {
+        int[] a;
+        int size;
+        IntBuffer(int cap) { a = new int[Math.max(4, cap)]; }
+        void add(int v) {
+            if (size == a.length) a = Arrays.copyOf(a, a.length * 2);
+            a[size++] = v;
+        }
+    }
+
+    private static final class FloatBuffer {
+        float[] a;
+        int size;
+        FloatBuffer(int cap) { a = new float[Math.max(4, cap)]; }
+        void add(float v) {
+            if (size == a.length) a = Arrays.copyOf(a, a.length * 2);
+            a[size++] = v;
+        }
+    }
+}
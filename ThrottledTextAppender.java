@@ -0,0 +1,60 @@
+package org.example.ui;
+
+import javax.swing.*;
+import javax.swing.text.JTextComponent;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Collects text from any thread and appends it to a text component on the EDT in
+ * batches, at most once per interval, so a fast token stream doesn't flood the EDT.
+ */
+public class ThrottledTextAppender {
+    private final JTextComponent target;
+    private final Timer timer;
+    private final StringBuilder pending = new StringBuilder();
+    // true from the first append until a flush finds nothing left; Timer state is EDT-only
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    public ThrottledTextAppender(JTextComponent target, int intervalMs) {
+        this.target = target;
+        this.timer = new Timer(intervalMs, e -> flush());
+        this.timer.setRepeats(true);
+        this.timer.setCoalesce(true);
+    }
+
+    /** Safe to call from any thread. */
+    public void append(String delta) {
+        if (delta == null || delta.isEmpty()) return;
+        synchronized (pending) {
+            pending.append(delta);
+        }
+        if (scheduled.compareAndSet(false, true)) SwingUtilities.invokeLater(timer::start);
+    }
+
+    /** Stop batching and drop anything not yet shown. Call on the EDT. */
+    public void stop() {
+        timer.stop();
+        synchronized (pending) {
+            pending.setLength(0);
+            scheduled.set(false);
+        }
+    }
+
+    private void flush() {
+        String chunk;
+        synchronized (pending) {
+            if (pending.length() == 0) {
+                timer.stop();
+                scheduled.set(false);
+                return;
+            }
+            chunk = pending.toString();
+            pending.setLength(0);
+        }
+        javax.swing.text.Document doc = target.getDocument();
+        try {
+            doc.insertString(doc.getLength(), chunk, null);
+        } catch (javax.swing.text.BadLocationException ignored) {}
+        target.setCaretPosition(doc.getLength());
+    }
+}
@@ -0,0 +1,85 @@
+package org.example.core;
+
+/**
+ * TokenBucketLimiter — blocking token bucket used to keep concurrent calls under a
+ * per-minute quota. Refills continuously at {@code ratePerSecond} up to {@code burst}.
+ * Callers wait by {@link Lane}: while a higher lane is waiting, lower lanes leave the
+ * tokens to it.
+ */
+public class TokenBucketLimiter {
+    private final double ratePerNano;
+    private final double burst;
+    private double available;
+    private long lastRefill;
+    private final int[] waiting = new int[Lane.values().length];
+
+    public TokenBucketLimiter(double ratePerSecond, int burst) {
+        if (ratePerSecond <= 0) throw new IllegalArgumentException("ratePerSecond must be > 0");
+        if (burst < 1) throw new IllegalArgumentException("burst must be >= 1");
+        this.ratePerNano = ratePerSecond / 1_000_000_000d;
+        this.burst = burst;
+        this.available = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /** Limiter sized from a requests-per-minute quota. */
+    public static TokenBucketLimiter perMinute(int requestsPerMinute, int burst) {
+        return new TokenBucketLimiter(requestsPerMinute / 60d, burst);
+    }
+
+    public void acquire() throws InterruptedException {
+        acquire(1);
+    }
+
+    /** Block until {@code permits} are available to the caller's lane, then take them. */
+    public void acquire(int permits) throws InterruptedException {
+        if (permits > burst) throw new IllegalArgumentException("permits exceed burst size");
+        Lane lane = Lane.current();
+        synchronized (this) {
+            waiting[lane.ordinal()]++;
+        }
+        try {
+            while (true) {
+                long waitNanos;
+                synchronized (this) {
+                    refill();
+                    boolean yielding = higherLaneWaiting(lane);
+                    if (!yielding && available >= permits) {
+                        available -= permits;
+                        return;
+                    }
+                    // behind a higher lane, wait until there is a token for it as well
+                    double missing = permits - available + (yielding ? 1 : 0);
+                    waitNanos = (long) Math.ceil(Math.max(0, missing) / ratePerNano);
+                }
+                long ms = Math.max(1, waitNanos / 1_000_000);
+                Thread.sleep(ms);
+            }
+        } finally {
+            synchronized (this) {
+                waiting[lane.ordinal()]--;
+            }
+        }
+    }
+
+    /** Non-blocking variant. */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (available >= 1 && !higherLaneWaiting(Lane.current())) {
+            available -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean higherLaneWaiting(Lane lane) {
+        for (int i = 0; i < lane.ordinal(); i++) if (waiting[i] > 0) return true;
+        return false;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        available = Math.min(burst, available + (now - lastRefill) * ratePerNano);
+        lastRefill = now;
+    }
+}
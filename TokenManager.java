@@ -3,10 +3,10 @@ package org.example.auth;
 import com.google.api.client.auth.oauth2.Credential;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
+import org.example.core.GoogleApiTransport;
 
 import java.io.IOException;
 import java.net.URI;
-import java.net.http.*;
 import java.nio.file.*;
 import java.time.Duration;
 import java.util.Objects;
@@ -20,8 +20,7 @@ public class TokenManager {
     private String currentUserId;
     private Path tokenStoreDir;  // set from AppLauncher so signOut can clear cached tokens
 
-    private static final HttpClient HTTP = HttpClient.newBuilder()
-            .connectTimeout(Duration.ofSeconds(10)).build();
+    private static final GoogleApiTransport TRANSPORT = GoogleApiTransport.shared();
     private static final Gson GSON = new Gson();
 
     public TokenManager() {}
@@ -117,14 +116,10 @@ public class TokenManager {
     public String fetchUserEmail() {
         try {
             String token = getAccessToken();
-            HttpRequest req = HttpRequest.newBuilder()
-                    .uri(URI.create("https://www.googleapis.com/oauth2/v3/userinfo"))
-                    .timeout(Duration.ofSeconds(10))
-                    .header("Authorization", "Bearer " + token)
-                    .GET().build();
-            HttpResponse<String> resp = HTTP.send(req, HttpResponse.BodyHandlers.ofString());
-            if (resp.statusCode() != 200) return null;
-            JsonObject j = GSON.fromJson(resp.body(), JsonObject.class);
+            GoogleApiTransport.Response resp = TRANSPORT.get("oauth2.userinfo",
+                    URI.create("https://www.googleapis.com/oauth2/v3/userinfo"), token, Duration.ofSeconds(10));
+            if (resp.statusCode != 200) return null;
+            JsonObject j = GSON.fromJson(resp.body, JsonObject.class);
             if (j != null && j.has("email")) {
                 return j.get("email").getAsString();
             }
@@ -160,12 +155,9 @@ public class TokenManager {
     public String debugTokenInfo() {
         try {
             String token = getAccessToken();
-            HttpRequest req = HttpRequest.newBuilder()
-                    .uri(URI.create("https://oauth2.googleapis.com/tokeninfo?access_token=" + token))
-                    .timeout(Duration.ofSeconds(10))
-                    .GET().build();
-            HttpResponse<String> resp = HTTP.send(req, HttpResponse.BodyHandlers.ofString());
-            return resp.body(); // look for "scope": "... generative-language ..."
+            GoogleApiTransport.Response resp = TRANSPORT.get("oauth2.tokeninfo",
+                    URI.create("https://oauth2.googleapis.com/tokeninfo?access_token=" + token), null, Duration.ofSeconds(10));
+            return resp.body; // look for "scope": "... generative-language ..."
         } catch (Exception e) {
             return "tokeninfo error: " + e.getMessage();
         }
@@ -18,9 +18,13 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class UIController {
     private MainWindowUI mainWindow;
@@ -36,6 +40,40 @@ public class UIController {
     private final AtomicBoolean signingIn = new AtomicBoolean(false);
 
     private static final double GEMINI_OVERRIDE_THRESHOLD = 0.65;
+    // below the threshold, classify + summarize in one structured call when the document fits one request
+    private static final boolean COMBINED_CALL = Boolean.parseBoolean(System.getProperty("summarize.combined", "true"));
+    // summary prompts don't depend on the label: start summarizing right after extraction and classify meanwhile.
+    // With COMBINED_CALL, a document that fits one request waits for its label instead: a low-confidence
+    // one gets the combined call, the rest start their summary as soon as they are classified.
+    private static final boolean PARALLEL_SUMMARY = Boolean.parseBoolean(System.getProperty("pipeline.parallelSummary", "true"));
+    // deferred enrichment: transient summary/override failures are retried in the background with backoff
+    private static final long ENRICHMENT_POLL_MS = Long.getLong("enrichment.pollMs", 30_000);
+    private static final long ENRICHMENT_BASE_DELAY_MS = Long.getLong("enrichment.baseDelayMs", 60_000);
+    private static final long ENRICHMENT_MAX_DELAY_MS = Long.getLong("enrichment.maxDelayMs", 6 * 60 * 60_000L);
+    private static final int ENRICHMENT_MAX_ATTEMPTS = Integer.getInteger("enrichment.maxAttempts", 12);
+    private static final long ENRICHMENT_LEASE_MS = 10 * 60_000L;
+    // durable batch jobs: a lease is renewed at every stage checkpoint; an expired one means its worker died
+    private static final long JOB_LEASE_MS = Long.getLong("jobs.leaseMs", 10 * 60_000L);
+    private static final long JOB_RESUME_POLL_MS = 5_000;
+    private static final String WORKER_ID = "worker-" + UUID.randomUUID().toString().substring(0, 8);
+    // queue priorities: retries of failed calls go before summaries deferred by the lazy batch profile
+    private static final int PRIORITY_RETRY = 0;
+    private static final int PRIORITY_LAZY = -1;
+
+    /** What runPipelineBatch does per document. */
+    public enum BatchProfile {
+        /** extract, classify and summarize */
+        FULL,
+        /** extract and classify only; summaries are queued at low priority or generated when a document is opened */
+        LAZY_SUMMARY;
+
+        static BatchProfile fromProperty() {
+            return "lazy".equalsIgnoreCase(System.getProperty("batch.profile", "full")) ? LAZY_SUMMARY : FULL;
+        }
+    }
+
+    // sha256 of documents whose deferred enrichment is running, so the worker and an on-demand request don't both do it
+    private final Set<String> enrichingNow = java.util.concurrent.ConcurrentHashMap.newKeySet();
     private static final String[] ALLOWED_LABELS = new String[]{
             "Petition", "Ruling/Judgement/Order", "Contract", "Invoice", "Affidavit", "Memorandum", "Other", "Power of Attorney"};
 
@@ -47,6 +85,15 @@ public class UIController {
     private final SummarizationBridge summarizer;
     private final OcrBridge ocrBridge;
     private final SummarizationBridgeRest summarizerRest;
+    private final BoilerplateStripper boilerplate =
+            new BoilerplateStripper(Boolean.parseBoolean(System.getProperty("boilerplate.keepOneCopy", "true")));
+
+    // every thread the controller starts goes through here (caps, names, gauges, shutdown)
+    private final ExecutionService exec = ExecutionService.shared();
+    // shared limits on the local Python bridges and on concurrent model calls; interactive work goes first
+    private final ExecutionService.Gate bridgeGate = exec.gate("python",
+            Integer.getInteger("exec.python.maxConcurrent", Runtime.getRuntime().availableProcessors()));
+    private final ExecutionService.Gate modelGate = exec.gate("vertex", Integer.getInteger("exec.vertex.maxConcurrent", 8));
 
     private final Gson gson = new Gson();
     private final Type mapType = new TypeToken<Map<String, Object>>() {}.getType();
@@ -111,6 +158,9 @@ public class UIController {
         String modelId = "gemini-2.5-flash";
         this.summarizerRest = new SummarizationBridgeRest(projectId, location, modelId);
 
+        startEnrichmentWorker();
+        exec.background("job-resume", Lane.BACKGROUND, this::resumeUnfinishedJobs);
+
         System.out.println("✅ UIController initialized successfully with credit system");
     }
 
@@ -177,6 +227,26 @@ public class UIController {
         }
     }
 
+    /**
+     * True when the balance covers {@code estimate}. Checked before any model call, since the
+     * charge itself comes after the calls and is priced on the tokens they actually used.
+     */
+    private boolean canAfford(int estimate) {
+        try {
+            CreditService.UserCreditInfo info = getUserCreditInfo();
+            return info != null && !info.isSuspended() && info.getCreditsBalance() >= estimate;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private void ensureCanAfford(int estimate) {
+        if (!canAfford(estimate)) {
+            throw new IllegalStateException("Insufficient credits. This document needs about " + estimate
+                    + " credits, available: " + getUserCredits() + " credits");
+        }
+    }
+
     /**
      * Get user's credit balance
      */
@@ -277,8 +347,17 @@ public class UIController {
      * Calculate credits needed for document processing
      */
     public int calculateProcessingCredits(File file, String extractedText) {
+        try (DocumentSession session = DocumentSession.open(file)) {
+            return calculateProcessingCredits(session, extractedText);
+        }
+    }
+
+    /**
+     * Same as above, but reuses the page count of an already-open session
+     */
+    public int calculateProcessingCredits(DocumentSession session, String extractedText) {
         try {
-            int pageCount = getPageCount(file);
+            int pageCount = getPageCount(session);
             int wordCount = extractedText.length() / 5; // rough word count estimate
             return creditService.calculateProcessingCredits(pageCount, wordCount);
         } catch (Exception e) {
@@ -306,6 +385,22 @@ public class UIController {
         }
     }
 
+    /** Credits for a finished document: pages plus the tokens its model calls reported. */
+    private int usageCredits(int pageCount, UsageLedger usage) {
+        return creditService.calculateUsageCredits(pageCount, usage.promptTokens(), usage.outputTokens());
+    }
+
+    /** Persist per-call token usage for the document; metering must never fail the pipeline. */
+    private void recordTokenUsage(File file, String label, UsageLedger usage) {
+        if (usage.isEmpty()) return;
+        try {
+            storage.recordTokenUsage(StorageManager.sha256(file), file.getName(), getCurrentUserId(), label, usage.toRecords());
+            System.out.println("🧮 Token usage for " + file.getName() + ": " + usage);
+        } catch (Exception e) {
+            System.err.println("⚠️ Token usage not recorded for " + file.getName() + ": " + e.getMessage());
+        }
+    }
+
     // === ADMIN AUTHENTICATION ===
 
     /**
@@ -359,11 +454,26 @@ public class UIController {
             int processedDocuments = storage.getProcessedDocumentCount();
             stats.add("Total Documents: " + totalDocuments);
             stats.add("Processed Documents: " + processedDocuments);
+            stats.add("Pending Enrichment: " + storage.countPendingEnrichment(null));
+            stats.add("Unfinished Batch Jobs: " + storage.countUnfinishedJobs(null));
+            stats.addAll(exec.gauges());
 
             // Storage statistics
             long storageUsed = storage.getTotalStorageUsed();
             stats.add("Storage Used: " + (storageUsed / (1024 * 1024)) + " MB");
 
+            // Token usage (as reported by the models)
+            for (Map<String, Object> row : storage.getTokenUsageByOwnerAndLabel()) {
+                stats.add("Tokens " + row.get("owner_id") + " / " + row.get("label") + ": " + row.get("total_tokens")
+                        + " (" + row.get("prompt_tokens") + " prompt, " + row.get("output_tokens") + " output, "
+                        + row.get("documents") + " docs)");
+            }
+            for (Map<String, Object> row : storage.getTokenUsageByStage()) {
+                stats.add(String.format("Tokens per %s call: %.0f prompt / %.0f output, %.0f ms (%s calls)",
+                        row.get("stage"), toDouble(row.get("avg_prompt_tokens")), toDouble(row.get("avg_output_tokens")),
+                        toDouble(row.get("avg_latency_ms")), row.get("calls")));
+            }
+
             // Recent activity
             stats.add("Last System Update: " + LocalDateTime.now());
 
@@ -373,6 +483,23 @@ public class UIController {
         return stats;
     }
 
+    private static double toDouble(Object o) {
+        return o instanceof Number ? ((Number) o).doubleValue() : 0.0;
+    }
+
+    /** Admin: token totals per user and label. */
+    public List<Map<String, Object>> getTokenUsageByUserAndLabel() {
+        if (!isCurrentUserAdmin()) {
+            throw new SecurityException("Admin access required");
+        }
+
+        try {
+            return storage.getTokenUsageByOwnerAndLabel();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to fetch token usage: " + e.getMessage(), e);
+        }
+    }
+
     public List<Map<String, Object>> getAllUsersWithStats() {
         if (!isCurrentUserAdmin()) {
             throw new SecurityException("Admin access required");
@@ -414,7 +541,9 @@ public class UIController {
             return;
         }
 
-        new Thread(() -> {
+        // mostly waits on the browser consent page: outside the I/O slots, so an open consent page
+        // neither holds a slot nor counts as interactive work that throttles running batches
+        exec.background("signin-thread", Lane.INTERACTIVE, () -> {
             try {
                 // Ensure token dir exists right before launching browser
                 try {
@@ -478,7 +607,7 @@ public class UIController {
             } finally {
                 signingIn.set(false);
             }
-        }, "signin-thread").start();
+        });
     }
 
     public Path uploadFile(File f) throws Exception {
@@ -507,161 +636,85 @@ public class UIController {
         return stored;
     }
 
-    private String extractiveFallback(String text, int maxSentences) {
-        if (text == null) return "";
-        String[] sentences = text.replace("\r", " ").split("(?<=[.!?])\\s+");
-        StringBuilder sb = new StringBuilder("[Auto-extractive summary]\n");
-        int count = 0;
-        for (String s : sentences) {
-            if (s.isBlank()) continue;
-            sb.append("- ").append(s.trim()).append("\n");
-            if (++count >= maxSentences) break;
+    /** Remove repeated headers/footers/page numbers; the saving is logged as chars and estimated tokens. */
+    private BoilerplateStripper.Result stripBoilerplate(DocumentSession session, String extracted) {
+        BoilerplateStripper.Result r;
+        try {
+            r = boilerplate.strip(session, extracted);
+        } catch (Exception e) {
+            r = boilerplate.strip(extracted);
         }
-        if (count == 0) sb.append(text.substring(0, Math.min(300, text.length())));
-        return sb.toString().trim();
+        if (r.removedChars > 0) {
+            System.out.println("🧹 Boilerplate " + r + ", ~" + summarizerRest.getPlanner().estimateTokens(r.removedChars) + " tokens saved");
+        }
+        return r;
     }
 
-    /** Run pipeline asynchronously. Requires a signed-in session and credits. */
-    public void runPipeline(File file, Consumer<Map<String,Object>> onComplete, Consumer<Exception> onError) {
-        new Thread(() -> {
-            try {
-                ensureSignedIn();
-
-                // Check credits and account status before processing
-                if (!canProcessDocuments()) {
-                    CreditService.UserCreditInfo info = getUserCreditInfo();
-                    if (info.isSuspended()) {
-                        throw new IllegalStateException("Account suspended: " + info.getSuspensionReason());
-                    } else {
-                        throw new IllegalStateException("Insufficient credits. Available: " + info.getCreditsBalance() + " credits");
-                    }
-                }
-
-                // 1) extract
-                String extracted = extractor.extract(file);
-                if (extracted == null) extracted = "";
-
-                // Calculate credits needed for this processing
-                int creditsNeeded = calculateProcessingCredits(file, extracted);
-                System.out.println("🔢 Processing will use approximately " + creditsNeeded + " credits");
-
-                // 2) preprocess
-                Map<String,Object> prePayload = new HashMap<>();
-                prePayload.put("mode", "preprocess");
-                prePayload.put("text", extracted);
-
-                String accessToken = null;
-                try {
-                    // Force token refresh if needed
-                    accessToken = tokenManager.getValidAccessToken();
-                    System.out.println("🔑 Pipeline Access Token Length: " +
-                            (accessToken != null ? accessToken.length() : "null"));
-                } catch (Exception ignored) {
-                    System.err.println("⚠️ Failed to get access token");
-                }
-
-                Map<String, String> env = new HashMap<>();
-                if (accessToken != null && !accessToken.isBlank()) {
-                    env.put("GOOGLE_OAUTH_ACCESS_TOKEN", accessToken);
-                    System.out.println("🔑 Token set for preprocessing/classification (length: " + accessToken.length() + ")");
-                }
-
-                String preRaw = preprocessor.callBridge(prePayload, env);
-                String preprocessed = preRaw;
-                try {
-                    Map<String,Object> preResp = gson.fromJson(preRaw, mapType);
-                    if (preResp != null && preResp.get("normalized") != null) {
-                        preprocessed = preResp.get("normalized").toString();
-                    }
-                } catch (Exception ignore) {}
-
-                // 3) classify
-                Map<String,Object> classPayload = new HashMap<>();
-                classPayload.put("text", preprocessed);
-                String classRaw = classifier.callBridge(classPayload, env);
-                Map<String,Object> classResp = null;
-                try { classResp = gson.fromJson(classRaw, mapType); } catch (Exception ignore) {}
-                String prediction = classResp != null && classResp.get("prediction") != null ? classResp.get("prediction").toString() : "Unknown";
-                double confidence = 0.0;
-                if (classResp != null && classResp.get("confidence") != null) {
-                    Object c = classResp.get("confidence");
-                    confidence = (c instanceof Number) ? ((Number)c).doubleValue() : Double.parseDouble(c.toString());
-                }
-
-                // 3b) optional Gemini override
-                String finalLabel = prediction;
-                String decisionSource = "svm";
-                try {
-                    accessToken = tokenManager.getAccessToken();
-                    if (confidence < GEMINI_OVERRIDE_THRESHOLD && accessToken != null && !accessToken.isBlank()) {
-                        GenerativeClassifierRest gRest = new GenerativeClassifierRest("gemini-2.5-flash");
-                        GenerativeClassifierRest.Result gRes = gRest.classifyWithToken(extracted, ALLOWED_LABELS, accessToken);
-                        if (gRes != null && gRes.label != null && !gRes.label.isBlank()) {
-                            finalLabel = gRes.label.trim();
-                            decisionSource = "gemini_override";
-                        }
-                    }
-                } catch (Exception ignored) {}
-
-                // 4) summarize (REST first)
-                String summary;
-                try {
-                    String at = tokenManager.getAccessToken();
-
-
-                    // Use long-text summarization for large documents
-                    if (extracted.length() > 8000) {
-                        System.out.println("📚 Using long-text summarization for " + extracted.length() + " characters");
-                        summary = summarizeLongText(extracted, at);
-                    } else {
-                        summary = summarizerRest.smartSummarize(extracted, at, 16000, 120);
-                    }
-                } catch (Exception restEx) {
-                    System.err.println("❌ Vertex AI summarization failed: " + restEx.getMessage());
-
-                    // Check if it's a permission error
-                    if (restEx.getMessage() != null && restEx.getMessage().contains("PERMISSION_DENIED")) {
-                        System.err.println("🔒 Vertex AI permission denied. Please ensure your account has 'Vertex AI User' role.");
-                        summary = "[Summarization unavailable: Permission denied. Please contact administrator to grant Vertex AI permissions.]";
-                    } else {
-                        summary = "[Summarization failed: " + restEx.getMessage() + "]";
-                    }
-
-                    // Fallback to extractive summary
-                    if (summary.startsWith("[")) {
-                        summary = extractiveFallback(extracted, 5);
-                    }
-                }
+    /** A Python bridge call, holding a {@link #bridgeGate} permit. */
+    private String callBridge(ProcessRunner runner, Map<String,Object> payload, Map<String,String> env) throws Exception {
+        return bridgeGate.call(() -> runner.callBridge(payload, env));
+    }
 
-                // Deduct credits after successful processing
-                boolean creditsDeducted = deductCredits(creditsNeeded, "document_processing", file.getName());
-                if (!creditsDeducted) {
-                    throw new IllegalStateException("Failed to deduct credits for processing");
-                }
+    /** Combined label + summary call, or null to take the separate classify and summarize path. */
+    private SummarizationBridgeRest.Combined classifyAndSummarize(String bodyText, String accessToken, UsageLedger usage) {
+        if (!COMBINED_CALL) return null;
+        try {
+            return modelGate.call(() -> summarizerRest.classifyAndSummarize(bodyText, ALLOWED_LABELS, accessToken, 120, usage));
+        } catch (Exception e) {
+            System.err.println("⚠️ Combined classify+summarize failed, using separate calls: " + e.getMessage());
+            return null;
+        }
+    }
 
-                int remainingCredits = getUserCredits();
+    /** Local TextRank summary used when Vertex is unavailable. */
+    private String extractiveFallback(String text, int maxSentences) {
+        if (text == null) return "";
+        return ("[Auto-extractive summary]\n" + new TextRankSummarizer().summarize(text, maxSentences)).trim();
+    }
 
-                Map<String,Object> out = new HashMap<>();
-                out.put("extracted", extracted);
-                out.put("preprocessed", preprocessed);
-                out.put("prediction", finalLabel);
-                out.put("confidence", confidence);
-                out.put("decision_source", decisionSource);
-                out.put("summary", summary == null ? "" : summary);
-                out.put("credits_used", creditsNeeded);
-                out.put("remaining_credits", remainingCredits);
+    /** Run pipeline asynchronously. Requires a signed-in session and credits. */
+    public void runPipeline(File file, Consumer<Map<String,Object>> onComplete, Consumer<Exception> onError) {
+        runPipeline(file, null, onComplete, onError);
+    }
 
-                System.out.println("✅ Processing complete. Used " + creditsNeeded + " credits. Remaining: " + remainingCredits);
+    /**
+     * Same as above; when {@code onSummaryDelta} is non-null the summary is streamed and partial
+     * text is delivered to it (from a pipeline thread) while the model is still generating.
+     */
+    public void runPipeline(File file, Consumer<String> onSummaryDelta,
+                            Consumer<Map<String,Object>> onComplete, Consumer<Exception> onError) {
+        exec.io("pipeline-thread", Lane.INTERACTIVE, () -> {
+            try {
+                DocJob job = new DocJob(file, true);
+                job.onSummaryDelta = onSummaryDelta;
+                Map<String,Object> out = processDocument(job);
+                System.out.println("✅ Processing complete. Used " + out.get("credits_used") + " credits (" + job.usage
+                        + "). Remaining: " + out.get("remaining_credits"));
                 onComplete.accept(out);
-
             } catch (Exception e) {
                 onError.accept(e);
             }
-        }, "pipeline-thread").start();
+        });
     }
 
     /** Synchronous variant with credit checks */
     public Map<String,Object> runPipelineSync(File file) throws Exception {
+        return runPipelineSync(file, true);
+    }
+
+    /**
+     * @param summarize false to extract and classify only; the result is then marked pending
+     *                  and saving it queues the summary at low priority (lazy batch profile)
+     */
+    public Map<String,Object> runPipelineSync(File file, boolean summarize) throws Exception {
+        return processDocument(new DocJob(file, summarize));
+    }
+
+    /**
+     * One document through the same stages a batch uses, on the calling thread. Requires a
+     * signed-in session and credits; the estimate must be covered before any model call.
+     */
+    private Map<String,Object> processDocument(DocJob job) throws Exception {
         ensureSignedIn();
 
         // Check credits and account status
@@ -674,92 +727,284 @@ public class UIController {
             }
         }
 
-        String extracted = extractor.extract(file);
-        if (extracted == null) extracted = "";
+        try {
+            extractStage(job);
+            System.out.println("🔢 Processing will use approximately " + job.creditsNeeded + " credits");
+            ensureCanAfford(job.creditsNeeded);
+            startSummary(job);
+            classifyStage(job);
+            overrideStage(job);
+            summarizeStage(job);
+            chargeStage(job);
+        } catch (Exception e) {
+            // nobody will read or pay for the summary now
+            job.cancelSummary();
+            throw e;
+        }
+        return job.result;
+    }
 
-        // Calculate and deduct credits
-        int creditsNeeded = calculateProcessingCredits(file, extracted);
-        boolean creditsDeducted = deductCredits(creditsNeeded, "document_processing", file.getName());
-        if (!creditsDeducted) {
-            throw new IllegalStateException("Failed to deduct credits for processing");
+    /**
+     * One document on its way through the stages; each stage fills in what the next one reads.
+     * Batch documents also have a row in the jobs table ({@code jobId} > 0) that records the
+     * last completed stage, so a restarted batch picks the document up from there.
+     */
+    private static final class DocJob {
+        // stage checkpoints, in order
+        static final List<String> CHECKPOINTS = List.of("queued", "extracted", "classified", "overridden", "summarized", "done");
+
+        final File file;
+        final boolean summarize;
+        final UsageLedger usage = new UsageLedger();
+        final long createdNanos = System.nanoTime();
+        long extractMs;
+        long summaryMs;
+        long jobId;
+        String sourceSha;   // the input file's sha256, set by the extract stage
+        String checkpoint = "queued";
+        String skipReason;
+        Map<String,String> env = new HashMap<>();
+        String accessToken;
+        String extracted;
+        int creditsNeeded;
+        int pageCount;
+        int boilerplateRemovedChars;
+        String bodyText;
+        String preprocessed;
+        String prediction;
+        double confidence;
+        String finalLabel;
+        String decisionSource = "svm";   // svm, gemini_combined or gemini_override
+        SummarizationBridgeRest.Combined combined;
+        boolean overridePending;
+        String summary = "";
+        boolean summaryPending;
+        Consumer<String> onSummaryDelta;   // set to stream the summary (interactive runs)
+        boolean summaryDeferred;   // fork held back until the label decides between combined and separate calls
+        long firstTokenMs = -1;
+        Future<?> summaryFork;   // set when the summary runs alongside classification
+        Map<String,Object> restored = Map.of();   // the jobs row a resumed job starts from
+        Map<String,Object> result;
+        BatchResult saved;   // the compact batch result, once the save stage stored the texts
+
+        DocJob(File file, boolean summarize) {
+            this.file = file;
+            this.summarize = summarize;
+        }
+
+        boolean hasToken() {
+            return accessToken != null && !accessToken.isBlank();
+        }
+
+        void cancelSummary() {
+            if (summaryFork != null) summaryFork.cancel(true);
+        }
+
+        boolean durable() {
+            return jobId > 0;
         }
 
+        /** Drop the texts once the job is finished; they are on disk, and a batch holds every job until it ends. */
+        void release() {
+            extracted = bodyText = preprocessed = summary = null;
+            combined = null;
+            result = null;
+            restored = Map.of();
+        }
+
+        /** True when a previous run already got past {@code stage}. */
+        boolean completed(String stage) {
+            return CHECKPOINTS.indexOf(checkpoint) >= CHECKPOINTS.indexOf(stage);
+        }
+    }
+
+    private void extractStage(DocJob job) throws Exception {
+        long t0 = System.nanoTime();
+        exec.callCpu("extract", () -> {
+            try (DocumentSession session = DocumentSession.open(job.file)) {
+                String extracted = extractor.extract(session);
+                job.extracted = extracted == null ? "" : extracted;
+                job.creditsNeeded = calculateProcessingCredits(session, job.extracted);
+                job.pageCount = getPageCount(session);
+                BoilerplateStripper.Result stripped = stripBoilerplate(session, job.extracted);
+                job.bodyText = stripped.text;
+                job.boilerplateRemovedChars = stripped.removedChars;
+            }
+            return null;
+        });
+        job.extractMs = (System.nanoTime() - t0) / 1_000_000;
+    }
+
+    /** Fetch the token for the model stages and, unless the summary is done already, fork it. */
+    private void startSummary(DocJob job) {
+        try {
+            // refreshed when close to expiry
+            job.accessToken = tokenManager.getValidAccessToken();
+        } catch (Exception e) {
+            System.err.println("⚠️ Failed to get a fresh access token: " + e.getMessage());
+            job.accessToken = tokenManager.getAccessToken();
+        }
+        if (job.hasToken()) job.env.put("GOOGLE_OAUTH_ACCESS_TOKEN", job.accessToken);
+
+        // the summary doesn't need the label: start it now, summarizeStage joins it. Unless it could
+        // come from the combined call, which only the classifier's confidence can tell
+        if (PARALLEL_SUMMARY && job.summarize && !job.completed("summarized")) {
+            if (COMBINED_CALL && job.hasToken() && summarizerRest.fitsCombinedCall(job.bodyText)) {
+                job.summaryDeferred = true;
+            } else {
+                forkSummary(job);
+            }
+        }
+    }
+
+    /** Start the summary alongside the remaining stages; batch ones within the summarize stage's worker budget. */
+    private void forkSummary(DocJob job) {
+        job.summaryDeferred = false;
+        Callable<Void> summarize = () -> {
+            summarizeDocument(job);
+            return null;
+        };
+        job.summaryFork = exec.fork("summary-" + job.file.getName(),
+                Lane.current() == Lane.INTERACTIVE ? summarize : () -> summarizeGate.call(summarize));
+    }
+
+    private void classifyStage(DocJob job) throws Exception {
         Map<String,Object> prePayload = new HashMap<>();
         prePayload.put("mode", "preprocess");
-        prePayload.put("text", extracted);
-
-        String accessToken = null;
-        try { accessToken = tokenManager.getAccessToken(); } catch (Exception ignored) {}
-        Map<String,String> env = new HashMap<>();
-        if (accessToken != null && !accessToken.isBlank()) env.put("GOOGLE_OAUTH_ACCESS_TOKEN", accessToken);
+        prePayload.put("text", job.bodyText);
 
-        String preRaw = preprocessor.callBridge(prePayload, env);
-        String preprocessed = preRaw;
+        String preRaw = callBridge(preprocessor, prePayload, job.env);
+        job.preprocessed = preRaw;
         try {
             Map<String,Object> preResp = gson.fromJson(preRaw, mapType);
-            if (preResp != null && preResp.get("normalized") != null) preprocessed = preResp.get("normalized").toString();
+            if (preResp != null && preResp.get("normalized") != null) job.preprocessed = preResp.get("normalized").toString();
         } catch (Exception ignore) {}
 
         Map<String,Object> classPayload = new HashMap<>();
-        classPayload.put("text", preprocessed);
-        String classRaw = classifier.callBridge(classPayload, env);
+        classPayload.put("text", job.preprocessed);
+        String classRaw = callBridge(classifier, classPayload, job.env);
         Map<String,Object> classResp = null;
         try { classResp = gson.fromJson(classRaw, mapType); } catch (Exception ignore) {}
-        String prediction = (classResp != null && classResp.get("prediction") != null) ? classResp.get("prediction").toString() : "Unknown";
-        double confidence = 0.0;
+        job.prediction = (classResp != null && classResp.get("prediction") != null) ? classResp.get("prediction").toString() : "Unknown";
+        job.confidence = 0.0;
         if (classResp != null && classResp.get("confidence") != null) {
             Object c = classResp.get("confidence");
-            confidence = (c instanceof Number) ? ((Number)c).doubleValue() : Double.parseDouble(c.toString());
+            job.confidence = (c instanceof Number) ? ((Number)c).doubleValue() : Double.parseDouble(c.toString());
         }
+        job.finalLabel = job.prediction;
+        // a confident label needs no override, so no combined call: summarize alongside the rest
+        if (job.summaryDeferred && job.confidence >= GEMINI_OVERRIDE_THRESHOLD) forkSummary(job);
+    }
 
-        // optional override
-        String finalLabel = prediction;
+    /** Optional Gemini override; combined with the summary when the document fits one call. */
+    private void overrideStage(DocJob job) {
+        if (job.confidence >= GEMINI_OVERRIDE_THRESHOLD || !job.hasToken()) return;
+        if (job.summarize && job.summaryFork == null) {
+            job.combined = classifyAndSummarize(job.bodyText, job.accessToken, job.usage);
+        }
+        if (job.combined != null) {
+            job.finalLabel = job.combined.label;
+            job.decisionSource = "gemini_combined";
+            return;
+        }
+        // the combined answer was unusable: summarize alongside the separate override call
+        if (job.summaryDeferred) forkSummary(job);
         try {
-            if (confidence < GEMINI_OVERRIDE_THRESHOLD && accessToken != null && !accessToken.isBlank()) {
-                GenerativeClassifierRest gRest = new GenerativeClassifierRest("gemini-2.5-flash");
-                GenerativeClassifierRest.Result gRes = gRest.classifyWithToken(extracted, ALLOWED_LABELS, accessToken);
-                if (gRes != null && gRes.label != null && !gRes.label.isBlank()) {
-                    finalLabel = gRes.label.trim();
-                }
+            GenerativeClassifierRest gRest = new GenerativeClassifierRest("gemini-2.5-flash");
+            GenerativeClassifierRest.Result gRes = modelGate.call(() -> gRest.classifyWithToken(job.bodyText, ALLOWED_LABELS, job.accessToken, job.usage));
+            if (gRes != null && gRes.label != null && !gRes.label.isBlank()) {
+                job.finalLabel = gRes.label.trim();
+                job.decisionSource = "gemini_override";
             }
-        } catch (Exception ignored) {}
+        } catch (Exception e) {
+            // keep the SVM label for now; a transient failure gets the override retried later
+            job.overridePending = ResilientTransport.isTransient(e);
+        }
+    }
 
-        // summarize
-        String summary = "";
+    private void summarizeStage(DocJob job) throws Exception {
+        if (!job.summarize) {
+            // lazy profile: no summary call at all, and nothing charged for one
+        } else if (job.summaryFork != null) {
+            ExecutionService.await(job.summaryFork);
+        } else if (job.combined != null) {
+            job.summary = job.combined.summary;
+            if (job.onSummaryDelta != null) job.onSummaryDelta.accept(job.summary);
+        } else {
+            summarizeDocument(job);
+        }
+    }
+
+    private void summarizeDocument(DocJob job) {
+        long t0 = System.nanoTime();
         try {
-            if (accessToken != null && !accessToken.isBlank()) {
-                if (extracted.length() > 8000) {
-                    System.out.println("📚 Using long-text summarization for " + extracted.length() + " characters");
-                    summary = summarizeLongText(extracted, accessToken);
-                } else {
-                    summary = summarizerRest.smartSummarize(extracted, accessToken, 16000, 120);
-                }
+            if (job.hasToken() && job.onSummaryDelta != null) {
+                // The planner decides single-call vs map-reduce and the token budgets
+                MapReduceSummarizer.Result streamed = modelGate.call(() -> summarizerRest.summarizeStreaming(
+                        job.bodyText, job.accessToken, 120, job.onSummaryDelta, job.usage));
+                job.summary = streamed.text;
+                job.firstTokenMs = streamed.firstTokenMs;
+            } else if (job.hasToken()) {
+                job.summary = modelGate.call(() -> summarizerRest.summarize(job.bodyText, job.accessToken, 120, job.usage));
             } else {
                 // Fallback to Python summarizer if no OAuth token
                 Map<String,Object> sumPayload = new HashMap<>();
-                sumPayload.put("text", extracted);
+                sumPayload.put("text", job.bodyText);
                 sumPayload.put("model", "gemini-2.5-flash");
                 sumPayload.put("max_tokens", 8192);
                 String sumRaw = new ProcessRunner(summarizer.getPythonExe(), summarizer.getScriptPath()).callBridge(sumPayload, Map.of());
                 Map<String,Object> sumResp = gson.fromJson(sumRaw, mapType);
-                summary = (sumResp != null && sumResp.get("summary") != null) ? sumResp.get("summary").toString() : (sumRaw == null ? "" : sumRaw);
+                job.summary = (sumResp != null && sumResp.get("summary") != null) ? sumResp.get("summary").toString() : (sumRaw == null ? "" : sumRaw);
             }
         } catch (Exception e) {
-            e.printStackTrace();
-            summary = "[Summarization failed]";
+            System.err.println("❌ Summarization failed: " + e.getMessage());
+            if (e.getMessage() != null && e.getMessage().contains("PERMISSION_DENIED")) {
+                System.err.println("🔒 Vertex AI permission denied. Please ensure your account has 'Vertex AI User' role.");
+            }
+            // extractive stand-in; the real summary follows from the enrichment queue if Vertex comes back
+            job.summary = extractiveFallback(job.bodyText, 5);
+            job.summaryPending = ResilientTransport.isTransient(e);
+        } finally {
+            job.summaryMs = (System.nanoTime() - t0) / 1_000_000;
+        }
+    }
+
+    /** Deduct credits, priced on the tokens actually used, and assemble the result map. */
+    private void chargeStage(DocJob job) throws Exception {
+        int creditsCharged = usageCredits(job.pageCount, job.usage);
+        recordTokenUsage(job.file, job.finalLabel, job.usage);
+        boolean creditsDeducted = deductCredits(creditsCharged, "document_processing", job.file.getName());
+        if (!creditsDeducted) {
+            throw new IllegalStateException("Failed to deduct credits for processing");
         }
 
         int remainingCredits = getUserCredits();
 
         Map<String,Object> out = new HashMap<>();
-        out.put("extracted", extracted);
-        out.put("preprocessed", preprocessed);
-        out.put("prediction", finalLabel);
-        out.put("confidence", confidence);
-        out.put("summary", summary);
-        out.put("credits_used", creditsNeeded);
+        out.put("extracted", job.extracted);
+        out.put("preprocessed", job.preprocessed);
+        out.put("prediction", job.finalLabel);
+        out.put("confidence", job.confidence);
+        out.put("decision_source", job.decisionSource);
+        out.put("summary", job.summary);
+        out.put("credits_used", creditsCharged);
+        out.put("credits_estimated", job.creditsNeeded);
+        out.put("prompt_tokens", job.usage.promptTokens());
+        out.put("output_tokens", job.usage.outputTokens());
         out.put("remaining_credits", remainingCredits);
-        return out;
+        out.put("page_count", job.pageCount);
+        out.put("boilerplate_chars_removed", job.boilerplateRemovedChars);
+        out.put("extract_ms", job.extractMs);
+        out.put("summary_ttft_ms", job.firstTokenMs);
+        out.put("summary_latency_ms", job.summaryMs);
+        putEnrichmentStatus(out, job.summaryPending, job.overridePending);
+        if (!job.summarize) {
+            out.put("summary_status", "pending");
+            out.put("summary_pending", true);
+            out.put("enrichment_reason", "lazy batch profile");
+            out.put("enrichment_priority", PRIORITY_LAZY);
+        }
+        job.result = out;
     }
 
     /** Batch process with credit checks */
@@ -769,8 +1014,23 @@ public class UIController {
             Consumer<List<BatchResult>> onDone,
             Consumer<Exception> onError
     ) {
-        new Thread(() -> {
-            List<BatchResult> results = new ArrayList<>();
+        runPipelineBatch(files, BatchProfile.fromProperty(), onProgress, onDone, onError);
+    }
+
+    /**
+     * Same as above with an explicit profile; -Dbatch.profile=lazy makes LAZY_SUMMARY the default.
+     * Documents move through the stages concurrently (see {@link StagedPipeline}); progress and
+     * results are still reported in file order.
+     */
+    public void runPipelineBatch(
+            List<File> files,
+            BatchProfile profile,
+            Consumer<BatchProgress> onProgress,
+            Consumer<List<BatchResult>> onDone,
+            Consumer<Exception> onError
+    ) {
+        boolean summarize = profile != BatchProfile.LAZY_SUMMARY;
+        exec.io("batch-thread", Lane.BATCH, () -> {
             try {
                 ensureSignedIn();
 
@@ -784,52 +1044,306 @@ public class UIController {
                     }
                 }
 
-                int total = files.size();
-                int idx = 0;
-                for (File f : files) {
-                    idx++;
-                    BatchProgress prog = new BatchProgress(idx, total, f.getName(), "Processing…");
-                    onProgress.accept(prog);
+                // one durable job row per document, checkpointed as it moves along
+                String batchId = "batch-" + System.currentTimeMillis();
+                List<Long> ids = storage.createJobs(batchId, getCurrentUserId(), profile.name(), files);
+                List<DocJob> jobs = new ArrayList<>(files.size());
+                for (int i = 0; i < files.size(); i++) {
+                    DocJob job = new DocJob(files.get(i), summarize);
+                    job.jobId = ids.get(i);
+                    jobs.add(job);
+                }
+                List<BatchResult> results = runJobs(jobs, onProgress);
+                onDone.accept(results);
+            } catch (Exception e) {
+                onError.accept(e);
+            }
+        });
+    }
 
-                    try {
-                        // Check if we still have credits for this document
-                        if (!canProcessDocuments()) {
-                            onProgress.accept(new BatchProgress(idx, total, f.getName(), "Skipped (insufficient credits)"));
-                            results.add(BatchResult.skipped(f));
-                            continue;
-                        }
+    // pre-flight planning reorders batches shortest first unless -Dbatch.shortestFirst=false
+    private static final boolean SHORTEST_FIRST = Boolean.parseBoolean(System.getProperty("batch.shortestFirst", "true"));
 
-                        String sha = StorageManager.sha256(f);
-                        Map<String,Object> existing = storage.getBySha256(sha);
-                        if (existing != null && Integer.valueOf(1).equals(existing.get("processed"))) {
-                            onProgress.accept(new BatchProgress(idx, total, f.getName(), "Skipped (already processed)"));
-                            results.add(BatchResult.skipped(f));
-                            continue;
-                        }
+    /**
+     * Pre-flight pass over a batch before it is confirmed: page counts, text layers and sizes,
+     * turned into OCR, token, credit and time estimates, in the order the batch should run.
+     */
+    public void planBatch(List<File> files, Consumer<BatchPlanner.Plan> onDone, Consumer<Exception> onError) {
+        exec.io("batch-plan", () -> {
+            try {
+                BatchPlanner planner = new BatchPlanner(summarizerRest.getPlanner(), creditService::calculateUsageCredits);
+                BatchPlanner.Plan plan = planner.plan(files, stageWorkers("extract", 2), stageWorkers("summarize", 4), SHORTEST_FIRST);
+                System.out.println("🗺️ Batch plan: " + plan);
+                onDone.accept(plan);
+            } catch (Exception e) {
+                onError.accept(e);
+            }
+        });
+    }
 
-                        Map<String,Object> res = runPipelineSync(f);
-                        saveResults(f, res);
+    /**
+     * Run documents through the staged pipeline; progress and results come back in input order.
+     * Results keep paths to the stored texts rather than the texts, so a batch of any size
+     * holds only a few documents' text at a time.
+     */
+    private List<BatchResult> runJobs(List<DocJob> jobs, Consumer<BatchProgress> onProgress) throws InterruptedException {
+        int total = jobs.size();
+        List<BatchResult> results = new ArrayList<>(total);
+        batchPipeline().run(jobs, new StagedPipeline.Listener<DocJob>() {
+            @Override
+            public synchronized void onStageStart(int index, DocJob job, String stage) {
+                onProgress.accept(new BatchProgress(index + 1, total, job.file.getName(), stageStatus(stage)));
+            }
 
-                        onProgress.accept(new BatchProgress(idx, total, f.getName(), "Done"));
-                        results.add(BatchResult.success(f, res));
-                    } catch (Exception exOne) {
-                        onProgress.accept(new BatchProgress(idx, total, f.getName(), "Failed: " + exOne.getMessage()));
-                        results.add(BatchResult.failure(f, exOne));
-                    }
+            @Override
+            public void onExit(int index, DocJob job, Exception error) {
+                // an early exit still holds texts, and maybe a running summary, while earlier items finish;
+                // its row is ended now, not when the in-order completion gets to it
+                if (error != null || job.skipReason != null) {
+                    finishJob(job, error);
+                    job.cancelSummary();
+                    job.release();
+                }
+                exec.recordLatency(Lane.current(), System.nanoTime() - job.createdNanos);
+            }
+
+            @Override
+            public void onComplete(int index, DocJob job, Exception error) {
+                String name = job.file.getName();
+                if (error != null) {
+                    onProgress.accept(new BatchProgress(index + 1, total, name, "Failed: " + error.getMessage()));
+                    results.add(BatchResult.failure(job.file, error));
+                } else if (job.skipReason != null) {
+                    onProgress.accept(new BatchProgress(index + 1, total, name, "Skipped (" + job.skipReason + ")"));
+                    results.add(BatchResult.skipped(job.file));
+                } else {
+                    onProgress.accept(new BatchProgress(index + 1, total, name, job.summarize ? "Done" : "Done (summary on demand)"));
+                    results.add(job.saved);
                 }
-                onDone.accept(results);
-            } catch (Exception e) {
-                onError.accept(e);
             }
-        }, "batch-thread").start();
+        });
+        return results;
+    }
+
+    // stage workers and queue sizes, e.g. -Dpipeline.summarize.workers=8; one saver keeps credit deduction serial
+    private static final int PIPELINE_QUEUE_CAPACITY = Integer.getInteger("pipeline.queueCapacity", 4);
+
+    private static int stageWorkers(String stage, int def) {
+        return Integer.getInteger("pipeline." + stage + ".workers", def);
+    }
+
+    // forked batch summaries start at extraction, ahead of the summarize stage; this keeps them
+    // to that stage's worker budget
+    private final ExecutionService.Gate summarizeGate = exec.gate("summarize", stageWorkers("summarize", 4));
+
+    private StagedPipeline<DocJob> batchPipeline() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return StagedPipeline.<DocJob>builder("batch")
+                .stage("extract", stageWorkers("extract", 2), PIPELINE_QUEUE_CAPACITY, job -> {
+                    if (job.durable() && !storage.claimJob(job.jobId, WORKER_ID, System.currentTimeMillis(), JOB_LEASE_MS)) {
+                        job.skipReason = "taken by another worker";
+                        job.jobId = 0;   // not ours to finish
+                        return false;
+                    }
+                    // Check if we still have credits for this document
+                    if (!canProcessDocuments()) {
+                        job.skipReason = "insufficient credits";
+                        return false;
+                    }
+                    job.sourceSha = StorageManager.sha256(job.file);
+                    Map<String,Object> existing = storage.getBySha256(job.sourceSha);
+                    if (existing != null && Integer.valueOf(1).equals(existing.get("processed"))) {
+                        job.skipReason = "already processed";
+                        return false;
+                    }
+                    if (!(job.completed("extracted") && restoreExtracted(job))) {
+                        job.checkpoint = "queued";
+                        extractStage(job);
+                        checkpoint(job, "extracted", Map.of(
+                                "source_sha256", job.sourceSha,
+                                "text_sha256", StorageManager.sha256Text(job.extracted),
+                                "page_count", job.pageCount,
+                                "credits_estimated", job.creditsNeeded,
+                                "boilerplate_removed", job.boilerplateRemovedChars),
+                                Map.of("extracted", job.extracted, "body", job.bodyText));
+                    }
+                    // the estimate must be covered before any model call; the charge follows actual usage
+                    if (!canAfford(job.creditsNeeded)) {
+                        job.skipReason = "insufficient credits";
+                        return false;
+                    }
+                    startSummary(job);
+                    return true;
+                })
+                .stage("classify", stageWorkers("classify", Math.max(1, cores / 2)), PIPELINE_QUEUE_CAPACITY, job -> {
+                    if (job.completed("classified")) return true;
+                    classifyStage(job);
+                    checkpoint(job, "classified", Map.of(
+                            "prediction", job.prediction,
+                            "confidence", job.confidence),
+                            Map.of("preprocessed", job.preprocessed == null ? "" : job.preprocessed));
+                    return true;
+                })
+                .stage("override", stageWorkers("override", 4), PIPELINE_QUEUE_CAPACITY, job -> {
+                    if (job.completed("overridden")) return true;
+                    overrideStage(job);
+                    checkpoint(job, "overridden", Map.of(
+                            "label", String.valueOf(job.finalLabel),
+                            "override_pending", job.overridePending,
+                            "usage_json", gson.toJson(job.usage.toRecords())),
+                            Map.of());
+                    return true;
+                })
+                .stage("summarize", stageWorkers("summarize", 4), PIPELINE_QUEUE_CAPACITY, job -> {
+                    if (job.completed("summarized")) return true;
+                    summarizeStage(job);
+                    checkpoint(job, "summarized", Map.of(
+                            "summary_status", !job.summarize || job.summaryPending ? "pending" : "ready",
+                            "usage_json", gson.toJson(job.usage.toRecords())),
+                            Map.of("summary", job.summary));
+                    return true;
+                })
+                .stage("save", stageWorkers("save", 1), PIPELINE_QUEUE_CAPACITY, job -> {
+                    chargeStage(job);
+                    Map<String,Object> rec = saveRecord(job.file, job.result);
+                    // charged and the file moved: the row must say so before anything else can crash
+                    finishJob(job, null);
+                    job.checkpoint = "done";
+                    job.saved = BatchResult.success(job.file, job.jobId, job.result, rec,
+                            (System.nanoTime() - job.createdNanos) / 1_000_000);
+                    // stored now; completions are in input order and may wait on a slow earlier document
+                    job.release();
+                    return true;
+                })
+                .build();
+    }
+
+    /** Persist a completed stage of a durable job: texts first, then the row that points past them. */
+    private void checkpoint(DocJob job, String stage, Map<String,Object> values, Map<String,String> texts) throws Exception {
+        job.checkpoint = stage;
+        if (!job.durable()) return;
+        for (Map.Entry<String,String> t : texts.entrySet()) storage.writeJobText(job.jobId, t.getKey(), t.getValue());
+        storage.checkpointJob(job.jobId, stage, values, System.currentTimeMillis() + JOB_LEASE_MS);
+    }
+
+    /** End a job's row. Interrupted jobs (shutdown) are released instead, so they resume next time. */
+    private void finishJob(DocJob job, Exception error) {
+        if (!job.durable()) return;
+        try {
+            if (error instanceof InterruptedException || error instanceof java.util.concurrent.CancellationException) {
+                storage.releaseJob(job.jobId);
+            } else if (error != null) {
+                storage.finishJob(job.jobId, "failed", error.getMessage());
+            } else {
+                storage.finishJob(job.jobId, job.skipReason != null ? "skipped" : "done", job.skipReason);
+            }
+        } catch (SQLException e) {
+            System.err.println("⚠️ Could not update job " + job.jobId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Load what a previous run checkpointed for this job. False when the input file changed
+     * since it was extracted, or the extraction checkpoint is missing or no longer matches its
+     * recorded hash; the job then starts over.
+     */
+    private boolean restoreExtracted(DocJob job) throws Exception {
+        if (job.sourceSha == null || !job.sourceSha.equals(job.restored.get("source_sha256"))) return false;
+        String extracted = storage.readJobText(job.jobId, "extracted");
+        String body = storage.readJobText(job.jobId, "body");
+        if (extracted == null || body == null || !StorageManager.sha256Text(extracted).equals(job.restored.get("text_sha256"))) {
+            return false;
+        }
+        Map<String,Object> row = job.restored;
+        job.extracted = extracted;
+        job.bodyText = body;
+        job.pageCount = toInt(row.get("page_count"));
+        job.creditsNeeded = toInt(row.get("credits_estimated"));
+        job.boilerplateRemovedChars = toInt(row.get("boilerplate_removed"));
+        if (job.completed("classified")) {
+            String preprocessed = storage.readJobText(job.jobId, "preprocessed");
+            job.preprocessed = preprocessed == null ? body : preprocessed;
+            job.prediction = String.valueOf(row.get("prediction"));
+            job.confidence = row.get("confidence") instanceof Number ? ((Number) row.get("confidence")).doubleValue() : 0.0;
+            job.finalLabel = job.prediction;
+        }
+        if (job.completed("overridden")) {
+            job.finalLabel = String.valueOf(row.get("label"));
+            job.overridePending = toInt(row.get("override_pending")) == 1;
+        }
+        if (row.get("usage_json") != null) {
+            List<Map<String,Object>> records = gson.fromJson(String.valueOf(row.get("usage_json")),
+                    new TypeToken<List<Map<String,Object>>>() {}.getType());
+            if (records != null) job.usage.restore(records);
+        }
+        if (job.completed("summarized")) {
+            String summary = storage.readJobText(job.jobId, "summary");
+            job.summary = summary == null ? "" : summary;
+            job.summaryPending = job.summarize && "pending".equals(row.get("summary_status"));
+        }
+        return true;
+    }
+
+    private static int toInt(Object o) {
+        return o instanceof Number ? ((Number) o).intValue() : 0;
+    }
+
+    /**
+     * Once a user is signed in, finish their batch jobs that a previous run left unfinished
+     * (crash, sleep, closed window), each from its last checkpoint. Runs once per start.
+     */
+    private void resumeUnfinishedJobs() {
+        try {
+            while (tokenManager == null || !tokenManager.isSignedIn()) Thread.sleep(JOB_RESUME_POLL_MS);
+            // leases of the previous run would keep its jobs from resuming for up to JOB_LEASE_MS
+            int released = storage.releaseForeignLeases(WORKER_ID);
+            if (released > 0) System.out.println("♻️ Released " + released + " job lease(s) left by a previous run");
+            exec.background("batch-prediction-resume", Lane.BATCH, this::resumeBatchPredictions);
+            List<Map<String,Object>> rows = storage.listResumableJobs(getCurrentUserId(), System.currentTimeMillis());
+            if (rows.isEmpty()) return;
+
+            List<DocJob> jobs = new ArrayList<>(rows.size());
+            for (Map<String,Object> row : rows) {
+                DocJob job = new DocJob(new File(String.valueOf(row.get("file_path"))),
+                        !BatchProfile.LAZY_SUMMARY.name().equals(row.get("profile")));
+                job.jobId = ((Number) row.get("id")).longValue();
+                job.checkpoint = row.get("stage") == null ? "queued" : String.valueOf(row.get("stage"));
+                job.restored = row;
+                jobs.add(job);
+            }
+            System.out.println("♻️ Resuming " + jobs.size() + " unfinished batch job(s)");
+            List<BatchResult> results = runJobs(jobs, p -> System.out.println(
+                    String.format("♻️ %d/%d: %s - %s", p.index, p.total, p.filename, p.status)));
+            long failed = results.stream().filter(r -> !r.ok).count();
+            System.out.println("✅ Resumed batch finished. Failures: " + failed);
+            if (mainWindow != null) SwingUtilities.invokeLater(() -> mainWindow.onJobsResumed(results.size(), (int) failed));
+        } catch (InterruptedException e) {
+            // shutting down; the jobs stay resumable
+        } catch (Exception e) {
+            System.err.println("⚠️ Resuming batch jobs failed: " + e.getMessage());
+        }
+    }
+
+    private static String stageStatus(String stage) {
+        switch (stage) {
+            case "extract": return "Extracting…";
+            case "classify": return "Classifying…";
+            case "override": return "Checking label…";
+            case "summarize": return "Summarizing…";
+            case "save": return "Saving…";
+            default: return "Processing…";
+        }
     }
 
     // === HELPER METHODS ===
 
-    private int getPageCount(File file) {
-        // Simple implementation - you might have a better way
-        // For now, return 1 page as default
-        return 1;
+    private int getPageCount(DocumentSession session) {
+        try {
+            return session.getPageCount();
+        } catch (Exception e) {
+            System.err.println("⚠️ Page count unavailable for " + session.getFile().getName() + ": " + e.getMessage());
+            return 1;
+        }
     }
 
     /**
@@ -840,7 +1354,16 @@ public class UIController {
             Consumer<String> onProgress,
             Consumer<Map<File, Exception>> onDone
     ) {
-        System.out.println("🚀 runBatch called with " + files.size() + " files");
+        runBatch(files, BatchProfile.fromProperty(), onProgress, onDone);
+    }
+
+    public void runBatch(
+            List<File> files,
+            BatchProfile profile,
+            Consumer<String> onProgress,
+            Consumer<Map<File, Exception>> onDone
+    ) {
+        System.out.println("🚀 runBatch called with " + files.size() + " files (" + profile + ")");
 
         // Convert the progress format for runPipelineBatch
         Consumer<BatchProgress> progressConsumer = progress -> {
@@ -870,7 +1393,33 @@ public class UIController {
         };
 
         // Call your existing runPipelineBatch method
-        runPipelineBatch(files, progressConsumer, doneConsumer, errorConsumer);
+        runPipelineBatch(files, profile, progressConsumer, doneConsumer, errorConsumer);
+    }
+
+    /**
+     * Same callbacks as {@link #runBatch}, but the model calls go out as one batch prediction job
+     */
+    public void runBatchOvernight(
+            List<File> files,
+            Consumer<String> onProgress,
+            Consumer<Map<File, Exception>> onDone
+    ) {
+        runBatchPrediction(files,
+                progress -> onProgress.accept(progress.index > 0
+                        ? String.format("Batch %d/%d: %s - %s", progress.index, progress.total, progress.filename, progress.status)
+                        : progress.status),
+                results -> {
+                    Map<File, Exception> failures = new HashMap<>();
+                    for (BatchResult result : results) {
+                        if (!result.ok && result.error != null) failures.put(result.file, result.error);
+                    }
+                    onDone.accept(failures);
+                },
+                error -> {
+                    Map<File, Exception> failures = new HashMap<>();
+                    for (File file : files) failures.put(file, error);
+                    onDone.accept(failures);
+                });
     }
 
     /**
@@ -881,55 +1430,386 @@ public class UIController {
             Consumer<String> onProgress,
             Consumer<Map<File, Exception>> onDone
     ) {
-        new Thread(() -> {
-            Map<File, Exception> failures = new HashMap<>();
-            int processed = 0;
-            int total = files.size();
+        System.out.println("🔄 Starting direct batch processing for " + files.size() + " files");
+        runPipelineBatch(files, BatchProfile.FULL,
+                progress -> onProgress.accept(String.format("Processing %d/%d: %s - %s",
+                        progress.index, progress.total, progress.filename, progress.status)),
+                results -> {
+                    Map<File, Exception> failures = new HashMap<>();
+                    for (BatchResult result : results) {
+                        if (!result.ok && result.error != null) failures.put(result.file, result.error);
+                    }
+                    System.out.println("✅ Batch processing completed. Failures: " + failures.size());
+                    onDone.accept(failures);
+                },
+                error -> {
+                    Map<File, Exception> failures = new HashMap<>();
+                    for (File file : files) failures.put(file, error);
+                    onDone.accept(failures);
+                });
+    }
 
-            System.out.println("🔄 Starting direct batch processing for " + total + " files");
+    // === VERTEX BATCH PREDICTION ===
 
-            for (File file : files) {
-                processed++;
-                String progressMsg = String.format("Processing %d/%d: %s", processed, total, file.getName());
-                onProgress.accept(progressMsg);
-                System.out.println(progressMsg);
+    private static final long BATCH_PREDICTION_TIMEOUT_MS = 24L * 60 * 60 * 1000;
+    private static final int BATCH_RECORD_FLUSH = 100;
+    private static final DateTimeFormatter BATCH_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
 
-                try {
-                    // Check if we still have credits
-                    if (!canProcessDocuments()) {
-                        CreditService.UserCreditInfo info = getUserCreditInfo();
-                        String errorMsg = info.isSuspended() ?
-                                "Account suspended: " + info.getSuspensionReason() :
-                                "Insufficient credits: " + info.getCreditsBalance();
-                        failures.put(file, new IllegalStateException(errorMsg));
-                        continue;
+    // jobs this run submitted or resumed (never removed); startup resume leaves them alone
+    private final Set<String> activeBatchPredictions = java.util.concurrent.ConcurrentHashMap.newKeySet();
+
+    /** True when an overnight backend is configured (-Dvertex.batch.bucket=... or -Dvertex.batch.backend=local). */
+    public boolean isBatchPredictionAvailable() {
+        String bucket = System.getProperty("vertex.batch.bucket", "");
+        return !bucket.isBlank() || "local".equalsIgnoreCase(System.getProperty("vertex.batch.backend", ""));
+    }
+
+    private BatchPredictionBackend batchBackend() {
+        if ("local".equalsIgnoreCase(System.getProperty("vertex.batch.backend", ""))) {
+            return new LocalBatchBackend(batchWorkDir().resolve("local"));
+        }
+        String bucket = System.getProperty("vertex.batch.bucket", "");
+        if (bucket.isBlank()) {
+            throw new IllegalStateException("Batch prediction needs -Dvertex.batch.bucket=<gcs bucket> (or -Dvertex.batch.backend=local)");
+        }
+        return new VertexBatchBackend(summarizerRest.getProjectId(), summarizerRest.getLocation(), bucket, () -> {
+            String token = tokenManager.getAccessToken();
+            if (token == null || token.isBlank()) throw new IllegalStateException("Not signed in");
+            return token;
+        });
+    }
+
+    private Path batchWorkDir() {
+        return storage.getBaseDir().resolve("data").resolve("batch");
+    }
+
+    /** Per-document state while its batch requests are outstanding. */
+    private static final class BatchDoc {
+        final File file;
+        final String extracted;
+        final String bodyText;
+        final int credits;
+        final int pageCount;
+        final int boilerplateRemoved;
+        final double confidence;
+        final UsageLedger usage = new UsageLedger();
+        String label;
+        String summary;
+        int pending;
+
+        BatchDoc(File file, String extracted, String bodyText, int credits, int pageCount,
+                 int boilerplateRemoved, String label, double confidence) {
+            this.file = file; this.extracted = extracted; this.bodyText = bodyText; this.credits = credits;
+            this.pageCount = pageCount; this.boilerplateRemoved = boilerplateRemoved;
+            this.label = label; this.confidence = confidence;
+        }
+    }
+
+    /**
+     * Overnight batch: extraction and SVM classification run locally, then every summary (and
+     * every low-confidence Gemini classification) goes out as one batch prediction job, which
+     * is priced well below online calls. Results are matched back per document, credits are
+     * deducted as each document completes, and records are written in bulk.
+     */
+    public void runBatchPrediction(
+            List<File> files,
+            Consumer<BatchProgress> onProgress,
+            Consumer<List<BatchResult>> onDone,
+            Consumer<Exception> onError
+    ) {
+        // waits on the remote job for hours; each backend request takes an I/O slot on its own
+        exec.background("batch-prediction-thread", Lane.BATCH, () -> {
+            List<BatchResult> results = new ArrayList<>();
+            try {
+                ensureSignedIn();
+
+                if (!canProcessDocuments()) {
+                    CreditService.UserCreditInfo info = getUserCreditInfo();
+                    if (info.isSuspended()) {
+                        throw new IllegalStateException("Account suspended: " + info.getSuspensionReason());
+                    } else {
+                        throw new IllegalStateException("Insufficient credits. Available: " + info.getCreditsBalance() + " credits");
                     }
+                }
 
-                    // Check if file already processed
-                    String sha = StorageManager.sha256(file);
-                    Map<String,Object> existing = storage.getBySha256(sha);
-                    if (existing != null && Integer.valueOf(1).equals(existing.get("processed"))) {
-                        System.out.println("⏭️ Skipping already processed file: " + file.getName());
-                        continue;
+                BatchPredictionBackend backend = batchBackend();
+                String accessToken = null;
+                try { accessToken = tokenManager.getAccessToken(); } catch (Exception ignored) {}
+                Map<String,String> env = new HashMap<>();
+                if (accessToken != null && !accessToken.isBlank()) env.put("GOOGLE_OAUTH_ACCESS_TOKEN", accessToken);
+
+                // 1) local stages: extract, strip, SVM classify, build the requests
+                List<BatchPredictionRunner.Item> items = new ArrayList<>();
+                Map<Integer, BatchDoc> docByItem = new HashMap<>();
+                GenerativeClassifierRest gRest = new GenerativeClassifierRest("gemini-2.5-flash");
+                int total = files.size();
+                int idx = 0;
+                for (File f : files) {
+                    idx++;
+                    onProgress.accept(new BatchProgress(idx, total, f.getName(), "Preparing…"));
+                    try {
+                        String sha = StorageManager.sha256(f);
+                        Map<String,Object> existing = storage.getBySha256(sha);
+                        if (existing != null && Integer.valueOf(1).equals(existing.get("processed"))) {
+                            onProgress.accept(new BatchProgress(idx, total, f.getName(), "Skipped (already processed)"));
+                            results.add(BatchResult.skipped(f));
+                            continue;
+                        }
+
+                        BatchDoc doc;
+                        try (DocumentSession session = DocumentSession.open(f)) {
+                            String extracted = exec.callCpu("extract", () -> extractor.extract(session));
+                            if (extracted == null) extracted = "";
+                            BoilerplateStripper.Result stripped = stripBoilerplate(session, extracted);
+                            DocJob svm = classifyLocally(f, stripped.text, env);
+                            doc = new BatchDoc(f, extracted, stripped.text, calculateProcessingCredits(session, extracted),
+                                    getPageCount(session), stripped.removedChars,
+                                    svm.prediction, svm.confidence);
+                        }
+
+                        docByItem.put(items.size(), doc);
+                        items.add(summarizerRest.batchItem(doc.bodyText));
+                        doc.pending++;
+                        if (doc.confidence < GEMINI_OVERRIDE_THRESHOLD) {
+                            docByItem.put(items.size(), doc);
+                            items.add(gRest.batchItem(doc.bodyText, ALLOWED_LABELS));
+                            doc.pending++;
+                        }
+                        onProgress.accept(new BatchProgress(idx, total, f.getName(), "Queued for batch"));
+                    } catch (Exception exOne) {
+                        onProgress.accept(new BatchProgress(idx, total, f.getName(), "Failed: " + exOne.getMessage()));
+                        results.add(BatchResult.failure(f, exOne));
                     }
+                }
+                if (items.isEmpty()) {
+                    onDone.accept(results);
+                    return;
+                }
 
-                    // Process the file
-                    Map<String, Object> result = runPipelineSync(file);
-                    System.out.println("✅ Successfully processed: " + file.getName());
+                // 2) submit; the job is recorded so a restart resumes polling instead of losing it
+                BatchPredictionRunner runner = new BatchPredictionRunner(backend, summarizerRest.getModelId(), batchWorkDir());
+                String displayName = "sdc-" + LocalDateTime.now().format(BATCH_NAME_FORMAT);
+                writeBatchManifest(displayName, docByItem);
+                String jobId = runner.submit(items, displayName);
+                activeBatchPredictions.add(jobId);
+                storage.createBatchPrediction(jobId, displayName, getCurrentUserId());
+                onProgress.accept(new BatchProgress(0, total, displayName, "Batch job submitted (" + items.size() + " requests)"));
+
+                // 3) wait, then match results back
+                awaitBatchPrediction(runner, jobId, displayName, docByItem, results, onProgress);
+                onDone.accept(results);
+            } catch (Exception e) {
+                onError.accept(e);
+            }
+        });
+    }
 
-                    // Save results
-                    saveResults(file, result);
+    /**
+     * Wait for a submitted job, then match its results back and store documents as they
+     * complete. A job still running at the timeout stays recorded and is picked up again on
+     * the next start; a failed one is marked failed.
+     */
+    private void awaitBatchPrediction(BatchPredictionRunner runner, String jobId, String displayName,
+                                      Map<Integer, BatchDoc> docByItem, List<BatchResult> results,
+                                      Consumer<BatchProgress> onProgress) throws Exception {
+        int docCount = new HashSet<>(docByItem.values()).size();
+        BatchPredictionBackend.JobStatus status = runner.await(jobId,
+                st -> onProgress.accept(new BatchProgress(0, docCount, displayName, "Batch job " + st)),
+                BATCH_PREDICTION_TIMEOUT_MS);
+        if (status.state != BatchPredictionBackend.JobState.SUCCEEDED) {
+            if (status.state.isTerminal()) {
+                storage.finishBatchPrediction(jobId, "failed", String.valueOf(status));
+                deleteBatchManifest(displayName);
+            }
+            throw new IllegalStateException("Batch job " + jobId + " did not succeed: " + status);
+        }
 
+        List<Map<String,Object>> records = new ArrayList<>();
+        int[] done = {0};
+        runner.collect(jobId, r -> {
+            BatchDoc doc = docByItem.remove(r.index);
+            if (doc == null) return;
+            UsageLedger.record(doc.usage, "classify".equals(r.task) ? UsageLedger.OVERRIDE : UsageLedger.SINGLE,
+                    summarizerRest.getModelId(), r.usage, 0);
+            if ("classify".equals(r.task)) {
+                if (r.ok()) {
+                    GenerativeClassifierRest.Result g = GenerativeClassifierRest.parseText(r.text, ALLOWED_LABELS);
+                    if (g != null && g.label != null && !g.label.isBlank()) doc.label = g.label.trim();
+                }
+            } else {
+                doc.summary = r.ok() ? r.text : extractiveFallback(doc.bodyText, 8);
+            }
+            if (--doc.pending == 0) {
+                done[0]++;
+                finishBatchDoc(doc, records, results);
+                onProgress.accept(new BatchProgress(done[0], docCount, doc.file.getName(), "Done"));
+                if (records.size() >= BATCH_RECORD_FLUSH) flushRecords(records);
+            }
+        });
+
+        // requests the job dropped: fall back locally so the document is not lost
+        for (BatchDoc doc : new LinkedHashSet<>(docByItem.values())) {
+            if (doc.summary == null) doc.summary = extractiveFallback(doc.bodyText, 8);
+            done[0]++;
+            finishBatchDoc(doc, records, results);
+            onProgress.accept(new BatchProgress(done[0], docCount, doc.file.getName(), "Done (no batch output)"));
+        }
+        flushRecords(records);
+        storage.finishBatchPrediction(jobId, "done", null);
+        deleteBatchManifest(displayName);
+    }
+
+    /**
+     * Once a user is signed in, pick up the batch prediction jobs a previous run submitted but
+     * never collected (closed overnight, crash), so the paid-for results are not lost.
+     */
+    private void resumeBatchPredictions() {
+        try {
+            List<Map<String,Object>> rows = storage.listRunningBatchPredictions(getCurrentUserId());
+            for (Map<String,Object> row : rows) {
+                String jobId = String.valueOf(row.get("job_name"));
+                String displayName = String.valueOf(row.get("display_name"));
+                if (!activeBatchPredictions.add(jobId)) continue;
+                Map<Integer, BatchDoc> docByItem;
+                try {
+                    docByItem = readBatchManifest(displayName);
+                } catch (IOException e) {
+                    System.err.println("⚠️ Batch job " + jobId + " has no readable manifest, dropped: " + e.getMessage());
+                    storage.finishBatchPrediction(jobId, "failed", "manifest unreadable: " + e.getMessage());
+                    continue;
+                }
+                System.out.println("♻️ Resuming batch prediction " + displayName + " (" + jobId + ")");
+                List<BatchResult> results = new ArrayList<>();
+                try {
+                    awaitBatchPrediction(new BatchPredictionRunner(batchBackend(), summarizerRest.getModelId(), batchWorkDir()),
+                            jobId, displayName, docByItem, results, p -> System.out.println(p.index > 0
+                                    ? String.format("♻️ Batch %d/%d: %s - %s", p.index, p.total, p.filename, p.status)
+                                    : "♻️ " + p.filename + ": " + p.status));
+                } catch (InterruptedException e) {
+                    throw e;
                 } catch (Exception e) {
-                    System.err.println("❌ Failed to process " + file.getName() + ": " + e.getMessage());
-                    failures.put(file, e);
+                    System.err.println("⚠️ Resumed batch prediction " + displayName + " failed: " + e.getMessage());
+                    continue;
                 }
+                long failed = results.stream().filter(r -> !r.ok).count();
+                System.out.println("✅ Resumed batch prediction finished. Failures: " + failed);
+                if (mainWindow != null) SwingUtilities.invokeLater(() -> mainWindow.onJobsResumed(results.size(), (int) failed));
             }
+        } catch (InterruptedException e) {
+            // shutting down; the jobs stay recorded
+        } catch (Exception e) {
+            System.err.println("⚠️ Resuming batch predictions failed: " + e.getMessage());
+        }
+    }
 
-            System.out.println("✅ Batch processing completed. Failures: " + failures.size());
-            onDone.accept(failures);
+    /** Where a job's documents wait for its results: manifest.json plus each document's texts. */
+    private Path batchManifestDir(String displayName) {
+        return batchWorkDir().resolve(displayName);
+    }
+
+    /** Save what matching results back needs after a restart: per document its values, request indices and texts. */
+    private void writeBatchManifest(String displayName, Map<Integer, BatchDoc> docByItem) throws IOException {
+        Path dir = batchManifestDir(displayName);
+        Files.createDirectories(dir);
+        Map<BatchDoc, List<Integer>> itemsByDoc = new LinkedHashMap<>();
+        for (Map.Entry<Integer, BatchDoc> e : new TreeMap<>(docByItem).entrySet()) {
+            itemsByDoc.computeIfAbsent(e.getValue(), d -> new ArrayList<>()).add(e.getKey());
+        }
+        List<Map<String,Object>> docs = new ArrayList<>();
+        int n = 0;
+        for (Map.Entry<BatchDoc, List<Integer>> e : itemsByDoc.entrySet()) {
+            BatchDoc doc = e.getKey();
+            Map<String,Object> m = new LinkedHashMap<>();
+            m.put("file", doc.file.getAbsolutePath());
+            m.put("items", e.getValue());
+            m.put("credits", doc.credits);
+            m.put("page_count", doc.pageCount);
+            m.put("boilerplate_removed", doc.boilerplateRemoved);
+            m.put("label", doc.label);
+            m.put("confidence", doc.confidence);
+            docs.add(m);
+            Files.writeString(dir.resolve("doc-" + n + ".extracted.txt"), doc.extracted);
+            Files.writeString(dir.resolve("doc-" + n + ".body.txt"), doc.bodyText);
+            n++;
+        }
+        Files.writeString(dir.resolve("manifest.json"), gson.toJson(docs));
+    }
+
+    private Map<Integer, BatchDoc> readBatchManifest(String displayName) throws IOException {
+        Path dir = batchManifestDir(displayName);
+        List<Map<String,Object>> docs = gson.fromJson(
+                Files.readString(dir.resolve("manifest.json")),
+                new TypeToken<List<Map<String, Object>>>() {}.getType());
+        Map<Integer, BatchDoc> docByItem = new HashMap<>();
+        for (int n = 0; n < docs.size(); n++) {
+            Map<String,Object> m = docs.get(n);
+            BatchDoc doc = new BatchDoc(new File(String.valueOf(m.get("file"))),
+                    Files.readString(dir.resolve("doc-" + n + ".extracted.txt")),
+                    Files.readString(dir.resolve("doc-" + n + ".body.txt")),
+                    toInt(m.get("credits")), toInt(m.get("page_count")), toInt(m.get("boilerplate_removed")),
+                    String.valueOf(m.get("label")), ((Number) m.get("confidence")).doubleValue());
+            for (Object item : (List<?>) m.get("items")) {
+                docByItem.put(toInt(item), doc);
+                doc.pending++;
+            }
+        }
+        return docByItem;
+    }
+
+    private void deleteBatchManifest(String displayName) {
+        try (Stream<Path> walk = Files.walk(batchManifestDir(displayName))) {
+            walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException ignored) {}
+    }
+
+    private void finishBatchDoc(BatchDoc doc, List<Map<String,Object>> records, List<BatchResult> results) {
+        try {
+            int credits = usageCredits(doc.pageCount, doc.usage);
+            recordTokenUsage(doc.file, doc.label, doc.usage);
+            if (!deductCredits(credits, "batch_prediction", doc.file.getName())) {
+                throw new IllegalStateException("Failed to deduct credits for processing");
+            }
+            Map<String,Object> res = new HashMap<>();
+            res.put("extracted", doc.extracted);
+            res.put("prediction", doc.label);
+            res.put("confidence", doc.confidence);
+            res.put("summary", doc.summary == null ? "" : doc.summary);
+            res.put("credits_used", credits);
+            res.put("credits_estimated", doc.credits);
+            res.put("prompt_tokens", doc.usage.promptTokens());
+            res.put("output_tokens", doc.usage.outputTokens());
+            res.put("page_count", doc.pageCount);
+            res.put("boilerplate_chars_removed", doc.boilerplateRemoved);
+            Map<String,Object> rec = persistResultFiles(doc.file, res, "Saved from batch prediction");
+            records.add(rec);
+            results.add(BatchResult.success(doc.file, 0, res, rec, 0));
+        } catch (Exception e) {
+            results.add(BatchResult.failure(doc.file, e));
+        }
+    }
+
+    private void flushRecords(List<Map<String,Object>> records) {
+        if (records.isEmpty()) return;
+        try {
+            storage.upsertDocumentRecords(records);
+        } catch (SQLException e) {
+            System.err.println("⚠️ Bulk upsert failed, retrying row by row: " + e.getMessage());
+            for (Map<String,Object> rec : records) {
+                try { storage.upsertDocumentRecord(rec); } catch (Exception ex) {
+                    System.err.println("❌ Record not saved for " + rec.get("filename") + ": " + ex.getMessage());
+                }
+            }
+        }
+        records.clear();
+    }
 
-        }, "batch-direct-thread").start();
+    /** Python preprocess + SVM classify of {@code text} outside a pipeline run; the job carries prediction and confidence. */
+    private DocJob classifyLocally(File file, String text, Map<String,String> env) throws Exception {
+        DocJob job = new DocJob(file, false);
+        job.bodyText = text;
+        job.env = env;
+        classifyStage(job);
+        return job;
     }
 
     public TokenManager getTokenManager() {
@@ -945,77 +1825,127 @@ public class UIController {
             this.index = index; this.total = total; this.filename = filename; this.status = status;
         }
     }
+    /**
+     * Outcome of one batch document: ids, label, counters and where its texts were stored.
+     * The texts themselves are not kept; {@link #loadExtracted} and {@link #loadSummary}
+     * read them back when a consumer needs them.
+     */
     public static class BatchResult {
         public final File file;
-        public final boolean ok;           // This field exists
-        public final boolean success;      // Add this field for compatibility
-        public final Map<String,Object> data;
+        public final boolean ok;
+        public final boolean success;      // same as ok, for older callers
+        public final boolean skipped;
         public final Exception error;
 
-        private BatchResult(File f, boolean ok, Map<String,Object> data, Exception e) {
+        public final long jobId;           // jobs table row, 0 when the batch wasn't durable
+        public final String sha256;        // documents table key
+        public final String label;
+        public final double confidence;
+        public final String summaryStatus; // "ready" or "pending"
+        public final int pageCount;
+        public final int creditsUsed;
+        public final int promptTokens;
+        public final int outputTokens;
+        public final long extractMs;
+        public final long summaryMs;
+        public final long elapsedMs;       // queued to saved
+        public final String storedPath;    // the original, moved under its label
+        public final String extractedPath;
+        public final String summaryPath;   // null while a deferred summary is pending
+
+        private BatchResult(File f, boolean ok, boolean skipped, Exception e, long jobId,
+                            Map<String,Object> result, Map<String,Object> record, long elapsedMs) {
             this.file = f;
             this.ok = ok;
-            this.success = ok;  // Map ok to success
-            this.data = data;
+            this.success = ok;
+            this.skipped = skipped;
             this.error = e;
+            this.jobId = jobId;
+            this.sha256 = str(record.get("sha256"));
+            this.label = str(record.get("predicted_label"));
+            this.confidence = record.get("confidence") instanceof Number ? ((Number) record.get("confidence")).doubleValue() : 0.0;
+            this.summaryStatus = str(record.get("summary_status"));
+            this.pageCount = (int) num(result.get("page_count"));
+            this.creditsUsed = (int) num(result.get("credits_used"));
+            this.promptTokens = (int) num(result.get("prompt_tokens"));
+            this.outputTokens = (int) num(result.get("output_tokens"));
+            this.extractMs = num(result.get("extract_ms"));
+            this.summaryMs = num(result.get("summary_latency_ms"));
+            this.elapsedMs = elapsedMs;
+            this.storedPath = str(record.get("stored_input_path"));
+            this.extractedPath = str(record.get("extracted_path"));
+            this.summaryPath = str(record.get("summary_path"));
         }
 
-        public static BatchResult success(File f, Map<String,Object> data){
-            return new BatchResult(f, true, data, null);
+        /**
+         * @param result the pipeline result map (counters); its texts are not retained
+         * @param record the row persistResultFiles stored
+         */
+        public static BatchResult success(File f, long jobId, Map<String,Object> result, Map<String,Object> record, long elapsedMs) {
+            return new BatchResult(f, true, false, null, jobId, result, record, elapsedMs);
         }
 
         public static BatchResult failure(File f, Exception e){
-            return new BatchResult(f, false, null, e);
+            return new BatchResult(f, false, false, e, 0, Map.of(), Map.of(), 0);
         }
 
         public static BatchResult skipped(File f){
-            return new BatchResult(f, true, Map.of("skipped", true), null);
+            return new BatchResult(f, true, true, null, 0, Map.of(), Map.of(), 0);
         }
-    }
 
-    // === Long-text summarization helper ===
-    private String summarizeLongText(String text, String accessToken) throws Exception {
-        if (text == null) text = "";
-        text = text.strip();
-        if (text.isEmpty()) return "";
-
-        // REDUCE CHUNK SIZE to avoid token limits
-        final int CHUNK = 4000;  // Reduced from 8000
+        /** The extracted text, read from disk; "" when there is none. */
+        public String loadExtracted() throws IOException {
+            return read(extractedPath);
+        }
 
-        List<String> parts = new ArrayList<>();
-        for (int i = 0; i < text.length(); i += CHUNK) {
-            parts.add(text.substring(i, Math.min(text.length(), i + CHUNK)));
+        /** The summary, read from disk; "" when there is none (yet). */
+        public String loadSummary() throws IOException {
+            return read(summaryPath);
         }
 
-        List<String> partials = new ArrayList<>();
-        for (String p : parts) {
-            // SIMPLIFY THE PROMPT to use fewer tokens
-            String prompt = "Summarize this legal document clearly. Focus on:\n"
-                    + "• Parties involved\n• Main purpose\n• Key facts\n• Important dates\n\n"
-                    + p;
+        private static String read(String path) throws IOException {
+            return path == null || !Files.exists(Path.of(path)) ? "" : Files.readString(Path.of(path));
+        }
 
-            // REDUCE MAX TOKENS for response
-            String s = summarizerRest.smartSummarize(prompt, accessToken, 6144, 120);
-            if (s == null || s.isEmpty() || s.contains("MAX_TOKENS")) {
-                // Fallback: extract first few sentences
-                s = extractiveFallback(p, 3);
-            }
-            partials.add(s);
+        private static String str(Object o) {
+            return o == null ? null : o.toString();
         }
 
-        if (partials.size() == 1) {
-            return partials.get(0);
+        private static long num(Object o) {
+            return o instanceof Number ? ((Number) o).longValue() : 0;
         }
+    }
 
-        // For multiple parts, combine with a simpler prompt
-        String combined = String.join("\n\n", partials);
-        String finalPrompt = "Combine these summaries into one concise summary:\n\n" + combined;
+    public boolean saveResults(File storedFile, Map<String,Object> pipelineResult) throws Exception {
+        saveRecord(storedFile, pipelineResult);
+        return true;
+    }
 
-        // Use even fewer tokens for final combination
-        return summarizerRest.smartSummarize(finalPrompt, accessToken, 6144, 120);
+    /** Store the files and the row, queue pending enrichment; returns the stored record. */
+    private Map<String,Object> saveRecord(File storedFile, Map<String,Object> pipelineResult) throws Exception {
+        Map<String,Object> rec = persistResultFiles(storedFile, pipelineResult, "Saved from UI");
+        storage.upsertDocumentRecord(rec);
+        if ("pending".equals(rec.get("summary_status"))) {
+            boolean needSummary = Boolean.TRUE.equals(pipelineResult.get("summary_pending"));
+            boolean needOverride = Boolean.TRUE.equals(pipelineResult.get("override_pending"));
+            try {
+                int priority = ((Number) pipelineResult.getOrDefault("enrichment_priority", PRIORITY_RETRY)).intValue();
+                // lazy summaries are due right away, the worker just gets to them after the retries
+                long dueAt = System.currentTimeMillis() + (priority == PRIORITY_LAZY ? 0 : ENRICHMENT_BASE_DELAY_MS);
+                storage.enqueueEnrichment(String.valueOf(rec.get("sha256")), String.valueOf(rec.get("owner_id")),
+                        needSummary, needOverride, priority, dueAt,
+                        String.valueOf(pipelineResult.getOrDefault("enrichment_reason", "")));
+                System.out.println("⏳ " + storedFile.getName() + " queued for deferred "
+                        + (needSummary ? needOverride ? "summary and label override" : "summary" : "label override"));
+            } catch (SQLException e) {
+                System.err.println("⚠️ Could not queue " + storedFile.getName() + " for enrichment: " + e.getMessage());
+            }
+        }
+        return rec;
     }
 
-    public boolean saveResults(File storedFile, Map<String,Object> pipelineResult) throws Exception {
+    /** Moves the original under its label and writes extracted/summary files; returns the DB record to upsert. */
+    private Map<String,Object> persistResultFiles(File storedFile, Map<String,Object> pipelineResult, String notes) throws Exception {
         if (storage == null) throw new IllegalStateException("Storage not available");
 
         String owner = tokenManager != null ? tokenManager.getCurrentUserId() : "anonymous";
@@ -1034,7 +1964,9 @@ public class UIController {
 
         Path labeled = storage.moveOriginalToLabel(existing, owner, pred);
         Path extractedPath = storage.storeExtracted(owner, pred, storedFile.getName(), extracted);
-        Path summaryPath   = storage.storeSummary(owner, pred, storedFile.getName(), summary);
+        // a summary deferred by the lazy profile has no file until it is generated
+        boolean noSummaryYet = "pending".equals(pipelineResult.get("summary_status")) && summary.isBlank();
+        Path summaryPath   = noSummaryYet ? null : storage.storeSummary(owner, pred, storedFile.getName(), summary);
 
         String sha = StorageManager.sha256(labeled.toFile());
         double conf = 0.0;
@@ -1049,21 +1981,247 @@ public class UIController {
         rec.put("original_path", labeled.toString());
         rec.put("stored_input_path", labeled.toString());
         rec.put("extracted_path", extractedPath.toString());
-        rec.put("summary_path", summaryPath.toString());
+        rec.put("summary_path", summaryPath == null ? null : summaryPath.toString());
         rec.put("predicted_label", pred);
         rec.put("confidence", conf);
         rec.put("sha256", sha);
         rec.put("processed", 1);
-        rec.put("notes", "Saved from UI");
+        rec.put("notes", notes);
         rec.put("owner_id", owner);
+        rec.put("summary_status", "pending".equals(pipelineResult.get("summary_status")) ? "pending" : "ready");
+        return rec;
+    }
 
-        storage.upsertDocumentRecord(rec);
-        return true;
+    // === DEFERRED ENRICHMENT ===
+
+    /** Marks a pipeline result whose summary and/or label override still have to come from the model. */
+    private static void putEnrichmentStatus(Map<String,Object> out, boolean summaryPending, boolean overridePending) {
+        boolean pending = summaryPending || overridePending;
+        out.put("summary_status", pending ? "pending" : "ready");
+        out.put("summary_pending", summaryPending);
+        out.put("override_pending", overridePending);
+        if (pending) {
+            out.put("enrichment_reason", summaryPending ? "summary call failed" : "override call failed");
+            System.out.println("⏳ Vertex unavailable; " + (summaryPending ? "summary" : "label override")
+                    + " will be retried in the background once the result is saved");
+        }
+    }
+
+    /** Called when the main window closes: running work gets a few seconds, then is interrupted. */
+    public void shutdown() {
+        exec.shutdown(java.time.Duration.ofSeconds(Long.getLong("exec.shutdownGraceSec", 5)));
+    }
+
+    private void startEnrichmentWorker() {
+        exec.background("enrichment-worker", Lane.BACKGROUND, this::runEnrichmentWorker);
+    }
+
+    /** Polls the queue for the signed-in user's due entries; one entry at a time, behind the shared rate limits. */
+    private void runEnrichmentWorker() {
+        while (true) {
+            try {
+                Thread.sleep(ENRICHMENT_POLL_MS);
+                if (tokenManager == null || !tokenManager.isSignedIn()) continue;
+                String owner = getCurrentUserId();
+                for (Map<String,Object> row : storage.claimDueEnrichment(owner, 4, System.currentTimeMillis(), ENRICHMENT_LEASE_MS)) {
+                    String sha = String.valueOf(row.get("sha256"));
+                    // opened in the meantime and being summarized on demand
+                    if (!enrichingNow.add(sha)) continue;
+                    try {
+                        enrich(row, null);
+                    } catch (Exception e) {
+                        // already rescheduled or abandoned by enrich
+                    } finally {
+                        enrichingNow.remove(sha);
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                System.err.println("⚠️ Enrichment worker: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Generate a document's queued summary now instead of waiting for the worker (the document
+     * was opened). Runs on its own thread; {@code onDelta} receives the streamed summary and
+     * {@code onDone} the final text, which is the stored summary when nothing was queued.
+     */
+    public void summarizeNow(File storedFile, Consumer<String> onDelta, Consumer<String> onDone, Consumer<Exception> onError) {
+        exec.io("summary-on-demand", Lane.INTERACTIVE, () -> {
+            try {
+                ensureSignedIn();
+                String sha = StorageManager.sha256(storedFile);
+                // the worker already has it: wait for its result instead of paying twice
+                long deadline = System.currentTimeMillis() + ENRICHMENT_LEASE_MS;
+                while (!enrichingNow.add(sha)) {
+                    if (System.currentTimeMillis() > deadline) throw new IllegalStateException("Summary is still being generated");
+                    Thread.sleep(500);
+                }
+                try {
+                    Map<String,Object> row = storage.getEnrichment(sha);
+                    if (row != null && "pending".equals(row.get("summary_status"))) {
+                        onDone.accept(enrich(row, onDelta));
+                        return;
+                    }
+                    Map<String,Object> doc = storage.getBySha256(sha);
+                    Object p = doc == null ? null : doc.get("summary_path");
+                    onDone.accept(p != null && Files.exists(Path.of(p.toString())) ? Files.readString(Path.of(p.toString())) : "");
+                } finally {
+                    enrichingNow.remove(sha);
+                }
+            } catch (Exception e) {
+                onError.accept(e);
+            }
+        });
+    }
+
+    /**
+     * Fill in one queued document and return its summary. On failure the entry is rescheduled
+     * (transient) or abandoned, and the exception is rethrown.
+     */
+    private String enrich(Map<String,Object> row, Consumer<String> onDelta) throws Exception {
+        int queueId = ((Number) row.get("queue_id")).intValue();
+        int attempts = ((Number) row.get("attempts")).intValue() + 1;
+        String sha = String.valueOf(row.get("sha256"));
+        String filename = String.valueOf(row.get("filename"));
+        Object status = row.get("summary_status");
+        String summaryPath = (String) row.get("summary_path");
+        if (!"pending".equals(status)) {
+            // re-run and saved since it was queued
+            storage.finishEnrichment(queueId, sha, status == null ? null : status.toString());
+            return summaryPath != null ? Files.readString(Path.of(summaryPath)) : "";
+        }
+        if (!canProcessDocuments()) {
+            storage.rescheduleEnrichment(queueId, attempts - 1, System.currentTimeMillis() + ENRICHMENT_MAX_DELAY_MS,
+                    "no credits or account suspended");
+            throw new IllegalStateException("Insufficient credits for the summary");
+        }
+        try {
+            String accessToken = tokenManager.getAccessToken();
+            if (accessToken == null || accessToken.isBlank()) throw new IOException("no access token");
+
+            Path stored = Path.of(String.valueOf(row.get("stored_input_path")));
+            String extractedPath = (String) row.get("extracted_path");
+            String extracted = extractedPath != null ? Files.readString(Path.of(extractedPath)) : "";
+            String bodyText = extracted;
+            try (DocumentSession session = DocumentSession.open(stored.toFile())) {
+                bodyText = stripBoilerplate(session, extracted).text;
+            } catch (Exception ignored) {}
+
+            UsageLedger usage = new UsageLedger();
+            String body = bodyText;
+            String label = String.valueOf(row.get("predicted_label"));
+            String newLabel = label;
+            if (toDouble(row.get("need_override")) > 0) {
+                GenerativeClassifierRest.Result gRes = modelGate.call(() -> new GenerativeClassifierRest("gemini-2.5-flash")
+                        .classifyWithToken(body, ALLOWED_LABELS, accessToken, usage));
+                if (gRes != null && gRes.label != null && !gRes.label.isBlank()) newLabel = gRes.label.trim();
+            }
+            String summary;
+            if (toDouble(row.get("need_summary")) <= 0) {
+                summary = summaryPath != null ? Files.readString(Path.of(summaryPath)) : "";
+            } else if (onDelta != null) {
+                summary = modelGate.call(() -> summarizerRest.summarizeStreaming(body, accessToken, 120, onDelta, usage)).text;
+            } else {
+                summary = modelGate.call(() -> summarizerRest.summarize(body, accessToken, 120, usage));
+            }
+
+            File labeledFile = stored.toFile();
+            if (newLabel.equals(label)) {
+                storage.updateSummary(sha, getCurrentUserId(), label, filename, summary);
+            } else {
+                // relabeled: move the original and rewrite both text files under the new label
+                Map<String,Object> result = new HashMap<>();
+                result.put("prediction", newLabel);
+                result.put("extracted", extracted);
+                result.put("summary", summary);
+                result.put("confidence", row.get("confidence"));
+                Map<String,Object> rec = persistResultFiles(stored.toFile(), result,
+                        row.get("notes") == null ? null : row.get("notes").toString());
+                storage.upsertDocumentRecord(rec);
+                if (extractedPath != null) Files.deleteIfExists(Path.of(extractedPath));
+                if (summaryPath != null) Files.deleteIfExists(Path.of(summaryPath));
+                labeledFile = new File(String.valueOf(rec.get("stored_input_path")));
+            }
+            storage.finishEnrichment(queueId, sha, "ready");
+
+            // the pages were charged with the document; only the deferred model calls are billed now
+            recordTokenUsage(labeledFile, newLabel, usage);
+            int credits = creditService.calculateTokenCredits(usage.promptTokens(), usage.outputTokens());
+            if (credits > 0) {
+                try {
+                    deductCredits(credits, "deferred_enrichment", filename);
+                } catch (CreditService.CreditException e) {
+                    System.err.println("⚠️ Deferred enrichment of " + filename + " not charged: " + e.getMessage());
+                }
+            }
+            System.out.println("✅ Deferred enrichment done for " + filename + " (" + usage + ")");
+            if (mainWindow != null) SwingUtilities.invokeLater(() -> mainWindow.onEnrichmentCompleted(filename));
+            return summary;
+        } catch (Exception e) {
+            if (ResilientTransport.isTransient(e) && attempts < ENRICHMENT_MAX_ATTEMPTS) {
+                // exponential backoff with jitter so a recovering endpoint isn't hit by the whole queue at once
+                long delay = Math.min(ENRICHMENT_MAX_DELAY_MS, ENRICHMENT_BASE_DELAY_MS << Math.min(attempts - 1, 20));
+                delay = delay / 2 + java.util.concurrent.ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+                storage.rescheduleEnrichment(queueId, attempts, System.currentTimeMillis() + delay, e.getMessage());
+                System.err.println("⏳ Enrichment of " + filename + " failed (attempt " + attempts + "), retrying in "
+                        + delay / 1000 + " s: " + e.getMessage());
+            } else {
+                // the extractive summary, if any, stays
+                storage.finishEnrichment(queueId, sha, "failed");
+                System.err.println("❌ Enrichment of " + filename + " abandoned after " + attempts + " attempt(s): " + e.getMessage());
+            }
+            throw e;
+        }
+    }
+
+    /** Documents of the signed-in user still waiting for a deferred summary or label. */
+    public int getPendingEnrichmentCount() {
+        try {
+            return storage.countPendingEnrichment(getCurrentUserId());
+        } catch (SQLException e) {
+            return 0;
+        }
+    }
+
+    /** summary_path of the signed-in user's documents whose summary is still pending. */
+    public Set<Path> getPendingSummaryPaths() {
+        try {
+            return storage.listPendingSummariesByOwner(getCurrentUserId());
+        } catch (SQLException e) {
+            return Set.of();
+        }
+    }
+
+    /**
+     * Looks up, off the caller's thread, the document {@code p} belongs to (original, extracted or
+     * summary file); {@code onPending} gets its row, from a worker thread, only when its summary
+     * is still queued.
+     */
+    public void findPendingSummary(Path p, Consumer<Map<String,Object>> onPending) {
+        exec.io("pending-summary-lookup", Lane.INTERACTIVE, () -> {
+            try {
+                Map<String,Object> row = storage.findPendingSummaryByPath(p.toAbsolutePath().toString());
+                if (row != null) onPending.accept(row);
+            } catch (SQLException e) {
+                System.err.println("⚠️ Pending summary lookup failed: " + e.getMessage());
+            }
+        });
     }
 
     public StorageManager getStorage() { return storage; }
     public CreditService getCreditService() { return creditService; }
 
+    /** Force fresh model calls (e.g. after a prompt fix); -Dllm.cache.bypass=true does the same at startup. */
+    public void setLlmCacheBypass(boolean bypass) { LlmResponseCache.shared().setBypass(bypass); }
+    public LlmResponseCache.Stats getLlmCacheStats() { return LlmResponseCache.shared().stats(); }
+    /** Per-endpoint latency and byte counters of the shared Google API transport. */
+    public Map<String, GoogleApiTransport.EndpointStats.Snapshot> getTransportStats() { return GoogleApiTransport.shared().stats(); }
+    /** Retry, circuit-breaker and hedging counters per endpoint. */
+    public Map<String, ResilientTransport.Snapshot> getResilienceStats() { return ResilientTransport.shared().stats(); }
+
     public boolean isSignedIn() { return tokenManager.isSignedIn(); }
     public String getCurrentUserId() { return tokenManager != null ? tokenManager.getCurrentUserId() : null; }
     public String debugTokenInfo(){ return tokenManager != null ? tokenManager.debugTokenInfo() : null; }
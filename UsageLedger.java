@@ -0,0 +1,125 @@
+package org.example.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * UsageLedger — token usage of one document's model calls, as reported in usageMetadata.
+ * The pipeline creates one per document and hands it down explicitly to every call that
+ * may reach a model; map-reduce chunk calls record into it concurrently. Cache hits cost
+ * nothing and are not recorded.
+ */
+public final class UsageLedger {
+
+    /** Metering stages. */
+    public static final String OVERRIDE = "override";
+    public static final String COMBINED = "combined";
+    public static final String SINGLE = "single";
+    public static final String CHUNK = "chunk";
+    public static final String MERGE = "merge";
+
+    public static final class Entry {
+        public final String stage;
+        public final String model;
+        public final int promptTokens;
+        public final int outputTokens;     // candidates + thoughts, i.e. what is billed as output
+        public final int cachedTokens;
+        public final int totalTokens;
+        public final long latencyMs;
+
+        Entry(String stage, String model, GenerateContentJson.Usage u, long latencyMs) {
+            this.stage = stage;
+            this.model = model;
+            this.promptTokens = u.promptTokens;
+            this.outputTokens = u.candidatesTokens + u.thoughtsTokens;
+            this.cachedTokens = u.cachedTokens;
+            this.totalTokens = u.totalTokens > 0 ? u.totalTokens : u.promptTokens + outputTokens;
+            this.latencyMs = latencyMs;
+        }
+
+        /** From a {@link #toRecord} map, after a round trip through JSON (numbers may come back as doubles). */
+        Entry(Map<String, Object> r) {
+            this.stage = String.valueOf(r.get("stage"));
+            this.model = String.valueOf(r.get("model"));
+            this.promptTokens = (int) num(r.get("prompt_tokens"));
+            this.outputTokens = (int) num(r.get("output_tokens"));
+            this.cachedTokens = (int) num(r.get("cached_tokens"));
+            this.totalTokens = (int) num(r.get("total_tokens"));
+            this.latencyMs = num(r.get("latency_ms"));
+        }
+
+        private static long num(Object o) {
+            return o instanceof Number ? ((Number) o).longValue() : 0;
+        }
+
+        /** Column map for StorageManager.recordTokenUsage. */
+        public Map<String, Object> toRecord() {
+            Map<String, Object> m = new HashMap<>();
+            m.put("stage", stage);
+            m.put("model", model);
+            m.put("prompt_tokens", promptTokens);
+            m.put("output_tokens", outputTokens);
+            m.put("cached_tokens", cachedTokens);
+            m.put("total_tokens", totalTokens);
+            m.put("latency_ms", latencyMs);
+            return m;
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    /** Null-safe entry point for callers that take an optional ledger. */
+    public static void record(UsageLedger ledger, String stage, String model, GenerateContentJson.Usage usage, long latencyMs) {
+        if (ledger != null && usage != null && usage != GenerateContentJson.Usage.NONE) {
+            ledger.add(new Entry(stage, model, usage, latencyMs));
+        }
+    }
+
+    private synchronized void add(Entry e) {
+        entries.add(e);
+    }
+
+    /** Put back calls saved with {@link #toRecords}, e.g. when a checkpointed job resumes. */
+    public void restore(List<Map<String, Object>> records) {
+        for (Map<String, Object> r : records) add(new Entry(r));
+    }
+
+    public synchronized List<Entry> entries() {
+        return new ArrayList<>(entries);
+    }
+
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public synchronized int promptTokens() {
+        int n = 0;
+        for (Entry e : entries) n += e.promptTokens;
+        return n;
+    }
+
+    public synchronized int outputTokens() {
+        int n = 0;
+        for (Entry e : entries) n += e.outputTokens;
+        return n;
+    }
+
+    public synchronized int totalTokens() {
+        int n = 0;
+        for (Entry e : entries) n += e.totalTokens;
+        return n;
+    }
+
+    public List<Map<String, Object>> toRecords() {
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (Entry e : entries()) out.add(e.toRecord());
+        return out;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return entries.size() + " call(s), " + promptTokens() + " prompt / " + outputTokens() + " output tokens";
+    }
+}
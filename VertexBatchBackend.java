@@ -0,0 +1,175 @@
+package org.example.core;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * VertexBatchBackend — Vertex AI batch prediction for Gemini. The input JSONL is uploaded
+ * to gs://<bucket>/batch/<name>/input.jsonl, a batchPredictionJob reads it and writes
+ * predictions under .../output/, and results are streamed back object by object.
+ * The token supplier is called per request since jobs outlive an access token.
+ */
+public class VertexBatchBackend implements BatchPredictionBackend {
+    private static final ResilientTransport TRANSPORT = ResilientTransport.shared();
+    private static final Duration TIMEOUT = Duration.ofSeconds(120);
+
+    private final String projectId;
+    private final String location;
+    private final String bucket;
+    private final Supplier<String> accessToken;
+
+    public VertexBatchBackend(String projectId, String location, String bucket, Supplier<String> accessToken) {
+        if (bucket == null || bucket.isBlank()) throw new IllegalArgumentException("bucket is required");
+        this.projectId = projectId;
+        this.location = location;
+        this.bucket = bucket;
+        this.accessToken = accessToken;
+    }
+
+    @Override
+    public String submit(Path inputJsonl, String displayName, String modelId) throws Exception {
+        String prefix = "batch/" + displayName;
+        String inputObject = prefix + "/input.jsonl";
+
+        // 1) upload the requests (media upload; JSONL must not be gzip-encoded for the reader)
+        URI upload = URI.create("https://storage.googleapis.com/upload/storage/v1/b/" + bucket
+                + "/o?uploadType=media&name=" + enc(inputObject));
+        GoogleApiTransport.Response up = TRANSPORT.send("gcs.upload", upload, accessToken.get(),
+                Files.readAllBytes(inputJsonl), "application/jsonl", TIMEOUT, false);
+        if (up.statusCode >= 300) {
+            throw new IOException("GCS upload failed: HTTP " + up.statusCode + " -> " + up.body);
+        }
+
+        // 2) create the job
+        JsonObject gcsSource = new JsonObject();
+        JsonArray uris = new JsonArray();
+        uris.add("gs://" + bucket + "/" + inputObject);
+        gcsSource.add("uris", uris);
+        JsonObject inputConfig = new JsonObject();
+        inputConfig.addProperty("instancesFormat", "jsonl");
+        inputConfig.add("gcsSource", gcsSource);
+
+        JsonObject gcsDest = new JsonObject();
+        gcsDest.addProperty("outputUriPrefix", "gs://" + bucket + "/" + prefix + "/output");
+        JsonObject outputConfig = new JsonObject();
+        outputConfig.addProperty("predictionsFormat", "jsonl");
+        outputConfig.add("gcsDestination", gcsDest);
+
+        JsonObject job = new JsonObject();
+        job.addProperty("displayName", displayName);
+        job.addProperty("model", "publishers/google/models/" + modelId);
+        job.add("inputConfig", inputConfig);
+        job.add("outputConfig", outputConfig);
+
+        URI create = URI.create(String.format("https://%s-aiplatform.googleapis.com/v1/projects/%s/locations/%s/batchPredictionJobs",
+                location, projectId, location));
+        GoogleApiTransport.Response resp = TRANSPORT.send("vertex.batchPredictionJobs.create", create, accessToken.get(),
+                job.toString().getBytes(StandardCharsets.UTF_8), TIMEOUT, false);
+        if (resp.statusCode >= 300) {
+            throw new IOException("Vertex batch job creation failed: HTTP " + resp.statusCode + " -> " + resp.body);
+        }
+        String name = JsonParser.parseString(resp.body).getAsJsonObject().get("name").getAsString();
+        System.out.println("📦 Vertex batch job submitted: " + name);
+        return name;
+    }
+
+    @Override
+    public JobStatus poll(String jobId) throws Exception {
+        JsonObject job = getJob(jobId);
+        String state = job.has("state") ? job.get("state").getAsString() : "JOB_STATE_PENDING";
+        String message = job.has("error") && job.getAsJsonObject("error").has("message")
+                ? job.getAsJsonObject("error").get("message").getAsString() : null;
+        long done = -1, failed = 0;
+        if (job.has("completionStats")) {
+            JsonObject cs = job.getAsJsonObject("completionStats");
+            done = cs.has("successfulCount") ? cs.get("successfulCount").getAsLong() : 0;
+            failed = cs.has("failedCount") ? cs.get("failedCount").getAsLong() : 0;
+        }
+        return new JobStatus(jobId, mapState(state), message, done, failed);
+    }
+
+    @Override
+    public void readResults(String jobId, Consumer<String> sink) throws Exception {
+        JsonObject job = getJob(jobId);
+        if (!job.has("outputInfo") || !job.getAsJsonObject("outputInfo").has("gcsOutputDirectory")) {
+            throw new IOException("Batch job has no output directory yet: " + jobId);
+        }
+        String dir = job.getAsJsonObject("outputInfo").get("gcsOutputDirectory").getAsString();
+        String prefix = dir.substring(("gs://" + bucket + "/").length());
+
+        for (String object : listObjects(prefix)) {
+            if (!object.endsWith(".jsonl")) continue;
+            URI media = URI.create("https://storage.googleapis.com/storage/v1/b/" + bucket + "/o/" + enc(object) + "?alt=media");
+            try (GoogleApiTransport.StreamingResponse resp = TRANSPORT.stream("gcs.download", media, accessToken.get(),
+                    (GoogleApiTransport.Body) null, TIMEOUT, null)) {
+                if (resp.statusCode != 200) {
+                    throw new IOException("GCS download failed for " + object + ": HTTP " + resp.statusCode + " -> " + resp.readAll());
+                }
+                resp.lines().filter(l -> !l.isBlank()).forEach(sink);
+            }
+        }
+    }
+
+    @Override
+    public long pollIntervalMillis() { return 60_000; }
+
+    // ===== helpers =====
+
+    private JsonObject getJob(String jobId) throws Exception {
+        URI uri = URI.create(String.format("https://%s-aiplatform.googleapis.com/v1/%s", location, jobId));
+        GoogleApiTransport.Response resp = TRANSPORT.get("vertex.batchPredictionJobs.get", uri, accessToken.get(), TIMEOUT);
+        if (resp.statusCode != 200) {
+            throw new IOException("Vertex batch job lookup failed: HTTP " + resp.statusCode + " -> " + resp.body);
+        }
+        return JsonParser.parseString(resp.body).getAsJsonObject();
+    }
+
+    private List<String> listObjects(String prefix) throws Exception {
+        List<String> names = new ArrayList<>();
+        String pageToken = null;
+        do {
+            String url = "https://storage.googleapis.com/storage/v1/b/" + bucket + "/o?prefix=" + enc(prefix)
+                    + (pageToken != null ? "&pageToken=" + enc(pageToken) : "");
+            GoogleApiTransport.Response resp = TRANSPORT.get("gcs.list", URI.create(url), accessToken.get(), TIMEOUT);
+            if (resp.statusCode != 200) {
+                throw new IOException("GCS list failed: HTTP " + resp.statusCode + " -> " + resp.body);
+            }
+            JsonObject page = JsonParser.parseString(resp.body).getAsJsonObject();
+            if (page.has("items")) {
+                page.getAsJsonArray("items").forEach(i -> names.add(i.getAsJsonObject().get("name").getAsString()));
+            }
+            pageToken = page.has("nextPageToken") ? page.get("nextPageToken").getAsString() : null;
+        } while (pageToken != null);
+        return names;
+    }
+
+    private static JobState mapState(String s) {
+        switch (s) {
+            case "JOB_STATE_SUCCEEDED": return JobState.SUCCEEDED;
+            case "JOB_STATE_FAILED":
+            case "JOB_STATE_EXPIRED": return JobState.FAILED;
+            case "JOB_STATE_CANCELLED":
+            case "JOB_STATE_CANCELLING": return JobState.CANCELLED;
+            case "JOB_STATE_RUNNING":
+            case "JOB_STATE_UPDATING": return JobState.RUNNING;
+            default: return JobState.PENDING;
+        }
+    }
+
+    private static String enc(String s) {
+        return URLEncoder.encode(s, StandardCharsets.UTF_8);
+    }
+}